@@ -0,0 +1,415 @@
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A search based engine for the COMPUTER player. It runs an iteratively deepened
+ * negamax search with alpha-beta pruning over the bitmask form of the board, and
+ * remembers what it learns in a transposition table keyed by the canonical (symmetry
+ * reduced) position, so all 48 mirror images of a position share one entry.
+ *
+ * Positions are always looked at from the side to move: 'own' is the mover's cells and
+ * 'opponent' the other side's. Since both players follow the same rules this makes the
+ * engine (and its table) work for X and O alike.
+ *
+ * The search stops at the first of: the position is solved, the node budget is spent or
+ * the time budget runs out. In the last two cases the move from the deepest completed
+ * iteration is played.
+ *
+ * @see MoveEngine
+ * @see TranspositionTable
+ *
+ */
+public class AlphaBetaEngine implements MoveEngine {
+    // Score of a won game (plus the number of cells still empty once it is over)
+    public static final int WIN_SCORE = 1000;
+    static final int INFINITY = 1 << 20;
+
+    private static final int MAX_PLY = TicTacTix.PLAYABLE_CELLS + 1;
+    // How often (in nodes) the clock is looked at
+    private static final int TIME_CHECK_MASK = 1023;
+
+    private final long nodeBudget;      // 0 means no limit
+    private final long timeBudgetNanos; // 0 means no limit
+    private final boolean useSymmetry;
+    private final TranspositionTable table;
+
+    // State of the search in progress
+    private long nodes;
+    private long deadline;
+    private boolean aborted;
+    private BooleanSupplier stopSignal; // asked every 1024 nodes whether to give up (may be null)
+    private int rootMove;
+    private final int[][] moveBuffer = new int[MAX_PLY][TicTacTix.CELLS];
+    private final int[][] orderBuffer = new int[MAX_PLY][TicTacTix.CELLS];
+
+    private SearchResult lastResult;
+
+    /**
+     * Creates an engine with a one second time budget, no node budget and a
+     * table of 2^20 entries.
+     */
+    public AlphaBetaEngine() {
+        this(0, 1000, 20, true);
+    }
+
+    /**
+     * @param nodeBudget       maximum number of nodes per move (0 for no limit)
+     * @param timeBudgetMillis maximum time per move in milliseconds (0 for no limit)
+     * @param tableBits        log2 of the number of transposition table entries
+     * @param useSymmetry      should positions be reduced by symmetry before the table lookup?
+     */
+    public AlphaBetaEngine(long nodeBudget, long timeBudgetMillis, int tableBits, boolean useSymmetry) {
+        this(nodeBudget, timeBudgetMillis, new TranspositionTable(tableBits), useSymmetry);
+    }
+
+    /**
+     * Creates an engine that works with an existing transposition table (which can be
+     * shared between engines).
+     * @param nodeBudget       maximum number of nodes per move (0 for no limit)
+     * @param timeBudgetMillis maximum time per move in milliseconds (0 for no limit)
+     * @param table            the transposition table to use
+     * @param useSymmetry      should positions be reduced by symmetry before the table lookup?
+     */
+    public AlphaBetaEngine(long nodeBudget, long timeBudgetMillis, TranspositionTable table, boolean useSymmetry) {
+        if (nodeBudget < 0 || timeBudgetMillis < 0)
+            throw new IllegalArgumentException("Budgets cannot be negative");
+
+        this.nodeBudget = nodeBudget;
+        this.timeBudgetNanos = timeBudgetMillis * 1000000L;
+        this.table = table;
+        this.useSymmetry = useSymmetry;
+    }
+
+    public int chooseMove(TicTacTix board, char player) {
+        char opponent = (player == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+        return search(board.getCells(player), board.getCells(opponent)).getMove();
+    }
+
+    public String getLastReport() {
+        if (lastResult == null)
+            return "No search yet";
+        return lastResult.toString();
+    }
+
+    /**
+     * @return the result of the last search (null if nothing has been searched yet)
+     */
+    public SearchResult getLastResult() {
+        return lastResult;
+    }
+
+    /**
+     * Searches a position for the best move of the side to move.
+     * @param  own      bitmask of the cells of the side to move
+     * @param  opponent bitmask of the other side's cells
+     * @return          the best move found along with its score and search statistics
+     */
+    public SearchResult search(int own, int opponent) {
+        return search(own, opponent, null);
+    }
+
+    /**
+     * Searches a position like search(own, opponent), but also gives up as soon as a stop
+     * signal (polled every 1024 nodes) says the result is no longer wanted. A stopped
+     * search returns its deepest completed iteration like one that ran out of budget.
+     * @param  own      bitmask of the cells of the side to move
+     * @param  opponent bitmask of the other side's cells
+     * @param  stop     returns true once the search should stop (may be null)
+     * @return          the best move found along with its score and search statistics
+     */
+    public SearchResult search(int own, int opponent, BooleanSupplier stop) {
+        long start = System.nanoTime();
+        int empty = emptyCells(own, opponent);
+
+        if (empty == 0)
+            throw new IllegalArgumentException("There are no moves left to search");
+
+        nodes = 0;
+        aborted = false;
+        deadline = start + timeBudgetNanos;
+
+        int remaining = Integer.bitCount(empty);
+        int ownThreats = TicTacTix.findThreats(own, opponent);
+        int opponentThreats = TicTacTix.findThreats(opponent, own);
+
+        // Positions that need no search at all: take the win, or block when already lost
+        if (ownThreats != 0) {
+            lastResult = new SearchResult(Integer.numberOfTrailingZeros(ownThreats),
+                    WIN_SCORE + remaining - 1, 1, true, 1, System.nanoTime() - start);
+            return lastResult;
+        }
+        if (Integer.bitCount(opponentThreats) > 1) {
+            lastResult = new SearchResult(Integer.numberOfTrailingZeros(opponentThreats),
+                    -(WIN_SCORE + remaining - 2), 2, true, 1, System.nanoTime() - start);
+            return lastResult;
+        }
+
+        stopSignal = stop;
+        // Fall back on the best looking move if not even one iteration completes
+        orderMoves(own, opponent, opponentThreats != 0 ? opponentThreats : empty, TranspositionTable.NO_MOVE, 0);
+        int bestMove = moveBuffer[0][0];
+        int bestScore = 0;
+        int completedDepth = 0;
+        boolean solved = false;
+
+        for (int depth = 1; depth <= remaining; depth++) {
+            int score = negamax(own, opponent, -INFINITY, INFINITY, depth, 0);
+            if (aborted)
+                break;
+
+            bestMove = rootMove;
+            bestScore = score;
+            completedDepth = depth;
+            // Win/loss scores only come out of forced lines, so they are exact
+            if (Math.abs(score) >= WIN_SCORE || depth == remaining) {
+                solved = true;
+                break;
+            }
+        }
+
+        stopSignal = null;
+        lastResult = new SearchResult(bestMove, bestScore, completedDepth, solved, nodes, System.nanoTime() - start);
+        return lastResult;
+    }
+
+    /**
+     * Searches a single subtree with a given window, on behalf of ParallelSearchEngine.
+     * No budget applies apart from the stop signal, which is polled every 1024 nodes.
+     * @param  own      bitmask of the cells of the side to move
+     * @param  opponent bitmask of the other side's cells
+     * @param  alpha    lower end of the search window
+     * @param  beta     upper end of the search window
+     * @param  depth    plies to search
+     * @param  ply      distance of the subtree from the real root (must be at least 1)
+     * @param  stop     returns true once the result is no longer needed
+     * @return          score of the subtree (meaningless if wasAborted() returns true)
+     */
+    int searchSubtree(int own, int opponent, int alpha, int beta, int depth, int ply, BooleanSupplier stop) {
+        nodes = 0;
+        aborted = false;
+        stopSignal = stop;
+        int score = negamax(own, opponent, alpha, beta, depth, ply);
+        stopSignal = null;
+
+        return score;
+    }
+
+    /**
+     * @return was the last searchSubtree() call stopped before it finished?
+     */
+    boolean wasAborted() {
+        return aborted;
+    }
+
+    /**
+     * @return number of nodes visited by the last search
+     */
+    long getNodeCount() {
+        return nodes;
+    }
+
+    /**
+     * Orders a set of moves the same way the search does and returns them as a new array.
+     * @param  own       bitmask of the cells of the side to move
+     * @param  opponent  bitmask of the other side's cells
+     * @param  moves     bitmask of the moves to order
+     * @param  tableMove move to put first (or NO_MOVE)
+     * @return           the moves, most promising first
+     */
+    int[] orderedMoves(int own, int opponent, int moves, int tableMove) {
+        int count = orderMoves(own, opponent, moves, tableMove, 0);
+        return Arrays.copyOf(moveBuffer[0], count);
+    }
+
+    /**
+     * The recursive part of the search. Returns the score of the position for the side
+     * to move, searched 'depth' plies deep (forced wins and blocks are always followed).
+     * @param  own      bitmask of the cells of the side to move
+     * @param  opponent bitmask of the other side's cells
+     * @param  alpha    score the side to move is already guaranteed
+     * @param  beta     score the opponent is already guaranteed (as seen by the side to move)
+     * @param  depth    plies left before the position is scored heuristically
+     * @param  ply      distance from the root of the search
+     * @return          score of the position
+     */
+    private int negamax(int own, int opponent, int alpha, int beta, int depth, int ply) {
+        nodes++;
+        if (outOfBudget())
+            aborted = true;
+        if (aborted)
+            return 0;
+
+        int empty = emptyCells(own, opponent);
+        int remaining = Integer.bitCount(empty);
+        if (remaining == 0)
+            return 0; // Board is full and nobody won
+
+        // Win on the spot if possible
+        if (TicTacTix.findThreats(own, opponent) != 0)
+            return WIN_SCORE + remaining - 1;
+
+        // Otherwise an opponent threat has to be blocked, and two of them cannot be
+        int moves = empty;
+        int opponentThreats = TicTacTix.findThreats(opponent, own);
+        if (opponentThreats != 0) {
+            if (Integer.bitCount(opponentThreats) > 1) {
+                rootMove = (ply == 0) ? Integer.numberOfTrailingZeros(opponentThreats) : rootMove;
+                return -(WIN_SCORE + remaining - 2);
+            }
+            moves = opponentThreats;
+        }
+
+        if (depth == 0)
+            return evaluate(own, opponent);
+
+        // Transposition table lookup on the canonical form of the position
+        long form = useSymmetry ? Symmetry.canonicalForm(own, opponent) : Symmetry.pack(own, opponent);
+        int symmetry = Symmetry.formSymmetry(form);
+        long key = Symmetry.formKey(form);
+        int searchedDepth = Math.min(depth, remaining);
+        int tableMove = TranspositionTable.NO_MOVE;
+
+        long entry = table.probe(key);
+        if (entry != TranspositionTable.MISS) {
+            int storedMove = TranspositionTable.move(entry);
+            if (storedMove != TranspositionTable.NO_MOVE)
+                tableMove = Symmetry.transformCell(storedMove, Symmetry.inverse(symmetry));
+
+            // The root always searches its moves so that it knows which one is best
+            if (ply > 0 && TranspositionTable.depth(entry) >= searchedDepth) {
+                int score = TranspositionTable.score(entry);
+                int bound = TranspositionTable.bound(entry);
+
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && score >= beta)
+                        || (bound == TranspositionTable.UPPER && score <= alpha))
+                    return score;
+            }
+        }
+
+        int originalAlpha = alpha;
+        int best = -INFINITY;
+        int bestMove = TranspositionTable.NO_MOVE;
+        int count = orderMoves(own, opponent, moves, tableMove, ply);
+
+        for (int i = 0; i < count; i++) {
+            int cell = moveBuffer[ply][i];
+            int score = -negamax(opponent, own | (1 << cell), -beta, -alpha, depth - 1, ply + 1);
+            if (aborted)
+                return 0;
+
+            if (score > best) {
+                best = score;
+                bestMove = cell;
+            }
+            if (best > alpha)
+                alpha = best;
+            if (alpha >= beta)
+                break; // The opponent will never allow this position
+        }
+
+        int bound = TranspositionTable.EXACT;
+        if (best <= originalAlpha)
+            bound = TranspositionTable.UPPER;
+        else if (best >= beta)
+            bound = TranspositionTable.LOWER;
+        table.store(key, best, Symmetry.transformCell(bestMove, symmetry), searchedDepth, bound);
+
+        if (ply == 0)
+            rootMove = bestMove;
+        return best;
+    }
+
+    /**
+     * Fills moveBuffer[ply] with the given moves, most promising first. The move from the
+     * transposition table goes first, the rest are sorted by how many lines they extend
+     * for the mover and how many they take away from the opponent.
+     * @param  own       bitmask of the cells of the side to move
+     * @param  opponent  bitmask of the other side's cells
+     * @param  moves     bitmask of the moves to order
+     * @param  tableMove best move remembered for this position (or NO_MOVE)
+     * @param  ply       distance from the root (selects the buffer)
+     * @return           the number of moves written
+     */
+    private int orderMoves(int own, int opponent, int moves, int tableMove, int ply) {
+        int[] buffer = moveBuffer[ply];
+        int[] scores = orderBuffer[ply];
+        int count = 0;
+
+        while (moves != 0) {
+            int cell = Integer.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+
+            int score = 0;
+            if (cell == tableMove) {
+                score = INFINITY;
+            }
+            else {
+                for (int line: TicTacTix.LINES_THROUGH_CELL[cell]) {
+                    int ownCount = Integer.bitCount(TicTacTix.WIN_LINES[line] & own);
+                    int opponentCount = Integer.bitCount(TicTacTix.WIN_LINES[line] & opponent);
+                    if (opponentCount == 0)
+                        score += 1 + 4 * ownCount; // Extends (or starts) one of our lines
+                    if (ownCount == 0)
+                        score += 1 + 3 * opponentCount; // Spoils one of theirs
+                }
+            }
+
+            // Insertion sort, the lists are at most 26 moves long
+            int i = count++;
+            while (i > 0 && scores[i - 1] < score) {
+                scores[i] = scores[i - 1];
+                buffer[i] = buffer[i - 1];
+                i--;
+            }
+            scores[i] = score;
+            buffer[i] = cell;
+        }
+        return count;
+    }
+
+    /**
+     * Scores a quiet position (no threats on the board) when the search runs out of depth.
+     * Lines that are still open for only one side count in that side's favour.
+     * @param  own      bitmask of the cells of the side to move
+     * @param  opponent bitmask of the other side's cells
+     * @return          a heuristic score well below WIN_SCORE
+     */
+    static int evaluate(int own, int opponent) {
+        int score = 0;
+
+        for (int line: TicTacTix.WIN_LINES) {
+            int ownCount = Integer.bitCount(line & own);
+            int opponentCount = Integer.bitCount(line & opponent);
+            if (opponentCount == 0)
+                score += ownCount * ownCount;
+            else if (ownCount == 0)
+                score -= opponentCount * opponentCount;
+        }
+        return score;
+    }
+
+    /**
+     * @param  own      bitmask of one side's cells
+     * @param  opponent bitmask of the other side's cells
+     * @return          bitmask of the cells that are still free to play
+     */
+    static int emptyCells(int own, int opponent) {
+        return TicTacTix.ALL_CELLS & ~(own | opponent | TicTacTix.RESERVED_CELLS);
+    }
+
+    /**
+     * Checks the node and time budgets and the stop signal. The clock and the stop
+     * signal are only looked at every 1024 nodes.
+     * @return has the search used up its budget (or been told to stop)?
+     */
+    private boolean outOfBudget() {
+        if (nodeBudget > 0 && nodes >= nodeBudget)
+            return true;
+        if ((nodes & TIME_CHECK_MASK) != 0)
+            return false;
+        if (stopSignal != null && stopSignal.getAsBoolean())
+            return true;
+        return timeBudgetNanos > 0 && System.nanoTime() >= deadline;
+    }
+}
@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.SplittableRandom;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for AnalysisServer. Builds a pool of distinct positions from random
+ * games, then sends a number of requests with a fixed number in flight, each asking for
+ * a random position of the pool turned by a random symmetry of the cube (so the server's
+ * cache sees the same canonical positions under different disguises). Reports the
+ * throughput and the latency seen by the client, followed by the server's own statistics.
+ *
+ * Usage: java AnalysisLoadClient [host] [port] [requests] [in flight] [distinct positions] [seed]
+ *
+ * @see AnalysisServer
+ *
+ */
+public class AnalysisLoadClient {
+    private final URI analyzeUri;
+    private final URI statsUri;
+    private final int requests;
+    private final int inFlight;
+    private final long[] positions;
+    private final long seed;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    // Results
+    private final LatencyStats latency = new LatencyStats(); // guarded by itself
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * @param host               where the server runs
+     * @param port               its port
+     * @param requests           number of requests to send
+     * @param inFlight           number of requests waiting for an answer at any time
+     * @param distinctPositions  size of the pool of positions
+     * @param seed               seed of the positions and of the requests
+     */
+    public AnalysisLoadClient(String host, int port, int requests, int inFlight, int distinctPositions, long seed) {
+        if (requests < 1 || inFlight < 1 || distinctPositions < 1)
+            throw new IllegalArgumentException("Requests, requests in flight and positions must be at least 1");
+
+        this.analyzeUri = URI.create("http://" + host + ":" + port + "/analyze");
+        this.statsUri = URI.create("http://" + host + ":" + port + "/stats");
+        this.requests = requests;
+        this.inFlight = inFlight;
+        this.seed = seed;
+        this.positions = randomPositions(distinctPositions, new SplittableRandom(seed));
+    }
+
+    public static void main(String[] args) {
+        try {
+            String host = (args.length > 0) ? args[0] : "localhost";
+            int port = (args.length > 1) ? Integer.parseInt(args[1]) : AnalysisServer.DEFAULT_PORT;
+            int requests = (args.length > 2) ? Integer.parseInt(args[2]) : 100000;
+            int inFlight = (args.length > 3) ? Integer.parseInt(args[3]) : 64;
+            int distinct = (args.length > 4) ? Integer.parseInt(args[4]) : 10000;
+            long seed = (args.length > 5) ? Long.parseLong(args[5]) : System.nanoTime();
+
+            AnalysisLoadClient client = new AnalysisLoadClient(host, port, requests, inFlight, distinct, seed);
+            System.out.println(client.run());
+        }
+        catch (IllegalArgumentException | IOException e) {
+            System.out.println("ERROR: " + e.getMessage());
+            System.out.println("Usage: java AnalysisLoadClient [host] [port] [requests] [in flight] [distinct positions] [seed]");
+            System.exit(1);
+        }
+        catch (InterruptedException e) {
+            System.out.println("ERROR: interrupted");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Builds positions by playing random games and stopping each after a random number
+     * of moves (while it is still being played).
+     * @param  count  number of positions
+     * @param  random source of the moves
+     * @return        the boards as X and O masks, packed with Symmetry.pack()
+     */
+    private static long[] randomPositions(int count, SplittableRandom random) {
+        long[] boards = new long[count];
+        TicTacTix board = new TicTacTix();
+        board.setRandom(random.split());
+
+        for (int i = 0; i < count; i++) {
+            board.reset();
+            int moves = random.nextInt(TicTacTix.PLAYABLE_CELLS / 2);
+            while (board.getMoveCount() < moves && board.findGameState() == TicTacTix.PLAYABLE)
+                board.play(board.randomEmptyCell());
+            if (board.findGameState() != TicTacTix.PLAYABLE)
+                board.undo();
+            boards[i] = Symmetry.pack(board.getCells(TicTacTix.PLAYER), board.getCells(TicTacTix.COMPUTER));
+        }
+        return boards;
+    }
+
+    /**
+     * @param  cells    X and O masks packed with Symmetry.pack()
+     * @param  symmetry symmetry to apply to the board
+     * @return          the request body for the transformed board
+     */
+    private static String requestBody(long cells, int symmetry) {
+        int xCells = Symmetry.transform(Symmetry.first(cells), symmetry);
+        int oCells = Symmetry.transform(Symmetry.second(cells), symmetry);
+        StringBuilder body = new StringBuilder("{\"board\":\"");
+        for (int cell = 0; cell < TicTacTix.CELLS; cell++) {
+            int bit = 1 << cell;
+            if ((xCells & bit) != 0)
+                body.append(TicTacTix.PLAYER);
+            else if ((oCells & bit) != 0)
+                body.append(TicTacTix.COMPUTER);
+            else
+                body.append((TicTacTix.RESERVED_CELLS & bit) != 0 ? TicTacTix.RESERVED : '.');
+        }
+        return body.append("\"}").toString();
+    }
+
+    /**
+     * Sends every request and waits for the answers.
+     * @return a report of the run and the server's statistics
+     * @throws IOException          if the statistics cannot be fetched
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public String run() throws IOException, InterruptedException {
+        SplittableRandom random = new SplittableRandom(seed ^ 0x5DEECE66DL);
+        Semaphore slots = new Semaphore(inFlight);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < requests; i++) {
+            long cells = positions[random.nextInt(positions.length)];
+            HttpRequest request = HttpRequest.newBuilder(analyzeUri)
+                    .POST(HttpRequest.BodyPublishers.ofString(requestBody(cells, random.nextInt(Symmetry.COUNT))))
+                    .build();
+
+            slots.acquire();
+            long sent = System.nanoTime();
+            client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, failure) -> {
+                long nanos = System.nanoTime() - sent;
+                if (failure != null || response.statusCode() != 200)
+                    errors.incrementAndGet();
+                synchronized (latency) {
+                    latency.record(nanos);
+                }
+                slots.release();
+            });
+        }
+        slots.acquire(inFlight);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        String stats = client.send(HttpRequest.newBuilder(statsUri).build(), HttpResponse.BodyHandlers.ofString()).body();
+        synchronized (latency) {
+            return String.format("%d requests (%d in flight, %d distinct positions), %d errors in %.2f s, %.0f requests/s%n"
+                    + "latency: %s%nserver: %s", requests, inFlight, positions.length, errors.get(), seconds,
+                    requests / seconds, latency, stats);
+        }
+    }
+}
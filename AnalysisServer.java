@@ -0,0 +1,494 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A stateless HTTP service for front-ends that only need to know the state of a board
+ * and the best move for the side to move, built on the JDK's own HTTP server.
+ *
+ * Endpoints (JSON in and out):
+ * <pre>
+ *   POST /analyze   {"board": "27 cells", "side": "X"}   side optional, as in PositionAnalyzer
+ *                -> {"state": "P", "side": "X", "move": {"layer": 1, "row": 2, "column": 3},
+ *                    "value": "draw", "cached": false}
+ *   GET  /stats     requests, cache hit rate, batches and the latency percentiles
+ * </pre>
+ * The board is written as for PositionAnalyzer (X, O, N for the center and a space, '.'
+ * or '-' for an empty cell) and the move is counted from 1. When the game is over the
+ * move and value are null; a board that is not valid gets status 400 and {"error": ...}.
+ *
+ * Results are cached by canonical position (see Symmetry), so the 48 symmetric copies of
+ * a position share one entry; the cache is a few LRU segments with a bounded number of
+ * entries. A request that misses it is queued. A dispatcher thread waits for a free
+ * worker, then takes everything queued (up to MAX_BATCH requests) as one batch, so
+ * batches are small while the service is idle and grow with the load. A batch evaluates
+ * each distinct position once with a PositionAnalyzer, starting from an empty table as
+ * PositionAnalyzer's own batches do, stores the results and answers every request waiting
+ * for them. The latency is measured from reading a request to having sent its answer.
+ *
+ * Usage: java AnalysisServer [port] [worker threads] [cache entries] [node budget]
+ *
+ * @see AnalysisLoadClient
+ *
+ */
+public class AnalysisServer {
+    public static final int DEFAULT_PORT = 7778;
+    public static final int DEFAULT_CACHE_ENTRIES = 1 << 18;
+    public static final int MAX_BATCH = 256;
+
+    private static final int CACHE_SEGMENTS = 16;
+    private static final int MAX_BODY_BYTES = 1024;
+    private static final long SIDE_O = 1L << 60; // cache key bit: O is to move
+
+    private final HttpServer server;
+    private final ExecutorService handlers; // read requests and answer the cache hits
+    private final ExecutorService workers;  // evaluate batches
+    private final Semaphore idleWorkers;
+    private final Thread dispatcher;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final PositionAnalyzer analyzer;
+    private final ResultCache cache;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedRequests = new LongAdder();
+    private final LongAdder evaluated = new LongAdder();
+    private final LatencyStats latency = new LatencyStats(); // guarded by itself
+
+    private volatile boolean running = true;
+
+    /**
+     * A request waiting for its position to be evaluated.
+     */
+    private static class Request {
+        final HttpExchange exchange;
+        final long start;
+        final long key;      // canonical position and side to move
+        final int symmetry;  // maps the request's board onto the canonical one
+        final char side;
+
+        Request(HttpExchange exchange, long start, long key, int symmetry, char side) {
+            this.exchange = exchange;
+            this.start = start;
+            this.key = key;
+            this.symmetry = symmetry;
+            this.side = side;
+        }
+    }
+
+    /**
+     * Opens the server socket (on the loopback interface) and starts serving.
+     * @param  port          port to listen on (0 picks a free one)
+     * @param  workerThreads threads evaluating positions
+     * @param  cacheEntries  largest number of cached results
+     * @param  nodeBudget    search nodes per position (0 solves every position exactly)
+     * @throws IOException if the socket cannot be opened
+     */
+    public AnalysisServer(int port, int workerThreads, int cacheEntries, long nodeBudget) throws IOException {
+        if (workerThreads < 1)
+            throw new IllegalArgumentException("At least one worker thread is needed");
+        if (cacheEntries < CACHE_SEGMENTS)
+            throw new IllegalArgumentException("The cache needs at least " + CACHE_SEGMENTS + " entries");
+
+        this.analyzer = new PositionAnalyzer(1, nodeBudget);
+        this.cache = new ResultCache(cacheEntries);
+        this.workers = Executors.newFixedThreadPool(workerThreads);
+        this.idleWorkers = new Semaphore(workerThreads);
+        this.handlers = Executors.newFixedThreadPool(workerThreads);
+
+        // Answers are a single small write; without TCP_NODELAY they wait for the client's delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.setExecutor(handlers);
+        server.createContext("/analyze", this::analyze);
+        server.createContext("/stats", this::stats);
+        server.start();
+
+        this.dispatcher = new Thread(this::dispatch, "analysis-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    public static void main(String[] args) {
+        try {
+            int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+            int workerThreads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+            int cacheEntries = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_CACHE_ENTRIES;
+            long nodeBudget = (args.length > 3) ? Long.parseLong(args[3]) : PositionAnalyzer.DEFAULT_NODE_BUDGET;
+
+            AnalysisServer server = new AnalysisServer(port, workerThreads, cacheEntries, nodeBudget);
+            System.out.println("TicTacTix analysis service listening on port " + server.getPort());
+        }
+        catch (IllegalArgumentException | IOException e) {
+            System.out.println("ERROR: " + e.getMessage());
+            System.out.println("Usage: java AnalysisServer [port] [worker threads] [cache entries] [node budget]");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return the port the service listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests and shuts the threads down.
+     */
+    public void stop() {
+        running = false;
+        server.stop(0);
+        dispatcher.interrupt();
+        workers.shutdownNow();
+        handlers.shutdownNow();
+    }
+
+    /**
+     * POST /analyze: answers from the cache or queues the request.
+     */
+    private void analyze(HttpExchange exchange) {
+        long start = System.nanoTime();
+        requests.increment();
+        if (!exchange.getRequestMethod().equals("POST")) {
+            exchange.getResponseHeaders().set("Allow", "POST");
+            send(exchange, 405, "{\"error\":\"Use POST\"}", start);
+            return;
+        }
+
+        String board;
+        String side;
+        try {
+            String body = readBody(exchange);
+            board = jsonString(body, "board");
+            side = jsonString(body, "side");
+            if (board == null)
+                throw new IllegalArgumentException("The request needs a \"board\" of " + TicTacTix.CELLS + " cells");
+        }
+        catch (IllegalArgumentException e) {
+            invalid.increment();
+            send(exchange, 400, "{\"error\":" + quote(e.getMessage()) + "}", start);
+            return;
+        }
+
+        long cells = (board.length() == TicTacTix.CELLS) ? PositionAnalyzer.readCells(board, board.length()) : PositionAnalyzer.NOT_A_BOARD;
+        if (cells < 0 || (side != null && !side.equals("X") && !side.equals("O"))) {
+            invalid.increment();
+            send(exchange, 400, "{\"error\":\"The board must be " + TicTacTix.CELLS
+                    + " cells of X, O, N (center) or empty, and the side X or O\"}", start);
+            return;
+        }
+
+        int xCells = Symmetry.first(cells);
+        int oCells = Symmetry.second(cells);
+        char toMove;
+        if (side != null)
+            toMove = side.charAt(0);
+        else
+            toMove = (Integer.bitCount(xCells) > Integer.bitCount(oCells)) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+
+        long form = Symmetry.canonicalForm(xCells, oCells);
+        long key = Symmetry.formKey(form) | ((toMove == TicTacTix.COMPUTER) ? SIDE_O : 0);
+        Request request = new Request(exchange, start, key, Symmetry.formSymmetry(form), toMove);
+
+        String result = cache.get(key);
+        if (result != null) {
+            hits.increment();
+            answer(request, result, true);
+        }
+        else {
+            misses.increment();
+            queue.add(request);
+        }
+    }
+
+    /**
+     * Dispatcher thread: hands whatever is queued to the next free worker as one batch.
+     */
+    private void dispatch() {
+        try {
+            while (running) {
+                idleWorkers.acquire();
+                List<Request> batch = new ArrayList<>();
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+                workers.execute(() -> {
+                    try {
+                        evaluate(batch);
+                    }
+                    finally {
+                        idleWorkers.release();
+                    }
+                });
+            }
+        }
+        catch (InterruptedException e) {
+            // Stopped
+        }
+    }
+
+    /**
+     * Worker thread: evaluates every distinct position of a batch once and answers its requests.
+     */
+    private void evaluate(List<Request> batch) {
+        // Like a PositionAnalyzer batch, nothing is carried over from the batches this
+        // worker evaluated before
+        analyzer.startBatch();
+        Map<Long, String> results = new HashMap<>();
+        for (Request request: batch) {
+            String result = results.get(request.key);
+            if (result == null) {
+                // An earlier batch may have evaluated it since the request missed the cache
+                result = cache.get(request.key);
+                if (result == null) {
+                    result = analyzer.analyze(canonicalLine(request.key));
+                    cache.put(request.key, result);
+                    evaluated.increment();
+                }
+                results.put(request.key, result);
+            }
+            answer(request, result, false);
+        }
+        batches.increment();
+        batchedRequests.add(batch.size());
+    }
+
+    /**
+     * @param  key cache key of a position
+     * @return     the canonical position in the PositionAnalyzer format, side to move included
+     */
+    private static String canonicalLine(long key) {
+        int xCells = Symmetry.first(key);
+        int oCells = Symmetry.second(key);
+        StringBuilder line = new StringBuilder(TicTacTix.CELLS + 2);
+        for (int cell = 0; cell < TicTacTix.CELLS; cell++) {
+            int bit = 1 << cell;
+            if ((xCells & bit) != 0)
+                line.append(TicTacTix.PLAYER);
+            else if ((oCells & bit) != 0)
+                line.append(TicTacTix.COMPUTER);
+            else
+                line.append((TicTacTix.RESERVED_CELLS & bit) != 0 ? TicTacTix.RESERVED : '.');
+        }
+        return line.append(' ').append((key & SIDE_O) != 0 ? TicTacTix.COMPUTER : TicTacTix.PLAYER).toString();
+    }
+
+    /**
+     * Sends the answer to a request, mapping the move back onto the request's board.
+     * @param request the request
+     * @param result  the PositionAnalyzer result line of the canonical position
+     * @param cached  did the result come from the cache?
+     */
+    private void answer(Request request, String result, boolean cached) {
+        String[] fields = result.split("\t");
+        if (fields[0].equals("ERROR")) {
+            invalid.increment();
+            send(request.exchange, 400, "{\"error\":" + quote(fields[1]) + "}", request.start);
+            return;
+        }
+
+        StringBuilder json = new StringBuilder(128);
+        json.append("{\"state\":\"").append(fields[0]).append("\",\"side\":\"").append(request.side).append("\",\"move\":");
+        if (fields[1].equals("-")) {
+            json.append("null,\"value\":null");
+        }
+        else {
+            String[] coordinates = fields[1].split(" ");
+            int cell = TicTacTix.cellIndex(Integer.parseInt(coordinates[0]) - 1,
+                    Integer.parseInt(coordinates[1]) - 1, Integer.parseInt(coordinates[2]) - 1);
+            int move = Symmetry.transformCell(cell, Symmetry.inverse(request.symmetry));
+            int size = TicTacTix.SIZE;
+            json.append("{\"layer\":").append(move / (size * size) + 1)
+                .append(",\"row\":").append((move / size) % size + 1)
+                .append(",\"column\":").append(move % size + 1)
+                .append("},\"value\":").append(quote(fields[2]));
+        }
+        json.append(",\"cached\":").append(cached).append('}');
+        send(request.exchange, 200, json.toString(), request.start);
+    }
+
+    /**
+     * GET /stats: the service's counters and latency as JSON.
+     */
+    private void stats(HttpExchange exchange) {
+        send(exchange, 200, getStatsJson(), System.nanoTime());
+    }
+
+    /**
+     * @return requests, cache hit rate, batching and latency (in nanoseconds) as one line of JSON
+     */
+    public String getStatsJson() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        long batchCount = batches.sum();
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"requests\":").append(requests.sum())
+            .append(",\"invalid\":").append(invalid.sum())
+            .append(",\"cacheHits\":").append(hitCount)
+            .append(",\"cacheMisses\":").append(lookups - hitCount)
+            .append(",\"hitRate\":").append(String.format("%.4f", (lookups == 0) ? 0.0 : (double) hitCount / lookups))
+            .append(",\"cacheEntries\":").append(cache.size())
+            .append(",\"evaluated\":").append(evaluated.sum())
+            .append(",\"batches\":").append(batchCount)
+            .append(",\"meanBatchSize\":").append(String.format("%.2f", (batchCount == 0) ? 0.0 : (double) batchedRequests.sum() / batchCount))
+            .append(",\"queued\":").append(queue.size());
+        synchronized (latency) {
+            json.append(",\"latencyNanos\":{\"count\":").append(latency.getCount())
+                .append(",\"mean\":").append(Math.round(latency.getMean()))
+                .append(",\"p50\":").append(latency.getPercentile(50))
+                .append(",\"p99\":").append(latency.getPercentile(99))
+                .append(",\"p999\":").append(latency.getPercentile(99.9))
+                .append(",\"max\":").append(latency.getMax())
+                .append("}}");
+        }
+        return json.toString();
+    }
+
+    /**
+     * Sends a JSON response and records the latency of the request.
+     */
+    private void send(HttpExchange exchange, int status, String json, long start) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            out.write(bytes);
+        }
+        catch (IOException e) {
+            // The client went away; nothing to answer
+        }
+        finally {
+            exchange.close();
+        }
+
+        long nanos = System.nanoTime() - start;
+        synchronized (latency) {
+            latency.record(nanos);
+        }
+    }
+
+    /**
+     * @return the body of a request
+     * @throws IllegalArgumentException if it is too long or cannot be read
+     */
+    private static String readBody(HttpExchange exchange) {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (body.length > MAX_BODY_BYTES)
+                throw new IllegalArgumentException("Request body longer than " + MAX_BODY_BYTES + " bytes");
+            return new String(body, StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("Could not read the request: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Finds a string member of a flat JSON object. Only what this service needs: the
+     * value must be a string without escape sequences.
+     * @param  json the object
+     * @param  name name of the member
+     * @return      its value, or null if the object has no such member
+     * @throws IllegalArgumentException if the member is not a plain string
+     */
+    static String jsonString(String json, String name) {
+        int at = json.indexOf('"' + name + '"');
+        if (at < 0)
+            return null;
+
+        int open = at + name.length() + 2;
+        while (open < json.length() && Character.isWhitespace(json.charAt(open)))
+            open++;
+        if (open < json.length() && json.charAt(open) == ':')
+            open++;
+        while (open < json.length() && Character.isWhitespace(json.charAt(open)))
+            open++;
+
+        int close = (open < json.length() && json.charAt(open) == '"') ? json.indexOf('"', open + 1) : -1;
+        if (close < 0 || json.lastIndexOf('\\', close) > open)
+            throw new IllegalArgumentException("\"" + name + "\" must be a plain string");
+        return json.substring(open + 1, close);
+    }
+
+    /**
+     * @return the text as a JSON string
+     */
+    private static String quote(String text) {
+        return '"' + text.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    /**
+     * The cached results: CACHE_SEGMENTS least-recently-used maps, each behind its own
+     * lock, so threads working on different positions seldom wait for each other.
+     */
+    private static final class ResultCache {
+        private final Segment[] segments = new Segment[CACHE_SEGMENTS];
+
+        ResultCache(int capacity) {
+            for (int i = 0; i < segments.length; i++)
+                segments[i] = new Segment(capacity / CACHE_SEGMENTS);
+        }
+
+        String get(long key) {
+            Segment segment = segment(key);
+            synchronized (segment) {
+                return segment.get(key);
+            }
+        }
+
+        void put(long key, String result) {
+            Segment segment = segment(key);
+            synchronized (segment) {
+                segment.put(key, result);
+            }
+        }
+
+        int size() {
+            int size = 0;
+            for (Segment segment: segments) {
+                synchronized (segment) {
+                    size += segment.size();
+                }
+            }
+            return size;
+        }
+
+        private Segment segment(long key) {
+            return segments[(int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & (CACHE_SEGMENTS - 1)];
+        }
+
+        private static final class Segment extends LinkedHashMap<Long, String> {
+            private static final long serialVersionUID = 1L;
+
+            private final int capacity;
+
+            Segment(int capacity) {
+                super(16, 0.75f, true); // access order, so the eldest entry is the least recently used
+                this.capacity = capacity;
+            }
+
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                return size() > capacity;
+            }
+        }
+    }
+}
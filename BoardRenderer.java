@@ -0,0 +1,259 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * Draws TicTacTix boards without building the picture from scratch every time.
+ *
+ * The ASCII picture of an empty board is generated once into a template, along with the
+ * position of every cell in it. A renderer keeps its own copy of the picture and, when
+ * asked to draw a board, only rewrites the cells that changed since the last time, then
+ * copies the picture into the caller's StringBuilder, Appendable or ByteBuffer. Once the
+ * caller's buffer is big enough, drawing a board allocates nothing.
+ *
+ * The ANSI mode goes one step further for terminals: after the first full draw it only
+ * moves the cursor to the cells that changed and rewrites those characters.
+ *
+ * A renderer is not thread-safe; use one per thread (or per output).
+ *
+ * @see TicTacTix
+ *
+ */
+public class BoardRenderer {
+    private static final char ESCAPE = '\u001B';
+
+    // The picture of an empty board and where each cell sits in it
+    private static final char[] TEMPLATE;
+    private static final int[] CELL_OFFSETS = new int[TicTacTix.CELLS];
+    // Offsets at which each line of the picture starts (plus one past the end)
+    private static final int[] LINE_STARTS;
+
+    static {
+        StringBuilder out = new StringBuilder(" =============================\n");
+
+        // Layer labels
+        out.append("  Layer 1   Layer 2   Layer 3 \n   1 2 3     1 2 3     1 2 3 \n");
+        out.append(" -----------------------------\n");
+
+        for (int line = 0; line < 5; line++) {
+            if (line % 2 == 0) {
+                for (int layer = 0; layer < 3; layer++) {
+                    out.append(line / 2 + 1).append(": "); // Row label
+
+                    for (int col = 0; col < 5; col++) {
+                        // Even column values contain cells
+                        if (col % 2 == 0) {
+                            int cell = TicTacTix.cellIndex(layer, line / 2, col / 2);
+                            CELL_OFFSETS[cell] = out.length();
+                            out.append(((TicTacTix.RESERVED_CELLS & (1 << cell)) != 0) ? TicTacTix.RESERVED : ' ');
+                        }
+                        else {
+                            out.append('|');
+                        }
+                    }
+                    out.append("  ");
+                }
+                out.append('\n');
+            }
+            else {
+                out.append("   =+=+=     =+=+=     =+=+=\n");
+            }
+        }
+        out.append("\n *****************************\n");
+
+        TEMPLATE = out.toString().toCharArray();
+
+        int lines = 0;
+        for (char c: TEMPLATE) {
+            if (c == '\n')
+                lines++;
+        }
+        LINE_STARTS = new int[lines + 1];
+        for (int i = 0, line = 1; i < TEMPLATE.length; i++) {
+            if (TEMPLATE[i] == '\n')
+                LINE_STARTS[line++] = i + 1;
+        }
+    }
+
+    // This renderer's copy of the picture, as chars and as ASCII bytes
+    private final char[] chars = TEMPLATE.clone();
+    private final byte[] bytes = new byte[TEMPLATE.length];
+    private final CharBuffer charView = CharBuffer.wrap(chars).asReadOnlyBuffer();
+    // Cells currently drawn in chars/bytes
+    private int shownPlayer;
+    private int shownComputer;
+
+    // Cells currently on the terminal in ANSI mode
+    private boolean ansiDrawn;
+    private int ansiPlayer;
+    private int ansiComputer;
+
+    public BoardRenderer() {
+        for (int i = 0; i < TEMPLATE.length; i++)
+            bytes[i] = (byte) TEMPLATE[i];
+    }
+
+    /**
+     * Draws a board into a new String. Used by TicTacTix.toString(); it copies the
+     * template once instead of concatenating the picture piece by piece.
+     * @param  board the board to draw
+     * @return       the picture of the board
+     */
+    public static String renderToString(TicTacTix board) {
+        char[] picture = TEMPLATE.clone();
+        int taken = board.getCells(TicTacTix.PLAYER) | board.getCells(TicTacTix.COMPUTER);
+
+        for (; taken != 0; taken &= taken - 1) {
+            int cell = Integer.numberOfTrailingZeros(taken);
+            picture[CELL_OFFSETS[cell]] = symbol(board, cell);
+        }
+        return new String(picture);
+    }
+
+    /**
+     * @return number of characters in the picture of a board
+     */
+    public static int length() {
+        return TEMPLATE.length;
+    }
+
+    /**
+     * Appends the picture of a board to a StringBuilder.
+     * @param board the board to draw
+     * @param out   where to append the picture
+     */
+    public void render(TicTacTix board, StringBuilder out) {
+        update(board);
+        out.append(chars);
+    }
+
+    /**
+     * Appends the picture of a board to any Appendable (a Writer, a PrintStream, ...).
+     * @param  board the board to draw
+     * @param  out   where to append the picture
+     * @throws IOException if the Appendable fails
+     */
+    public void render(TicTacTix board, Appendable out) throws IOException {
+        update(board);
+        out.append(charView, 0, chars.length);
+    }
+
+    /**
+     * Writes the picture of a board (as ASCII) into a ByteBuffer.
+     * @param board the board to draw
+     * @param out   buffer with at least length() bytes remaining
+     */
+    public void render(TicTacTix board, ByteBuffer out) {
+        update(board);
+        out.put(bytes);
+    }
+
+    /**
+     * Brings the renderer's copy of the picture up to date with a board, rewriting only
+     * the cells that changed since the last call.
+     * @param board the board to draw
+     */
+    private void update(TicTacTix board) {
+        int player = board.getCells(TicTacTix.PLAYER);
+        int computer = board.getCells(TicTacTix.COMPUTER);
+
+        for (int changed = (player ^ shownPlayer) | (computer ^ shownComputer); changed != 0; changed &= changed - 1) {
+            int cell = Integer.numberOfTrailingZeros(changed);
+            char symbol = symbol(board, cell);
+            chars[CELL_OFFSETS[cell]] = symbol;
+            bytes[CELL_OFFSETS[cell]] = (byte) symbol;
+        }
+        shownPlayer = player;
+        shownComputer = computer;
+    }
+
+    /**
+     * Draws a board on an ANSI terminal with its top left corner at a given position.
+     * The first call (and the first after resetAnsi()) draws the whole picture; later
+     * calls only rewrite the cells that changed. The cursor is left on the line below
+     * the picture.
+     * @param  board        the board to draw
+     * @param  out          the terminal output
+     * @param  originRow    terminal row of the first line of the picture (1-based)
+     * @param  originColumn terminal column of the first character of the picture (1-based)
+     * @throws IOException if the Appendable fails
+     */
+    public void renderAnsi(TicTacTix board, Appendable out, int originRow, int originColumn) throws IOException {
+        int player = board.getCells(TicTacTix.PLAYER);
+        int computer = board.getCells(TicTacTix.COMPUTER);
+
+        if (!ansiDrawn) {
+            update(board);
+            for (int line = 0; line + 1 < LINE_STARTS.length; line++) {
+                moveCursor(out, originRow + line, originColumn);
+                // Leave the newline out, the cursor is placed explicitly
+                out.append(charView, LINE_STARTS[line], LINE_STARTS[line + 1] - 1);
+            }
+            ansiDrawn = true;
+        }
+        else {
+            for (int changed = (player ^ ansiPlayer) | (computer ^ ansiComputer); changed != 0; changed &= changed - 1) {
+                int cell = Integer.numberOfTrailingZeros(changed);
+                int offset = CELL_OFFSETS[cell];
+                int line = lineOf(offset);
+
+                moveCursor(out, originRow + line, originColumn + offset - LINE_STARTS[line]);
+                out.append(symbol(board, cell));
+            }
+        }
+        ansiPlayer = player;
+        ansiComputer = computer;
+        moveCursor(out, originRow + LINE_STARTS.length - 1, originColumn);
+    }
+
+    /**
+     * Forgets what is on the terminal, so that the next renderAnsi() draws everything.
+     */
+    public void resetAnsi() {
+        ansiDrawn = false;
+    }
+
+    /**
+     * @param  offset position in the picture
+     * @return        the line of the picture that position is on
+     */
+    private static int lineOf(int offset) {
+        int line = 0;
+        while (LINE_STARTS[line + 1] <= offset)
+            line++;
+        return line;
+    }
+
+    /**
+     * Writes the ANSI "cursor position" sequence (ESC [ row ; column H).
+     */
+    private static void moveCursor(Appendable out, int row, int column) throws IOException {
+        out.append(ESCAPE).append('[');
+        appendNumber(out, row);
+        out.append(';');
+        appendNumber(out, column);
+        out.append('H');
+    }
+
+    /**
+     * Appends a positive number digit by digit (so no String is created for it).
+     */
+    private static void appendNumber(Appendable out, int number) throws IOException {
+        int divisor = 1;
+        while (number / divisor >= 10)
+            divisor *= 10;
+
+        for (; divisor > 0; divisor /= 10)
+            out.append((char) ('0' + (number / divisor) % 10));
+    }
+
+    /**
+     * @param  board the board being drawn
+     * @param  cell  index of a cell
+     * @return       the character to show for the cell
+     */
+    private static char symbol(TicTacTix board, int cell) {
+        int size = TicTacTix.SIZE;
+        return board.getCell(cell / (size * size), (cell / size) % size, cell % size);
+    }
+}
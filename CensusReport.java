@@ -0,0 +1,162 @@
+/**
+ * Counts of the positions that can be reached in a game of TicTacTix, by depth (the
+ * number of markers on the board): how many distinct positions there are and how many
+ * of them are won by X, won by O or stalemated. Each census worker fills its own
+ * instance and the instances are merged at the end.
+ *
+ * @see StateSpaceCensus
+ *
+ */
+public class CensusReport {
+    private final char firstPlayer;
+    private final int maxDepth;
+    // Indexed by depth
+    private final long[] positions = new long[TicTacTix.PLAYABLE_CELLS + 1];
+    private final long[] playerWins = new long[TicTacTix.PLAYABLE_CELLS + 1];
+    private final long[] computerWins = new long[TicTacTix.PLAYABLE_CELLS + 1];
+    private final long[] stalemates = new long[TicTacTix.PLAYABLE_CELLS + 1];
+    private long elapsedNanos;
+
+    /**
+     * @param firstPlayer character code of the player who moves first (PLAYER / COMPUTER)
+     * @param maxDepth    deepest depth that was counted
+     */
+    public CensusReport(char firstPlayer, int maxDepth) {
+        this.firstPlayer = firstPlayer;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Counts positions that are still being played.
+     * @param depth number of markers on the board
+     * @param count number of positions
+     */
+    void recordPlayable(int depth, long count) {
+        positions[depth] += count;
+    }
+
+    /**
+     * Counts one position where the game is over.
+     * @param depth  number of markers on the board
+     * @param result state of the game (PLAYER / COMPUTER / STALEMATE)
+     */
+    void recordEnding(int depth, char result) {
+        positions[depth]++;
+        if (result == TicTacTix.PLAYER)
+            playerWins[depth]++;
+        else if (result == TicTacTix.COMPUTER)
+            computerWins[depth]++;
+        else
+            stalemates[depth]++;
+    }
+
+    /**
+     * Adds the counts of another report to this one.
+     * @param other report to add
+     */
+    public void merge(CensusReport other) {
+        for (int depth = 0; depth < positions.length; depth++) {
+            positions[depth] += other.positions[depth];
+            playerWins[depth] += other.playerWins[depth];
+            computerWins[depth] += other.computerWins[depth];
+            stalemates[depth] += other.stalemates[depth];
+        }
+    }
+
+    public void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public char getFirstPlayer() {
+        return firstPlayer;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @param  depth number of markers on the board
+     * @return       number of distinct reachable positions with that many markers
+     */
+    public long getPositions(int depth) {
+        return positions[depth];
+    }
+
+    /**
+     * @param  depth number of markers on the board
+     * @return       number of those positions that are still being played
+     */
+    public long getPlayable(int depth) {
+        return positions[depth] - playerWins[depth] - computerWins[depth] - stalemates[depth];
+    }
+
+    /**
+     * @param  depth number of markers on the board
+     * @return       number of those positions won by X
+     */
+    public long getPlayerWins(int depth) {
+        return playerWins[depth];
+    }
+
+    /**
+     * @param  depth number of markers on the board
+     * @return       number of those positions won by O
+     */
+    public long getComputerWins(int depth) {
+        return computerWins[depth];
+    }
+
+    /**
+     * @param  depth number of markers on the board
+     * @return       number of those positions that are stalemates
+     */
+    public long getStalemates(int depth) {
+        return stalemates[depth];
+    }
+
+    /**
+     * @return number of distinct reachable positions at all depths together
+     */
+    public long getTotalPositions() {
+        return sum(positions);
+    }
+
+    public long getTotalPlayerWins() {
+        return sum(playerWins);
+    }
+
+    public long getTotalComputerWins() {
+        return sum(computerWins);
+    }
+
+    public long getTotalStalemates() {
+        return sum(stalemates);
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    private static long sum(long[] counts) {
+        long total = 0;
+        for (long count: counts)
+            total += count;
+        return total;
+    }
+
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append(firstPlayer).append(" moves first, depths 0 to ").append(maxDepth).append('\n');
+        out.append(String.format("%5s %16s %16s %16s %16s %16s%n", "depth", "positions", "playable", "X wins", "O wins", "stalemates"));
+
+        for (int depth = 0; depth <= maxDepth; depth++) {
+            out.append(String.format("%5d %16d %16d %16d %16d %16d%n", depth, positions[depth], getPlayable(depth),
+                    playerWins[depth], computerWins[depth], stalemates[depth]));
+        }
+        out.append(String.format("%5s %16d %16s %16d %16d %16d%n", "total", getTotalPositions(), "",
+                getTotalPlayerWins(), getTotalComputerWins(), getTotalStalemates()));
+        out.append(String.format("Elapsed: %.2f s", elapsedNanos / 1e9));
+        return out.toString();
+    }
+}
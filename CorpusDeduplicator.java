@@ -0,0 +1,325 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Removes symmetric copies from stored games and positions. Two games are copies when
+ * one symmetry of the cube maps every move of one onto the same move of the other, and
+ * two positions when a symmetry maps the markers of one onto the other's; the copies
+ * play out exactly alike, so only the first of them is kept, in its canonical form (see
+ * Symmetry). A corpus of random games or positions shrinks by up to 48 times.
+ *
+ * Games are read from an archive (see GameRecordReader) and the unique ones written in
+ * their canonical form to a new archive. Games that are not valid (a cell played twice,
+ * the reserved center played or a cell number past the cube, which only a damaged archive
+ * holds) are dropped. Positions are read one per line in the PositionAnalyzer format and
+ * written in the same format, with '.' for the empty cells and the side to move kept when
+ * the line gave it. Lines that are not a board are dropped; the full rules are left to
+ * PositionAnalyzer.
+ *
+ * Usage: java CorpusDeduplicator games archive output-directory
+ *    or: java CorpusDeduplicator positions [input file | -] [output file | -]
+ *
+ * @see Symmetry
+ *
+ */
+public class CorpusDeduplicator {
+    private static final String USAGE = "Usage: java CorpusDeduplicator games archive output-directory\n"
+            + "   or: java CorpusDeduplicator positions [input file | -] [output file | -]";
+
+    // Moves covered by the high half of a game key (26! / 13! < 2^63)
+    private static final int HIGH_MOVES = TicTacTix.PLAYABLE_CELLS / 2;
+
+    private final KeySet seen = new KeySet();
+    private long read;
+    private long kept;
+    private long invalid;
+
+    public static void main(String[] args) {
+        try {
+            if (args.length < 1)
+                throw new IllegalArgumentException("Say whether to deduplicate games or positions");
+
+            CorpusDeduplicator deduplicator = new CorpusDeduplicator();
+            long start = System.nanoTime();
+            String corpus;
+            switch (args[0]) {
+                case "games":
+                    if (args.length < 3)
+                        throw new IllegalArgumentException("Give the archive and the output directory");
+                    deduplicator.deduplicateGames(Paths.get(args[1]), Paths.get(args[2]));
+                    corpus = "games";
+                    break;
+                case "positions":
+                    String input = (args.length > 1) ? args[1] : "-";
+                    String output = (args.length > 2) ? args[2] : "-";
+                    try (BufferedReader in = input.equals("-")
+                                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16)
+                                : Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8);
+                         Writer out = output.equals("-")
+                                ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16)
+                                : Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)) {
+                        deduplicator.deduplicatePositions(in, out);
+                    }
+                    corpus = "positions";
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown corpus '" + args[0] + "'");
+            }
+
+            // The positions may be going to standard output, so the summary goes elsewhere
+            System.err.printf("Kept %d of %d %s (%d invalid, %d symmetric copies) in %.1f s%n",
+                    deduplicator.kept, deduplicator.read, corpus, deduplicator.invalid,
+                    deduplicator.read - deduplicator.kept - deduplicator.invalid, (System.nanoTime() - start) / 1e9);
+        }
+        catch (IllegalArgumentException e) {
+            System.out.println("ERROR: " + e.getMessage());
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+        catch (IOException e) {
+            System.out.println("ERROR: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Copies the unique games of an archive, in canonical form, to another archive.
+     * @param  archive   the archive to read (directory or segment file)
+     * @param  directory directory of the new archive (must not be the one read)
+     * @throws IOException if the archive cannot be read or the new one written
+     */
+    public void deduplicateGames(Path archive, Path directory) throws IOException {
+        if (Files.exists(directory) && Files.isSameFile(archive, directory))
+            throw new IllegalArgumentException("The output directory must not be the archive being read");
+
+        GameRecordReader reader = GameRecordReader.open(archive);
+        byte[] canonical = new byte[GameRecord.MAX_MOVES];
+        IOException[] failure = new IOException[1];
+
+        try (GameRecordWriter writer = new GameRecordWriter(directory, "dedup", GameRecordWriter.DEFAULT_SEGMENT_BYTES)) {
+            reader.replay((first, result, moves, moveCount) -> {
+                read++;
+                if (failure[0] != null)
+                    return;
+                // Checked before the symmetries, whose tables only cover real cells
+                if (!isValidGame(moves, moveCount)) {
+                    invalid++;
+                    return;
+                }
+
+                int symmetry = Symmetry.canonicalGameSymmetry(moves, moveCount);
+                for (int i = 0; i < moveCount; i++)
+                    canonical[i] = (byte) Symmetry.transformCell(moves[i], symmetry);
+                if (!seen.add(gameKeyHigh(canonical, moveCount), gameKeyLow(canonical, moveCount, first, result)))
+                    return;
+
+                try {
+                    writer.append(first, canonical, moveCount, result);
+                    kept++;
+                }
+                catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+        }
+        if (failure[0] != null)
+            throw failure[0];
+    }
+
+    /**
+     * @param  moves     the cells played, in order
+     * @param  moveCount number of moves
+     * @return           is every move a playable cell that was still free?
+     */
+    private static boolean isValidGame(int[] moves, int moveCount) {
+        int free = TicTacTix.ALL_CELLS & ~TicTacTix.RESERVED_CELLS;
+        for (int i = 0; i < moveCount; i++) {
+            int cell = moves[i];
+            if (cell < 0 || cell >= TicTacTix.CELLS || (free & (1 << cell)) == 0)
+                return false;
+            free &= ~(1 << cell);
+        }
+        return true;
+    }
+
+    /**
+     * Encodes the first HIGH_MOVES moves of a game exactly: move i is stored as its rank
+     * among the cells still free, a digit in base (PLAYABLE_CELLS - i).
+     * @param  moves     the cells played, in order (already checked by isValidGame())
+     * @param  moveCount number of moves
+     * @return           the high half of the game's key
+     */
+    private static long gameKeyHigh(byte[] moves, int moveCount) {
+        int free = TicTacTix.ALL_CELLS & ~TicTacTix.RESERVED_CELLS;
+        long key = 0;
+        for (int i = 0; i < Math.min(moveCount, HIGH_MOVES); i++) {
+            key = key * (TicTacTix.PLAYABLE_CELLS - i) + Integer.bitCount(free & ((1 << moves[i]) - 1));
+            free &= ~(1 << moves[i]);
+        }
+        return key;
+    }
+
+    /**
+     * Encodes the rest of the moves the same way, with the number of moves, the first
+     * player and the result above them and a bit that is always set on top.
+     * @param  moves       the cells played, in order (already checked by isValidGame())
+     * @param  moveCount   number of moves
+     * @param  firstPlayer character code of the player who moved first
+     * @param  result      recorded result of the game
+     * @return             the low half of the game's key
+     */
+    private static long gameKeyLow(byte[] moves, int moveCount, char firstPlayer, char result) {
+        int free = TicTacTix.ALL_CELLS & ~TicTacTix.RESERVED_CELLS;
+        long key = 0;
+        for (int i = 0; i < moveCount; i++) {
+            if (i >= HIGH_MOVES)
+                key = key * (TicTacTix.PLAYABLE_CELLS - i) + Integer.bitCount(free & ((1 << moves[i]) - 1));
+            free &= ~(1 << moves[i]);
+        }
+        // 13! < 2^33, so the header fields fit above the moves
+        return KeySet.OCCUPIED | (GameRecord.header(firstPlayer, moveCount, result) & 0xFFL) << 40 | key;
+    }
+
+    /**
+     * Copies the unique positions of a stream, in canonical form.
+     * @param  in  the positions, one per line
+     * @param  out receives the unique positions, in the order they were first seen
+     * @throws IOException if reading or writing fails
+     */
+    public void deduplicatePositions(BufferedReader in, Writer out) throws IOException {
+        StringBuilder line = new StringBuilder(TicTacTix.CELLS + 2);
+        String position;
+        while ((position = in.readLine()) != null) {
+            read++;
+            int length = position.length();
+            if (length > 0 && position.charAt(length - 1) == '\r')
+                length--;
+
+            long key = positionKey(position, length);
+            if (key == 0) {
+                invalid++;
+                continue;
+            }
+            if (!seen.add(0, key))
+                continue;
+
+            // The canonical board, then the side to move if the line gave one
+            int xCells = Symmetry.first(key);
+            int oCells = Symmetry.second(key);
+            line.setLength(0);
+            for (int cell = 0; cell < TicTacTix.CELLS; cell++) {
+                int bit = 1 << cell;
+                if ((xCells & bit) != 0)
+                    line.append(TicTacTix.PLAYER);
+                else if ((oCells & bit) != 0)
+                    line.append(TicTacTix.COMPUTER);
+                else
+                    line.append((TicTacTix.RESERVED_CELLS & bit) != 0 ? TicTacTix.RESERVED : '.');
+            }
+            if (length == TicTacTix.CELLS + 2)
+                line.append(position, TicTacTix.CELLS, length);
+            out.append(line).append('\n');
+            kept++;
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a position and computes the key it shares with its symmetric copies: the
+     * canonical packed (X, O) key, with a bit for an explicit side to move and one that
+     * is always set.
+     * @param  position a position in the PositionAnalyzer format
+     * @param  length   length of the line without its line break
+     * @return          the key, or 0 if the line is not a board
+     */
+    private static long positionKey(String position, int length) {
+        long cells = PositionAnalyzer.readCells(position, length);
+        if (cells < 0)
+            return 0;
+
+        long key = KeySet.OCCUPIED | Symmetry.canonicalKey(Symmetry.first(cells), Symmetry.second(cells));
+        if (length == TicTacTix.CELLS + 2) {
+            char given = position.charAt(TicTacTix.CELLS + 1);
+            if (position.charAt(TicTacTix.CELLS) != ' ' || (given != TicTacTix.PLAYER && given != TicTacTix.COMPUTER))
+                return 0;
+            // A line that names the side to move is only a copy of one naming the same side
+            key |= (given == TicTacTix.PLAYER) ? 1L << 60 : 1L << 61;
+        }
+        return key;
+    }
+
+    /**
+     * @return number of games or positions read
+     */
+    public long getReadCount() {
+        return read;
+    }
+
+    /**
+     * @return number of games or positions written
+     */
+    public long getKeptCount() {
+        return kept;
+    }
+
+    /**
+     * @return number of games or positions dropped as not valid
+     */
+    public long getInvalidCount() {
+        return invalid;
+    }
+
+    /**
+     * Set of 128-bit keys with open addressing, 16 bytes a slot with no object per key.
+     * The low half of every key has its OCCUPIED bit set, so an empty slot is all zeros.
+     */
+    private static final class KeySet {
+        static final long OCCUPIED = 1L << 63;
+
+        private long[] slots = new long[2 << 16]; // high, low, high, low, ...
+        private int size;
+
+        /**
+         * @return was the key new?
+         */
+        boolean add(long high, long low) {
+            if (size * 3 >= slots.length)
+                grow();
+            if (!insert(slots, high, low))
+                return false;
+            size++;
+            return true;
+        }
+
+        private static boolean insert(long[] slots, long high, long low) {
+            int mask = slots.length / 2 - 1;
+            long hash = (high * 0x9E3779B97F4A7C15L + low) * 0xBF58476D1CE4E5B9L;
+            for (int index = (int) (hash >>> 32) & mask; ; index = (index + 1) & mask) {
+                if (slots[2 * index + 1] == 0) {
+                    slots[2 * index] = high;
+                    slots[2 * index + 1] = low;
+                    return true;
+                }
+                if (slots[2 * index] == high && slots[2 * index + 1] == low)
+                    return false;
+            }
+        }
+
+        private void grow() {
+            long[] larger = new long[slots.length * 2];
+            for (int i = 0; i < slots.length; i += 2) {
+                if (slots[i + 1] != 0)
+                    insert(larger, slots[i], slots[i + 1]);
+            }
+            slots = larger;
+        }
+    }
+}
@@ -0,0 +1,385 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * A game of TicTacTix on a cube of any size (3 x 3 x 3 like the original, 4 x 4 x 4
+ * Qubic, 5 x 5 x 5, ...) with any set of reserved cells. The lines come from a shared
+ * CubeGeometry, so a board only holds the markers and the counters that keep the game
+ * state current: for every line the number of markers of each player, and for every
+ * cell the number of lines it would complete. A move only touches the lines through its
+ * cell, so playing a move, checking for a win and finding the winning cells cost the
+ * same whatever the size of the board.
+ *
+ * TicTacTix keeps its own int-mask implementation of the 3 x 3 x 3 game (the engines
+ * are built around it); its lines come from the same CubeGeometry tables.
+ *
+ * Usage: java CubeBoard [size] [games] [seed] plays random games and shows the last one.
+ *
+ * @see CubeGeometry
+ *
+ */
+public class CubeBoard {
+    private final CubeGeometry geometry;
+    private final int size;
+    private final int words;
+
+    // Each player's cells, 64 to a long (see CubeGeometry)
+    private final long[] playerCells;
+    private final long[] computerCells;
+
+    // Markers of each player on each line
+    private final byte[] playerLineCounts;
+    private final byte[] computerLineCounts;
+    private int filledCells;
+    private int playerLinesDone;
+    private int computerLinesDone;
+
+    // Empty cells that would complete a line right now, with the number of such lines per cell
+    private final byte[] playerThreatCounts;
+    private final byte[] computerThreatCounts;
+    private final long[] playerThreats;
+    private final long[] computerThreats;
+
+    // The empty cells in no particular order (the first getEmptyCount() entries), and the
+    // position of each empty cell in that list, so a move removes its cell in constant time
+    private final short[] freeCells;
+    private final short[] freeSlot;
+
+    /**
+     * Creates an empty board of the given size, with the center reserved if it has one.
+     * @param size number of cells along an edge
+     */
+    public CubeBoard(int size) {
+        this(CubeGeometry.withCenterReserved(size));
+    }
+
+    /**
+     * Creates an empty board.
+     * @param geometry size and reserved cells of the board
+     */
+    public CubeBoard(CubeGeometry geometry) {
+        this.geometry = geometry;
+        this.size = geometry.getSize();
+        this.words = geometry.getWords();
+        this.playerCells = new long[words];
+        this.computerCells = new long[words];
+        this.playerLineCounts = new byte[geometry.getLineCount()];
+        this.computerLineCounts = new byte[geometry.getLineCount()];
+        this.playerThreatCounts = new byte[geometry.getCells()];
+        this.computerThreatCounts = new byte[geometry.getCells()];
+        this.playerThreats = new long[words];
+        this.computerThreats = new long[words];
+        this.freeCells = new short[geometry.getPlayableCells()];
+        this.freeSlot = new short[geometry.getCells()];
+        fillFreeCells();
+    }
+
+    /**
+     * Lists every playable cell as free.
+     */
+    private void fillFreeCells() {
+        int slot = 0;
+        for (int cell = 0; cell < geometry.getCells(); cell++) {
+            if (!geometry.isReserved(cell)) {
+                freeCells[slot] = (short) cell;
+                freeSlot[cell] = (short) slot++;
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            int size = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+            long games = (args.length > 1) ? Long.parseLong(args[1]) : 100000;
+            SplittableRandom random = new SplittableRandom((args.length > 2) ? Long.parseLong(args[2]) : System.nanoTime());
+
+            CubeBoard board = new CubeBoard(size);
+            long[] results = new long[3]; // X wins, O wins, stalemates
+            long moves = 0;
+            long start = System.nanoTime();
+
+            for (long game = 0; game < games; game++) {
+                board.reset();
+                char turn = TicTacTix.PLAYER;
+                while (board.findGameState() == TicTacTix.PLAYABLE) {
+                    board.makeMove(turn, board.randomEmptyCell(random));
+                    moves++;
+                    turn = (turn == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+                }
+                char state = board.findGameState();
+                results[(state == TicTacTix.PLAYER) ? 0 : (state == TicTacTix.COMPUTER) ? 1 : 2]++;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.println(board);
+            System.out.printf("%dx%dx%d: %d lines, %d random games (X %d, O %d, stalemates %d), %.1f moves per game%n",
+                    size, size, size, board.geometry.getLineCount(), games, results[0], results[1], results[2],
+                    (double) moves / games);
+            System.out.printf("%.0f games/s, %.0f moves/s%n", games / seconds, moves / seconds);
+        }
+        catch (IllegalArgumentException e) {
+            System.out.println("ERROR: " + e.getMessage());
+            System.out.println("Usage: java CubeBoard [size] [games] [seed]");
+            System.exit(1);
+        }
+    }
+
+    public CubeGeometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Puts a player's marker on a cell.
+     * @param player character code for the player making the move (PLAYER / COMPUTER)
+     * @param cell   index of the cell to play (see CubeGeometry.cellIndex())
+     * @throws IllegalArgumentException if the player is unknown or the cell is not free
+     */
+    public void makeMove(char player, int cell) {
+        if (player != TicTacTix.PLAYER && player != TicTacTix.COMPUTER)
+            throw new IllegalArgumentException("Invalid player: " + player);
+        if (cell < 0 || cell >= geometry.getCells() || !isEmpty(cell))
+            throw new IllegalArgumentException("Cell " + cell + " cannot be played");
+
+        int first = geometry.cellLineStart[cell];
+        int last = geometry.cellLineStart[cell + 1];
+
+        // Take out what the lines through the cell contributed to the threats...
+        for (int i = first; i < last; i++)
+            updateThreats(geometry.cellLines[i], -1);
+
+        boolean isPlayer = (player == TicTacTix.PLAYER);
+        long[] cells = isPlayer ? playerCells : computerCells;
+        byte[] counts = isPlayer ? playerLineCounts : computerLineCounts;
+        cells[cell >>> 6] |= 1L << cell;
+        for (int i = first; i < last; i++) {
+            if (++counts[geometry.cellLines[i]] == size) {
+                if (isPlayer)
+                    playerLinesDone++;
+                else
+                    computerLinesDone++;
+            }
+        }
+        // Swap the cell with the last free entry and drop it
+        short moved = freeCells[getEmptyCount() - 1];
+        freeCells[freeSlot[cell]] = moved;
+        freeSlot[moved] = freeSlot[cell];
+        filledCells++;
+
+        // ...and put back what they contribute after the move
+        for (int i = first; i < last; i++)
+            updateThreats(geometry.cellLines[i], 1);
+    }
+
+    /**
+     * Adds (or removes) one line's contribution to the threats. A line is a threat for a
+     * player who has all but one of its cells when the last one is empty.
+     * @param line  index of the line
+     * @param delta 1 to add the contribution, -1 to remove it
+     */
+    private void updateThreats(int line, int delta) {
+        if (playerLineCounts[line] == size - 1 && computerLineCounts[line] == 0)
+            adjustThreat(playerThreatCounts, playerThreats, emptyCellOf(line), delta);
+        else if (computerLineCounts[line] == size - 1 && playerLineCounts[line] == 0)
+            adjustThreat(computerThreatCounts, computerThreats, emptyCellOf(line), delta);
+    }
+
+    /**
+     * @param  line index of a line with exactly one empty cell
+     * @return      that cell
+     */
+    private int emptyCellOf(int line) {
+        for (int step = 0; step < size; step++) {
+            int cell = geometry.lineCells[line * size + step];
+            if (isEmpty(cell))
+                return cell;
+        }
+        throw new IllegalStateException("Line " + line + " is full");
+    }
+
+    private static void adjustThreat(byte[] counts, long[] threats, int cell, int delta) {
+        counts[cell] += delta;
+        if (counts[cell] > 0)
+            threats[cell >>> 6] |= 1L << cell;
+        else
+            threats[cell >>> 6] &= ~(1L << cell);
+    }
+
+    /**
+     * Clears the board for a new game.
+     */
+    public void reset() {
+        Arrays.fill(playerCells, 0);
+        Arrays.fill(computerCells, 0);
+        Arrays.fill(playerLineCounts, (byte) 0);
+        Arrays.fill(computerLineCounts, (byte) 0);
+        Arrays.fill(playerThreatCounts, (byte) 0);
+        Arrays.fill(computerThreatCounts, (byte) 0);
+        Arrays.fill(playerThreats, 0);
+        Arrays.fill(computerThreats, 0);
+        filledCells = 0;
+        playerLinesDone = 0;
+        computerLinesDone = 0;
+        fillFreeCells();
+    }
+
+    /**
+     * Same rules as TicTacTix.findGameState(): a full board is a stalemate, otherwise a
+     * completed line wins.
+     * @return PLAYER / COMPUTER for a win, otherwise STALEMATE or PLAYABLE
+     */
+    public char findGameState() {
+        if (filledCells == geometry.getPlayableCells())
+            return TicTacTix.STALEMATE;
+        if (playerLinesDone > 0)
+            return TicTacTix.PLAYER;
+        if (computerLinesDone > 0)
+            return TicTacTix.COMPUTER;
+        return TicTacTix.PLAYABLE;
+    }
+
+    /**
+     * @param  cell index of a cell
+     * @return      can the cell be played on?
+     */
+    public boolean isEmpty(int cell) {
+        long bit = 1L << cell;
+        int word = cell >>> 6;
+        return ((playerCells[word] | computerCells[word]) & bit) == 0 && !geometry.isReserved(cell);
+    }
+
+    /**
+     * @param  cell index of a cell
+     * @return      PLAYER / COMPUTER if the cell is taken, RESERVED for reserved cells, ' ' otherwise
+     */
+    public char getCell(int cell) {
+        long bit = 1L << cell;
+        if ((playerCells[cell >>> 6] & bit) != 0)
+            return TicTacTix.PLAYER;
+        if ((computerCells[cell >>> 6] & bit) != 0)
+            return TicTacTix.COMPUTER;
+        if (geometry.isReserved(cell))
+            return TicTacTix.RESERVED;
+        return ' ';
+    }
+
+    public char getCell(int layer, int row, int column) {
+        return getCell(geometry.cellIndex(layer, row, column));
+    }
+
+    /**
+     * @return number of cells that can still be played on
+     */
+    public int getEmptyCount() {
+        return geometry.getPlayableCells() - filledCells;
+    }
+
+    /**
+     * Writes the mask of the empty cells.
+     * @param out array of at least getWords() longs
+     */
+    public void getEmptyCells(long[] out) {
+        for (int word = 0; word < words; word++)
+            out[word] = ~(playerCells[word] | computerCells[word] | geometry.reserved[word]) & wordMask(word);
+    }
+
+    /**
+     * @param  word index of a word of a cell mask
+     * @return      the bits of that word that stand for cells of the board
+     */
+    private long wordMask(int word) {
+        int cellsInWord = Math.min(64, geometry.getCells() - word * 64);
+        return (cellsInWord == 64) ? -1L : (1L << cellsInWord) - 1;
+    }
+
+    /**
+     * Finds the next empty cell, for walking through the moves without building a list.
+     * @param  from index of the first cell to look at
+     * @return      the first empty cell at or after 'from', or -1 if there is none
+     */
+    public int nextEmptyCell(int from) {
+        for (int word = from >>> 6; word < words && from < geometry.getCells(); word++) {
+            long empty = ~(playerCells[word] | computerCells[word] | geometry.reserved[word]) & wordMask(word);
+            if (word == from >>> 6)
+                empty &= -1L << from;
+            if (empty != 0)
+                return word * 64 + Long.numberOfTrailingZeros(empty);
+        }
+        return -1;
+    }
+
+    /**
+     * Picks an empty cell uniformly at random in constant time, from the free-cell index.
+     * @param  random source of randomness
+     * @return        index of the cell
+     * @throws IllegalStateException if the board is full
+     */
+    public int randomEmptyCell(RandomGenerator random) {
+        int empty = getEmptyCount();
+        if (empty == 0)
+            throw new IllegalStateException("The board is full");
+        return freeCells[random.nextInt(empty)];
+    }
+
+    /**
+     * @param  player character code for the player (PLAYER / COMPUTER)
+     * @param  cell   index of a cell
+     * @return        would playing the cell complete a line for the player?
+     */
+    public boolean isThreat(char player, int cell) {
+        long[] threats = (player == TicTacTix.PLAYER) ? playerThreats : computerThreats;
+        return (threats[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Writes the mask of the cells that would complete a line for a player.
+     * @param player character code for the player (PLAYER / COMPUTER)
+     * @param out    array of at least getWords() longs
+     */
+    public void getThreats(char player, long[] out) {
+        long[] threats = (player == TicTacTix.PLAYER) ? playerThreats : computerThreats;
+        System.arraycopy(threats, 0, out, 0, words);
+    }
+
+    /**
+     * Draws the layers side by side, in the same style as TicTacTix.
+     * @return the picture of the board
+     */
+    public String toString() {
+        int layerWidth = 2 * size + 4; // "r: " + cells and bars + two spaces
+        StringBuilder out = new StringBuilder();
+
+        out.append(' ').append("=".repeat(layerWidth * size - 1)).append('\n');
+        for (int layer = 0; layer < size; layer++) {
+            String label = "  Layer " + (layer + 1);
+            out.append(label).append(" ".repeat(Math.max(1, layerWidth - label.length())));
+        }
+        out.append('\n');
+        for (int layer = 0; layer < size; layer++) {
+            out.append((layer == 0) ? "   " : "    ");
+            for (int column = 0; column < size; column++)
+                out.append(column + 1).append(' ');
+        }
+        out.append('\n').append(' ').append("-".repeat(layerWidth * size - 1)).append('\n');
+
+        for (int row = 0; row < size; row++) {
+            for (int layer = 0; layer < size; layer++) {
+                out.append(row + 1).append(": ");
+                for (int column = 0; column < size; column++) {
+                    out.append(getCell(layer, row, column));
+                    if (column < size - 1)
+                        out.append('|');
+                }
+                out.append("  ");
+            }
+            out.append('\n');
+            if (row < size - 1) {
+                for (int layer = 0; layer < size; layer++)
+                    out.append((layer == 0) ? "   " : "     ").append("=+".repeat(size - 1)).append('=');
+                out.append('\n');
+            }
+        }
+        out.append("\n ").append("*".repeat(layerWidth * size - 1)).append('\n');
+        return out.toString();
+    }
+}
@@ -0,0 +1,245 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The fixed part of an N x N x N game: which cells are reserved, every winning line and
+ * which lines pass through each cell. It is generated once per size and set of reserved
+ * cells and shared (it never changes) by every board that uses it, so a game only
+ * carries its own markers and counters.
+ *
+ * Cells are numbered like in TicTacTix: cell [layer][row][column] has the index
+ * (layer * N + row) * N + column. Sets of cells are bitmasks stored in longs, 64 cells
+ * to a word, so any size works (a 5 x 5 x 5 board takes two words).
+ *
+ * A winning line is any straight run of N cells: rows, columns, pillars, the diagonals of
+ * every plane and the four space diagonals, ((N + 2)^3 - N^3) / 2 lines in all (49 for
+ * N = 3, 76 for N = 4, 109 for N = 5). Lines through a reserved cell can never be
+ * completed, so they are left out.
+ *
+ * @see CubeBoard
+ *
+ */
+public final class CubeGeometry {
+    public static final int MIN_SIZE = 2;
+    public static final int MAX_SIZE = 8;
+
+    // Geometries already built, keyed by size and reserved cells
+    private static final Map<String, CubeGeometry> CACHE = new ConcurrentHashMap<>();
+
+    private final int size;
+    private final int cells;
+    private final int words;
+    final long[] reserved;
+    private final int playableCells;
+
+    // The cells of line i are lineCells[i * size] to lineCells[i * size + size - 1]
+    final int[] lineCells;
+    // The lines through cell c are cellLines[cellLineStart[c]] to cellLines[cellLineStart[c + 1] - 1]
+    final int[] cellLineStart;
+    final int[] cellLines;
+
+    /**
+     * Builds the tables. Use of() or withCenterReserved() to get a (shared) instance.
+     * @param size          number of cells along an edge
+     * @param reservedCells indices of the cells nobody may play on (sorted, no duplicates)
+     */
+    private CubeGeometry(int size, int[] reservedCells) {
+        this.size = size;
+        this.cells = size * size * size;
+        this.words = (cells + 63) / 64;
+        this.reserved = new long[words];
+        for (int cell: reservedCells)
+            reserved[cell >>> 6] |= 1L << cell;
+        this.playableCells = cells - reservedCells.length;
+
+        this.lineCells = buildLines();
+        int lineCount = lineCells.length / size;
+
+        // Count the lines through every cell, then fill them in
+        this.cellLineStart = new int[cells + 1];
+        for (int cell: lineCells)
+            cellLineStart[cell + 1]++;
+        for (int cell = 0; cell < cells; cell++)
+            cellLineStart[cell + 1] += cellLineStart[cell];
+
+        this.cellLines = new int[lineCells.length];
+        int[] next = Arrays.copyOf(cellLineStart, cells);
+        for (int line = 0; line < lineCount; line++) {
+            for (int step = 0; step < size; step++)
+                cellLines[next[lineCells[line * size + step]]++] = line;
+        }
+    }
+
+    /**
+     * Returns the geometry of a board of the given size with the given reserved cells.
+     * Asking twice for the same board returns the same instance.
+     * @param  size          number of cells along an edge (MIN_SIZE to MAX_SIZE)
+     * @param  reservedCells indices of the cells nobody may play on
+     * @return               the shared geometry
+     */
+    public static CubeGeometry of(int size, int... reservedCells) {
+        if (size < MIN_SIZE || size > MAX_SIZE)
+            throw new IllegalArgumentException("The size must be between " + MIN_SIZE + " and " + MAX_SIZE);
+
+        int[] sorted = Arrays.stream(reservedCells).sorted().distinct().toArray();
+        for (int cell: sorted) {
+            if (cell < 0 || cell >= size * size * size)
+                throw new IllegalArgumentException("Cell " + cell + " is not on the board");
+        }
+        return CACHE.computeIfAbsent(size + ":" + Arrays.toString(sorted), key -> new CubeGeometry(size, sorted));
+    }
+
+    /**
+     * Returns the geometry the original game rule generalizes to: the center cell is
+     * reserved when there is one (odd sizes), nothing is reserved otherwise.
+     * @param  size number of cells along an edge
+     * @return      the shared geometry
+     */
+    public static CubeGeometry withCenterReserved(int size) {
+        if (size % 2 == 0)
+            return of(size);
+        int middle = size / 2;
+        return of(size, (middle * size + middle) * size + middle);
+    }
+
+    /**
+     * Generates every line of the cube that does not pass through a reserved cell. Only
+     * one of each pair of opposite directions is walked, so every line comes out once.
+     * @return the cells of the lines, size entries per line
+     */
+    private int[] buildLines() {
+        int[] lines = new int[((size + 2) * (size + 2) * (size + 2) - cells) / 2 * size];
+        int count = 0;
+
+        for (int start = 0; start < cells; start++) {
+            int layer = start / (size * size);
+            int row = (start / size) % size;
+            int column = start % size;
+
+            // Directions: (dLayer, dRow, dColumn) with the first non-zero component positive
+            for (int dLayer = 0; dLayer <= 1; dLayer++) {
+                for (int dRow = -1; dRow <= 1; dRow++) {
+                    for (int dColumn = -1; dColumn <= 1; dColumn++) {
+                        boolean forward = dLayer > 0 || (dLayer == 0 && dRow > 0)
+                                || (dLayer == 0 && dRow == 0 && dColumn > 0);
+                        if (!forward)
+                            continue;
+
+                        int last = size - 1;
+                        if (!inside(layer + last * dLayer) || !inside(row + last * dRow) || !inside(column + last * dColumn))
+                            continue;
+
+                        boolean blocked = false;
+                        for (int step = 0; step < size; step++) {
+                            int cell = cellIndex(layer + step * dLayer, row + step * dRow, column + step * dColumn);
+                            lines[count + step] = cell;
+                            blocked |= isReserved(cell);
+                        }
+                        if (!blocked)
+                            count += size;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(lines, count);
+    }
+
+    private boolean inside(int coordinate) {
+        return coordinate >= 0 && coordinate < size;
+    }
+
+    /**
+     * @param  layer  layer coord of the cell
+     * @param  row    row coord of the cell
+     * @param  column column coord of the cell
+     * @return        index of the cell
+     */
+    public int cellIndex(int layer, int row, int column) {
+        return (layer * size + row) * size + column;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return number of cells, reserved ones included
+     */
+    public int getCells() {
+        return cells;
+    }
+
+    /**
+     * @return number of cells that can be played on
+     */
+    public int getPlayableCells() {
+        return playableCells;
+    }
+
+    /**
+     * @return number of longs in a bitmask of cells
+     */
+    public int getWords() {
+        return words;
+    }
+
+    /**
+     * @return number of winning lines
+     */
+    public int getLineCount() {
+        return lineCells.length / size;
+    }
+
+    /**
+     * @param  line index of a line
+     * @param  step position along the line (0 to size - 1)
+     * @return      the cell at that position
+     */
+    public int getLineCell(int line, int step) {
+        return lineCells[line * size + step];
+    }
+
+    /**
+     * @param  cell index of a cell
+     * @return      number of winning lines through the cell
+     */
+    public int getLinesThrough(int cell) {
+        return cellLineStart[cell + 1] - cellLineStart[cell];
+    }
+
+    public boolean isReserved(int cell) {
+        return (reserved[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * @return a copy of the mask of the reserved cells
+     */
+    public long[] getReservedCells() {
+        return reserved.clone();
+    }
+
+    /**
+     * Returns every line as a bitmask, for boards of at most 32 cells (such as TicTacTix).
+     * @return one mask per line, in line order
+     */
+    int[] getLineMasks() {
+        if (cells > 32)
+            throw new IllegalStateException("A board of " + cells + " cells does not fit in an int");
+
+        int[] masks = new int[getLineCount()];
+        for (int i = 0; i < lineCells.length; i++)
+            masks[i / size] |= 1 << lineCells[i];
+        return masks;
+    }
+
+    /**
+     * @return the indices of the lines through each cell, for TicTacTix's lookup table
+     */
+    int[][] getLinesThroughCells() {
+        int[][] table = new int[cells][];
+        for (int cell = 0; cell < cells; cell++)
+            table[cell] = Arrays.copyOfRange(cellLines, cellLineStart[cell], cellLineStart[cell + 1]);
+        return table;
+    }
+}
@@ -0,0 +1,224 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.SplittableRandom;
+
+/**
+ * Load generator for GameServer. Opens many connections from one thread (non-blocking
+ * NIO, like the server) and has each of them play a number of games with random moves,
+ * then reports the throughput and the latency of a move as seen by the client: from
+ * sending MOVE to receiving the answer (the computer's move or the end of the game).
+ *
+ * Every connection keeps its own copy of the board, so it only ever sends legal moves.
+ *
+ * Usage: java GameLoadClient [host] [port] [connections] [games per connection] [seed]
+ *
+ * @see GameServer
+ *
+ */
+public class GameLoadClient {
+    private static final int BUFFER_BYTES = 4096;
+
+    private final InetSocketAddress address;
+    private final int connections;
+    private final int gamesPerConnection;
+    private final long seed;
+
+    // Results
+    private final LatencyStats moveLatency = new LatencyStats();
+    private long games;
+    private long moves;
+    private long errors;
+    private final long[] results = new long[3]; // X wins, O wins, stalemates
+
+    /**
+     * One simulated player.
+     */
+    private static class Connection {
+        final SocketChannel channel;
+        final TicTacTix board = new TicTacTix();
+        final MoveEngine strategy;
+        final ByteBuffer input = ByteBuffer.allocate(BUFFER_BYTES);
+        final ByteBuffer output = ByteBuffer.allocate(BUFFER_BYTES);
+        int gamesLeft;
+        long sentAt; // when the last MOVE was sent (0 if no answer is expected)
+
+        Connection(SocketChannel channel, long seed, int games) {
+            this.channel = channel;
+            this.strategy = new RandomEngine(seed);
+            this.gamesLeft = games;
+        }
+    }
+
+    /**
+     * @param address            where the server listens
+     * @param connections        number of simultaneous connections
+     * @param gamesPerConnection number of games each connection plays
+     * @param seed               seed of the random players
+     */
+    public GameLoadClient(InetSocketAddress address, int connections, int gamesPerConnection, long seed) {
+        if (connections < 1 || gamesPerConnection < 1)
+            throw new IllegalArgumentException("At least one connection and one game are needed");
+
+        this.address = address;
+        this.connections = connections;
+        this.gamesPerConnection = gamesPerConnection;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) {
+        try {
+            String host = (args.length > 0) ? args[0] : "localhost";
+            int port = (args.length > 1) ? Integer.parseInt(args[1]) : GameServer.DEFAULT_PORT;
+            int connections = (args.length > 2) ? Integer.parseInt(args[2]) : 1000;
+            int games = (args.length > 3) ? Integer.parseInt(args[3]) : 10;
+            long seed = (args.length > 4) ? Long.parseLong(args[4]) : System.nanoTime();
+
+            GameLoadClient client = new GameLoadClient(new InetSocketAddress(host, port), connections, games, seed);
+            System.out.println(client.run());
+        }
+        catch (IllegalArgumentException | IOException e) {
+            System.out.println("ERROR: " + e.getMessage());
+            System.out.println("Usage: java GameLoadClient [host] [port] [connections] [games per connection] [seed]");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Connects, plays every game and disconnects.
+     * @return a report of the run
+     * @throws IOException if the selector cannot be opened or a connection fails
+     */
+    public String run() throws IOException {
+        long start = System.nanoTime();
+        SplittableRandom seeds = new SplittableRandom(seed);
+        int open = 0;
+
+        try (Selector selector = Selector.open()) {
+            for (int i = 0; i < connections; i++) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                channel.connect(address);
+                channel.register(selector, SelectionKey.OP_CONNECT, new Connection(channel, seeds.nextLong(), gamesPerConnection));
+                open++;
+            }
+
+            while (open > 0) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+
+                    if (key.isConnectable()) {
+                        connection.channel.finishConnect();
+                        key.interestOps(SelectionKey.OP_READ);
+                        send(connection, "NEW X");
+                    }
+                    else if (key.isReadable() && !read(connection)) {
+                        connection.channel.close();
+                        open--;
+                    }
+                }
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return String.format("%d connections, %d games (X %d, O %d, stalemates %d), %d moves, %d errors in %.2f s%n"
+                + "%.0f games/s, %.0f moves/s%nmove latency: %s", connections, games, results[0], results[1], results[2],
+                moves, errors, seconds, games / seconds, moves / seconds, moveLatency);
+    }
+
+    /**
+     * Reads and handles what the server sent.
+     * @return should the connection stay open?
+     */
+    private boolean read(Connection connection) throws IOException {
+        if (connection.channel.read(connection.input) < 0)
+            return false;
+
+        ByteBuffer input = connection.input;
+        byte[] bytes = input.array();
+        int start = 0;
+        boolean open = true;
+
+        for (int i = 0; i < input.position(); i++) {
+            if (bytes[i] == '\n') {
+                open &= handleLine(connection, new String(bytes, start, i - start, StandardCharsets.US_ASCII));
+                start = i + 1;
+            }
+        }
+        input.flip();
+        input.position(start);
+        input.compact();
+        return open;
+    }
+
+    /**
+     * Reacts to one line from the server.
+     * @return should the connection stay open?
+     */
+    private boolean handleLine(Connection connection, String line) throws IOException {
+        if (line.startsWith("TURN")) {
+            recordAnswer(connection);
+            int cell = connection.strategy.chooseMove(connection.board, TicTacTix.PLAYER);
+            connection.board.makeMove(TicTacTix.PLAYER, cell);
+            moves++;
+
+            int size = TicTacTix.SIZE;
+            connection.sentAt = System.nanoTime();
+            send(connection, "MOVE " + (cell / (size * size) + 1) + " " + ((cell / size) % size + 1) + " " + (cell % size + 1));
+        }
+        else if (line.startsWith("MOVED")) {
+            String[] words = line.split(" ");
+            int cell = TicTacTix.cellIndex(Integer.parseInt(words[2]) - 1, Integer.parseInt(words[3]) - 1,
+                    Integer.parseInt(words[4]) - 1);
+            connection.board.makeMove(TicTacTix.COMPUTER, cell);
+            moves++;
+        }
+        else if (line.startsWith("OVER")) {
+            recordAnswer(connection);
+            games++;
+            char state = line.charAt(line.length() - 1);
+            results[(state == TicTacTix.PLAYER) ? 0 : (state == TicTacTix.COMPUTER) ? 1 : 2]++;
+
+            connection.board.reset();
+            connection.gamesLeft--;
+            send(connection, (connection.gamesLeft > 0) ? "NEW X" : "QUIT");
+        }
+        else if (line.startsWith("BYE")) {
+            return false;
+        }
+        else if (line.startsWith("ERROR")) {
+            errors++;
+        }
+        return true;
+    }
+
+    private void recordAnswer(Connection connection) {
+        if (connection.sentAt != 0) {
+            moveLatency.record(System.nanoTime() - connection.sentAt);
+            connection.sentAt = 0;
+        }
+    }
+
+    /**
+     * Sends a line to the server. Commands are tiny and one at a time, so the socket
+     * always takes them whole; the loop only guards against a short write.
+     */
+    private void send(Connection connection, String line) throws IOException {
+        ByteBuffer output = connection.output;
+        output.clear();
+        output.put(line.getBytes(StandardCharsets.US_ASCII)).put((byte) '\n');
+        output.flip();
+        while (output.hasRemaining())
+            connection.channel.write(output);
+    }
+}
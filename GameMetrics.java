@@ -0,0 +1,280 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for the hot paths of a game: TicTacTix.makeMove(),
+ * findGameState() and toString(), the computer's moves and the turns of the console game.
+ *
+ * Metrics are off unless the JVM is started with -Dtictactix.metrics=true. The switch is
+ * read once into a static final, so when it is off the JIT drops the instrumentation
+ * altogether and the hot paths cost exactly what they did without it. When it is on,
+ * recording is lock-free (atomic bucket counters shared by every thread) and the metrics
+ * are published as JMX MXBeans under the "tictactix" domain. Setting
+ * -Dtictactix.metrics.dump=seconds also writes them periodically, as text or (with
+ * -Dtictactix.metrics.format=json) one JSON object per dump, to standard error or to the
+ * file given by -Dtictactix.metrics.file.
+ *
+ * @see LatencyStats
+ *
+ */
+public final class GameMetrics {
+    public static final boolean ENABLED = Boolean.getBoolean("tictactix.metrics");
+
+    // Placing a marker, for every move made through either TicTacTix.makeMove()
+    public static final Operation MAKE_MOVE = new Operation("makeMove");
+    // The computer's whole move in the console game (choosing the cell included)
+    public static final Operation COMPUTER_MOVE = new Operation("computerMove");
+    public static final Operation FIND_GAME_STATE = new Operation("findGameState");
+    public static final Operation TO_STRING = new Operation("toString");
+    public static final Operation TURN = new Operation("turn");
+    private static final Operation[] OPERATIONS = {MAKE_MOVE, COMPUTER_MOVE, FIND_GAME_STATE, TO_STRING, TURN};
+
+    // Attempts rejected by the move loop of makeMove(player) (bad input or a bad engine move)
+    private static final LongAdder moveRetries = new LongAdder();
+
+    private static ScheduledExecutorService dumper;
+
+    static {
+        if (ENABLED) {
+            register();
+            long seconds = Long.getLong("tictactix.metrics.dump", 0);
+            if (seconds > 0)
+                startDump(seconds, "json".equals(System.getProperty("tictactix.metrics.format")),
+                        System.getProperty("tictactix.metrics.file"));
+        }
+    }
+
+    private GameMetrics() {
+    }
+
+    /**
+     * The JMX view of one instrumented operation. Times are in nanoseconds.
+     */
+    public interface OperationMXBean {
+        long getCount();
+        double getMeanNanos();
+        long getP50Nanos();
+        long getP99Nanos();
+        long getP999Nanos();
+        long getMaxNanos();
+        void reset();
+    }
+
+    /**
+     * The JMX view of the counters, with the whole set of metrics as text or JSON.
+     */
+    public interface GameMetricsMXBean {
+        long getMoveRetries();
+        String dumpText();
+        String dumpJson();
+        void reset();
+    }
+
+    /**
+     * Latency histogram of one operation, bucketed like LatencyStats. Any number of
+     * threads can record at the same time without locking.
+     */
+    public static final class Operation implements OperationMXBean {
+        private final String name;
+        private final AtomicLongArray counts = new AtomicLongArray(LatencyStats.BUCKETS);
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong max = new AtomicLong();
+
+        private Operation(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Records one call.
+         * @param nanos how long it took
+         */
+        public void record(long nanos) {
+            long value = Math.max(0, nanos);
+            counts.incrementAndGet(LatencyStats.bucket(value));
+            sum.add(value);
+            // Only touch the shared extremes when they change
+            if (value < min.get())
+                min.accumulateAndGet(value, Math::min);
+            if (value > max.get())
+                max.accumulateAndGet(value, Math::max);
+        }
+
+        /**
+         * @return a copy of the histogram (calls recorded meanwhile may be partly included)
+         */
+        public LatencyStats snapshot() {
+            long[] copy = new long[LatencyStats.BUCKETS];
+            for (int i = 0; i < copy.length; i++)
+                copy[i] = counts.get(i);
+            return new LatencyStats(copy, sum.sum(), min.get(), max.get());
+        }
+
+        public long getCount() {
+            return snapshot().getCount();
+        }
+
+        public double getMeanNanos() {
+            return snapshot().getMean();
+        }
+
+        public long getP50Nanos() {
+            return snapshot().getPercentile(50);
+        }
+
+        public long getP99Nanos() {
+            return snapshot().getPercentile(99);
+        }
+
+        public long getP999Nanos() {
+            return snapshot().getPercentile(99.9);
+        }
+
+        public long getMaxNanos() {
+            return max.get();
+        }
+
+        public void reset() {
+            for (int i = 0; i < counts.length(); i++)
+                counts.set(i, 0);
+            sum.reset();
+            min.set(Long.MAX_VALUE);
+            max.set(0);
+        }
+    }
+
+    /**
+     * Counts one rejected attempt of the move loop.
+     */
+    public static void countRetry() {
+        moveRetries.increment();
+    }
+
+    /**
+     * Publishes the operations and the counters on the platform MBean server.
+     */
+    private static void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (Operation operation: OPERATIONS)
+                server.registerMBean(operation, new ObjectName("tictactix:type=Operation,name=" + operation.getName()));
+            server.registerMBean(new Counters(), new ObjectName("tictactix:type=GameMetrics"));
+        }
+        catch (JMException e) {
+            System.err.println("Could not register the metrics MBeans: " + e.getMessage());
+        }
+    }
+
+    private static final class Counters implements GameMetricsMXBean {
+        public long getMoveRetries() {
+            return moveRetries.sum();
+        }
+
+        public String dumpText() {
+            return toText();
+        }
+
+        public String dumpJson() {
+            return toJson();
+        }
+
+        public void reset() {
+            GameMetrics.reset();
+        }
+    }
+
+    /**
+     * Writes the metrics every so often from a daemon thread.
+     * @param seconds time between dumps
+     * @param json    write JSON rather than text
+     * @param file    file to append to, or null for standard error
+     */
+    static synchronized void startDump(long seconds, boolean json, String file) {
+        if (dumper != null)
+            dumper.shutdownNow();
+
+        dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> {
+            String dump = (json ? toJson() : toText()) + System.lineSeparator();
+            if (file == null) {
+                System.err.print(dump);
+                return;
+            }
+            try {
+                Files.write(Paths.get(file), dump.getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            catch (IOException e) {
+                System.err.println("Could not write the metrics: " + e.getMessage());
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public static void reset() {
+        for (Operation operation: OPERATIONS)
+            operation.reset();
+        moveRetries.reset();
+    }
+
+    /**
+     * @return the metrics as a small table, times in nanoseconds
+     */
+    public static String toText() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%-14s %10s %10s %10s %10s %10s %12s%n", "operation", "count", "mean", "p50", "p99", "p99.9", "max"));
+        for (Operation operation: OPERATIONS) {
+            LatencyStats stats = operation.snapshot();
+            text.append(String.format("%-14s %10d %10.0f %10d %10d %10d %12d%n", operation.getName(), stats.getCount(),
+                    stats.getMean(), stats.getPercentile(50), stats.getPercentile(99), stats.getPercentile(99.9), stats.getMax()));
+        }
+        text.append("move retries: ").append(moveRetries.sum());
+        return text.toString();
+    }
+
+    /**
+     * @return the metrics as one line of JSON, times in nanoseconds
+     */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"timestamp\":").append(System.currentTimeMillis()).append(",\"operations\":{");
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            LatencyStats stats = OPERATIONS[i].snapshot();
+            if (i > 0)
+                json.append(',');
+            json.append('"').append(OPERATIONS[i].getName()).append("\":{")
+                .append("\"count\":").append(stats.getCount())
+                .append(",\"meanNanos\":").append(Math.round(stats.getMean()))
+                .append(",\"p50Nanos\":").append(stats.getPercentile(50))
+                .append(",\"p99Nanos\":").append(stats.getPercentile(99))
+                .append(",\"p999Nanos\":").append(stats.getPercentile(99.9))
+                .append(",\"maxNanos\":").append(stats.getMax())
+                .append('}');
+        }
+        json.append("},\"counters\":{\"moveRetries\":").append(moveRetries.sum()).append("}}");
+        return json.toString();
+    }
+}
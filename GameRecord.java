@@ -0,0 +1,179 @@
+import java.nio.ByteBuffer;
+
+/**
+ * The binary format of archived games. A game takes between 1 and 18 bytes:
+ * <pre>
+ *   header (1 byte):  result (2 bits) | first player (1 bit) | number of moves (5 bits)
+ *   moves:            the cell index of every move, 5 bits each, packed least
+ *                     significant bit first and padded to a whole byte
+ * </pre>
+ * The result is 0 for an X win, 1 for an O win, 2 for a stalemate and 3 for a game that
+ * was not finished; the first player bit is 0 for X and 1 for O.
+ *
+ * Records are stored back to back in segment files that start with a 16 byte header:
+ * magic "TTXG" | version (2 bytes) | bits per move (1 byte) | unused (1 byte) |
+ * creation time in milliseconds (8 bytes), big endian.
+ *
+ * @see GameRecordWriter
+ * @see GameRecordReader
+ *
+ */
+public final class GameRecord {
+    public static final int MAGIC = 0x54545847; // "TTXG"
+    public static final short VERSION = 1;
+    public static final int SEGMENT_HEADER_BYTES = 16;
+    public static final int BITS_PER_MOVE = 5;
+    public static final int MAX_MOVES = TicTacTix.PLAYABLE_CELLS;
+    public static final int MAX_RECORD_BYTES = 1 + (MAX_MOVES * BITS_PER_MOVE + 7) / 8;
+
+    private static final int MOVE_MASK = (1 << BITS_PER_MOVE) - 1;
+    private static final char[] RESULTS = {TicTacTix.PLAYER, TicTacTix.COMPUTER, TicTacTix.STALEMATE, TicTacTix.PLAYABLE};
+
+    private GameRecord() {
+    }
+
+    /**
+     * @param  moves number of moves in a game
+     * @return       size of its record in bytes
+     */
+    public static int recordBytes(int moves) {
+        return 1 + (moves * BITS_PER_MOVE + 7) / 8;
+    }
+
+    /**
+     * Writes the header of a segment file.
+     * @param out buffer with at least SEGMENT_HEADER_BYTES bytes remaining
+     */
+    static void writeSegmentHeader(ByteBuffer out) {
+        out.putInt(MAGIC);
+        out.putShort(VERSION);
+        out.put((byte) BITS_PER_MOVE);
+        out.put((byte) 0);
+        out.putLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Finds where the complete records of a segment end.
+     * @param  segment the contents of a segment file
+     * @return         offset just after the last complete record, or -1 if the segment
+     *                 does not start with a valid header
+     */
+    static long validLength(ByteBuffer segment) {
+        if (segment.limit() < SEGMENT_HEADER_BYTES || segment.getInt(0) != MAGIC || segment.getShort(4) != VERSION)
+            return -1;
+
+        long end = SEGMENT_HEADER_BYTES;
+        while (end < segment.limit()) {
+            int moveCount = moveCount(segment.get((int) end));
+            int size = recordBytes(moveCount);
+            if (moveCount > MAX_MOVES || end + size > segment.limit())
+                break;
+            end += size;
+        }
+        return end;
+    }
+
+    /**
+     * Encodes one game.
+     * @param out         buffer with at least recordBytes(moveCount) bytes remaining
+     * @param firstPlayer character code of the player who moved first (PLAYER / COMPUTER)
+     * @param moves       the cells played, in order
+     * @param moveCount   number of moves
+     * @param result      final state of the game (PLAYER / COMPUTER / STALEMATE, PLAYABLE if unfinished)
+     * @throws IllegalArgumentException if a move is not a playable cell or a cell is played twice
+     *                                  (nothing is written then)
+     */
+    public static void encode(ByteBuffer out, char firstPlayer, byte[] moves, int moveCount, char result) {
+        if (moveCount < 0 || moveCount > MAX_MOVES)
+            throw new IllegalArgumentException("A game has between 0 and " + MAX_MOVES + " moves");
+        // Checked up front: 5 bits would silently keep cells up to 31 and truncate the rest
+        int free = TicTacTix.ALL_CELLS & ~TicTacTix.RESERVED_CELLS;
+        for (int i = 0; i < moveCount; i++) {
+            int cell = moves[i];
+            if (cell < 0 || cell >= TicTacTix.CELLS || (free & (1 << cell)) == 0)
+                throw new IllegalArgumentException("Move " + (i + 1) + " (cell " + cell + ") cannot be played");
+            free &= ~(1 << cell);
+        }
+
+        out.put(header(firstPlayer, moveCount, result));
+        long bits = 0;
+        int bitCount = 0;
+        for (int i = 0; i < moveCount; i++) {
+            bits |= (long) (moves[i] & MOVE_MASK) << bitCount;
+            bitCount += BITS_PER_MOVE;
+            if (bitCount >= 8) {
+                out.put((byte) bits);
+                bits >>>= 8;
+                bitCount -= 8;
+            }
+        }
+        if (bitCount > 0)
+            out.put((byte) bits);
+    }
+
+    /**
+     * Builds the header byte of a record.
+     */
+    static byte header(char firstPlayer, int moveCount, char result) {
+        int resultCode;
+        switch (result) {
+            case TicTacTix.PLAYER:
+                resultCode = 0;
+                break;
+            case TicTacTix.COMPUTER:
+                resultCode = 1;
+                break;
+            case TicTacTix.STALEMATE:
+                resultCode = 2;
+                break;
+            default:
+                resultCode = 3;
+        }
+        int first = (firstPlayer == TicTacTix.COMPUTER) ? 1 : 0;
+        return (byte) (resultCode << 6 | first << 5 | moveCount);
+    }
+
+    /**
+     * @param  header header byte of a record
+     * @return        number of moves in the game
+     */
+    public static int moveCount(byte header) {
+        return header & 0x1F;
+    }
+
+    /**
+     * @param  header header byte of a record
+     * @return        character code of the player who moved first
+     */
+    public static char firstPlayer(byte header) {
+        return ((header & 0x20) != 0) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+    }
+
+    /**
+     * @param  header header byte of a record
+     * @return        final state of the game (PLAYER / COMPUTER / STALEMATE, PLAYABLE if unfinished)
+     */
+    public static char result(byte header) {
+        return RESULTS[(header >>> 6) & 3];
+    }
+
+    /**
+     * Decodes the moves of a record.
+     * @param in        buffer positioned just after the header (its position is advanced past the moves)
+     * @param moveCount number of moves (from the header)
+     * @param moves     array receiving the cells played
+     */
+    public static void decodeMoves(ByteBuffer in, int moveCount, int[] moves) {
+        long bits = 0;
+        int bitCount = 0;
+        for (int i = 0; i < moveCount; i++) {
+            if (bitCount < BITS_PER_MOVE) {
+                bits |= (long) (in.get() & 0xFF) << bitCount;
+                bitCount += 8;
+            }
+            moves[i] = (int) bits & MOVE_MASK;
+            bits >>>= BITS_PER_MOVE;
+            bitCount -= BITS_PER_MOVE;
+        }
+    }
+}
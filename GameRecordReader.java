@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streams the games of an archive written by GameRecordWriter. Every segment is memory
+ * mapped and walked from start to end; each game is handed to a visitor as its first
+ * player, result and moves (in an array that is reused for every game), so going through
+ * millions of games creates no objects per game. scan() is faster still when only the
+ * results and lengths matter: it reads the header byte of each record and skips its moves.
+ *
+ * A segment that ends in the middle of a record (its writer did not get to close it) is
+ * read up to the last complete record.
+ *
+ * Usage: java GameRecordReader archive [verify]
+ *
+ * @see GameRecord
+ *
+ */
+public class GameRecordReader {
+    private final List<Path> segments;
+    private int truncatedSegments;
+
+    /**
+     * Receives every game of the archive.
+     */
+    public interface GameVisitor {
+        /**
+         * @param firstPlayer character code of the player who moved first
+         * @param result      final state (PLAYER / COMPUTER / STALEMATE, PLAYABLE if unfinished)
+         * @param moves       the cells played, in order (only valid during the call)
+         * @param moveCount   number of moves
+         */
+        void visit(char firstPlayer, char result, int[] moves, int moveCount);
+    }
+
+    /**
+     * Receives the header of every game of the archive.
+     */
+    public interface HeaderVisitor {
+        void visit(char firstPlayer, char result, int moveCount);
+    }
+
+    private GameRecordReader(List<Path> segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * Opens an archive: either a directory of segments (read in name order) or a single
+     * segment file.
+     * @param  path the directory or file
+     * @return      a reader of the archive
+     * @throws IOException if the directory cannot be listed
+     */
+    public static GameRecordReader open(Path path) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*" + GameRecordWriter.EXTENSION)) {
+                for (Path file: files)
+                    segments.add(file);
+            }
+            Collections.sort(segments);
+        }
+        else {
+            segments.add(path);
+        }
+        return new GameRecordReader(segments);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: java GameRecordReader archive [verify]");
+            System.exit(1);
+        }
+
+        try {
+            GameRecordReader reader = open(Paths.get(args[0]));
+            SimulationStats stats = new SimulationStats();
+            long start = System.nanoTime();
+
+            if (args.length > 1 && args[1].equals("verify")) {
+                // Replays every game on one board and checks that the recorded result is right
+                TicTacTix board = new TicTacTix();
+                long[] wrong = new long[1];
+                reader.replay((first, result, moves, moveCount) -> {
+                    board.reset();
+                    char turn = first;
+                    try {
+                        for (int i = 0; i < moveCount; i++) {
+                            board.makeMove(turn, moves[i]);
+                            turn = (turn == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+                        }
+                        if (board.findGameState() != result)
+                            wrong[0]++;
+                    }
+                    catch (IllegalArgumentException e) {
+                        wrong[0]++;
+                    }
+                    stats.record(result, moveCount);
+                });
+                System.out.println("Games that do not replay to their recorded result: " + wrong[0]);
+            }
+            else {
+                reader.scan((first, result, moveCount) -> stats.record(result, moveCount));
+            }
+
+            stats.setElapsedNanos(System.nanoTime() - start);
+            System.out.println(reader.segments.size() + " segment(s), " + reader.getTruncatedSegments() + " truncated");
+            System.out.println(stats);
+        }
+        catch (IOException e) {
+            System.out.println("ERROR: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Hands every game of the archive, moves included, to a visitor.
+     * @param  visitor receives the games in archive order
+     * @return         number of games
+     * @throws IOException if a segment cannot be read or is not a game archive
+     */
+    public long replay(GameVisitor visitor) throws IOException {
+        return read(visitor, null);
+    }
+
+    /**
+     * Hands the header of every game of the archive to a visitor, skipping the moves.
+     * @param  visitor receives the games in archive order
+     * @return         number of games
+     * @throws IOException if a segment cannot be read or is not a game archive
+     */
+    public long scan(HeaderVisitor visitor) throws IOException {
+        return read(null, visitor);
+    }
+
+    /**
+     * Walks every segment. Exactly one of the visitors is used.
+     */
+    private long read(GameVisitor games, HeaderVisitor headers) throws IOException {
+        int[] moves = new int[GameRecord.MAX_MOVES];
+        long records = 0;
+        truncatedSegments = 0;
+
+        for (Path file: segments) {
+            MappedByteBuffer in;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            in.order(ByteOrder.BIG_ENDIAN);
+            if (in.remaining() < GameRecord.SEGMENT_HEADER_BYTES || in.getInt() != GameRecord.MAGIC)
+                throw new IOException(file + " is not a game archive segment");
+            if (in.getShort() != GameRecord.VERSION)
+                throw new IOException(file + " has an unsupported version");
+            in.position(GameRecord.SEGMENT_HEADER_BYTES);
+
+            while (in.hasRemaining()) {
+                byte header = in.get();
+                int moveCount = GameRecord.moveCount(header);
+                int moveBytes = GameRecord.recordBytes(moveCount) - 1;
+                if (moveCount > GameRecord.MAX_MOVES || in.remaining() < moveBytes) {
+                    truncatedSegments++;
+                    break;
+                }
+
+                char first = GameRecord.firstPlayer(header);
+                char result = GameRecord.result(header);
+                if (games != null) {
+                    GameRecord.decodeMoves(in, moveCount, moves);
+                    games.visit(first, result, moves, moveCount);
+                }
+                else {
+                    in.position(in.position() + moveBytes);
+                    headers.visit(first, result, moveCount);
+                }
+                records++;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return number of segment files in the archive
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return number of segments that ended in a partial record during the last pass
+     */
+    public int getTruncatedSegments() {
+        return truncatedSegments;
+    }
+}
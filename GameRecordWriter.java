@@ -0,0 +1,189 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends game records (see GameRecord) to segment files in an archive directory.
+ * Records are collected in a 64 KB buffer and written to the file channel a buffer at a
+ * time; once a segment reaches its size limit the writer moves on to a new one. Segments
+ * are named prefix-000000.ttxg, prefix-000001.ttxg, ... A new writer carries on at the
+ * end of the last segment of its prefix (cutting off a partial record a crashed writer
+ * may have left there), so several writers (one per thread or per process) can share a
+ * directory as long as no two of them use the same prefix at the same time.
+ *
+ * A writer is not thread-safe.
+ *
+ * @see GameRecordReader
+ *
+ */
+public class GameRecordWriter implements Closeable {
+    public static final String EXTENSION = ".ttxg";
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final Path directory;
+    private final String prefix;
+    private final long segmentBytes;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final byte[] moves = new byte[GameRecord.MAX_MOVES];
+
+    private FileChannel segment;
+    private long segmentSize;
+    private int nextSegment;
+    private Path lastSegment; // the existing segment to carry on with (null if none)
+    private long records;
+
+    /**
+     * @param  directory    archive directory (created if needed)
+     * @param  prefix       start of the names of this writer's segments
+     * @param  segmentBytes size at which a segment is closed and a new one started
+     * @throws IOException if the directory cannot be created or listed
+     */
+    public GameRecordWriter(Path directory, String prefix, long segmentBytes) throws IOException {
+        if (segmentBytes < GameRecord.SEGMENT_HEADER_BYTES + GameRecord.MAX_RECORD_BYTES)
+            throw new IllegalArgumentException("Segments must hold at least one record");
+        if (prefix.isEmpty() || prefix.contains("/") || prefix.contains("\\"))
+            throw new IllegalArgumentException("Invalid segment prefix: " + prefix);
+
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+
+        // Find the segments a previous writer with this prefix left behind
+        try (DirectoryStream<Path> existing = Files.newDirectoryStream(directory, prefix + "-*" + EXTENSION)) {
+            for (Path file: existing) {
+                String name = file.getFileName().toString();
+                String number = name.substring(prefix.length() + 1, name.length() - EXTENSION.length());
+                try {
+                    int next = Integer.parseInt(number) + 1;
+                    if (next > nextSegment) {
+                        nextSegment = next;
+                        lastSegment = file;
+                    }
+                }
+                catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the game played on a board so far (normally a finished game).
+     * @param  board the board the game was played on
+     * @throws IOException if the record cannot be written
+     */
+    public void append(TicTacTix board) throws IOException {
+        int count = board.getMoveCount();
+        for (int i = 0; i < count; i++)
+            moves[i] = (byte) board.getMove(i);
+        append(board.getFirstMover(), moves, count, board.findGameState());
+    }
+
+    /**
+     * Appends one game.
+     * @param  firstPlayer character code of the player who moved first
+     * @param  moves       the cells played, in order
+     * @param  moveCount   number of moves
+     * @param  result      final state of the game (PLAYER / COMPUTER / STALEMATE, PLAYABLE if unfinished)
+     * @throws IOException if the record cannot be written
+     * @throws IllegalArgumentException if a move is not a playable cell or a cell is played twice
+     */
+    public void append(char firstPlayer, byte[] moves, int moveCount, char result) throws IOException {
+        int size = GameRecord.recordBytes(moveCount);
+        if (segment == null || segmentSize + size > segmentBytes)
+            startSegment();
+        if (buffer.remaining() < size)
+            writeBuffer();
+
+        GameRecord.encode(buffer, firstPlayer, moves, moveCount, result);
+        segmentSize += size;
+        records++;
+    }
+
+    /**
+     * Closes the current segment (if any) and opens the next one.
+     */
+    private void startSegment() throws IOException {
+        closeSegment();
+        if (lastSegment != null && resumeSegment())
+            return;
+
+        Path file = directory.resolve(String.format("%s-%06d%s", prefix, nextSegment++, EXTENSION));
+        segment = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        GameRecord.writeSegmentHeader(buffer);
+        segmentSize = GameRecord.SEGMENT_HEADER_BYTES;
+    }
+
+    /**
+     * Reopens the last segment left by an earlier writer, if it has room, positioned
+     * after its last complete record.
+     * @return was the segment reopened?
+     */
+    private boolean resumeSegment() throws IOException {
+        Path file = lastSegment;
+        lastSegment = null;
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long end = -1;
+        if (channel.size() < segmentBytes)
+            end = GameRecord.validLength(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        if (end < 0) {
+            channel.close();
+            return false;
+        }
+
+        channel.truncate(end);
+        channel.position(end);
+        segment = channel;
+        segmentSize = end;
+        return true;
+    }
+
+    /**
+     * Writes the buffered records to the current segment.
+     */
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            segment.write(buffer);
+        buffer.clear();
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment != null) {
+            writeBuffer();
+            segment.close();
+            segment = null;
+        }
+    }
+
+    /**
+     * Writes the buffered records to disk.
+     * @throws IOException if they cannot be written
+     */
+    public void flush() throws IOException {
+        if (segment != null) {
+            writeBuffer();
+            segment.force(false);
+        }
+    }
+
+    /**
+     * @return number of records appended by this writer
+     */
+    public long getRecordCount() {
+        return records;
+    }
+
+    public void close() throws IOException {
+        closeSegment();
+    }
+}
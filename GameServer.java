@@ -0,0 +1,634 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Hosts any number of TicTacTix games over TCP, one game per connection, with a simple
+ * line protocol. Every session owns its board; a single thread serves all the sockets
+ * with non-blocking NIO, so an idle session costs little more than its board and a 128
+ * byte read buffer. When a search engine plays for the computer its moves are computed
+ * on a pool of worker threads, so one slow search never holds the other sessions up.
+ *
+ * Protocol (one command per line, coordinates from 1 to 3 as in the console game):
+ * <pre>
+ *   NEW [X|O]        start a game, X (you, the default) or O (the computer) moves first
+ *   MOVE l r c       put an X on layer l, row r, column c
+ *   BOARD            show the board (followed by a line END)
+ *   STATS            sessions, games, moves and move latency of the server
+ *   QUIT             close the connection
+ * </pre>
+ * The server answers with WELCOME on connection, GAME first after NEW, MOVED O l r c
+ * for the computer's moves, TURN when it waits for your move, OVER X|O|S when the game
+ * ends, STATS ..., BYE, or ERROR message. The move latency is the time from reading a
+ * MOVE to having the answer (the computer's move or the end of the game) ready to send.
+ *
+ * Sessions that have sent nothing for PARK_AFTER_MILLIS have their game parked off the
+ * heap in a SessionSlab (18 bytes a game) and their board dropped; the game is restored
+ * on a new board as soon as the client sends something again.
+ *
+ * Usage: java GameServer [port] [engine: random, alphabeta, mcts, book] [worker threads]
+ *
+ * @see GameLoadClient
+ *
+ */
+public class GameServer implements Runnable {
+    public static final int DEFAULT_PORT = 7777;
+
+    private static final int READ_BUFFER_BYTES = 128; // also the longest command accepted
+    private static final int OUTPUT_BUFFER_BYTES = 8192;
+    private static final int BACKLOG = 1024;
+    private static final long REPORT_INTERVAL_MILLIS = 10000;
+    private static final long PARK_AFTER_MILLIS = 30000;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService workers; // null when the computer moves on the selector thread
+    private final ThreadLocal<MoveEngine> engines;
+    private final boolean printReports;
+
+    // Sessions whose computer move has been computed by a worker
+    private final Queue<Session> movesDone = new ConcurrentLinkedQueue<>();
+
+    // Only touched by the selector thread
+    private final ByteBuffer output = ByteBuffer.allocateDirect(OUTPUT_BUFFER_BYTES);
+    private final BoardRenderer renderer = new BoardRenderer();
+    private final LatencyStats moveLatency = new LatencyStats();
+    private final SessionSlab parkedGames = new SessionSlab();
+    private int sessions;
+    private long acceptedSessions;
+    private long gamesStarted;
+    private long gamesFinished;
+    private long moves;
+
+    private volatile boolean running = true;
+
+    /**
+     * The state of one connection: its game and whatever was read but not handled yet.
+     */
+    private static class Session {
+        final SocketChannel channel;
+        TicTacTix board = new TicTacTix(); // null while the game is parked
+        int parkedGame;    // slot of the parked game
+        long lastActive;   // when the client last sent something
+        final ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        ByteBuffer pendingOutput; // what the socket did not take yet (null most of the time)
+        SelectionKey key;
+        boolean inGame;
+        boolean thinking;  // a worker is computing the computer's move
+        boolean closing;   // close once the output is sent
+        int computerMove;  // result from the worker
+        long moveStart;    // when the MOVE being answered was read (0 if none)
+
+        Session(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Opens the server socket (on the loopback interface).
+     * @param  port          port to listen on (0 picks a free one)
+     * @param  engineFactory creates the computer's engine from a seed, one per thread
+     * @param  workerThreads threads computing the computer's moves (0 computes them on the selector thread)
+     * @param  printReports  print a line of statistics every ten seconds?
+     * @throws IOException if the socket cannot be opened
+     */
+    public GameServer(int port, LongFunction<MoveEngine> engineFactory, int workerThreads, boolean printReports)
+            throws IOException {
+        if (workerThreads < 0)
+            throw new IllegalArgumentException("Negative number of worker threads");
+
+        AtomicLong seeds = new AtomicLong(new SplittableRandom().nextLong());
+        this.engines = ThreadLocal.withInitial(() -> engineFactory.apply(seeds.incrementAndGet()));
+        this.workers = (workerThreads > 0) ? Executors.newFixedThreadPool(workerThreads) : null;
+        this.printReports = printReports;
+
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public static void main(String[] args) {
+        try {
+            int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+            String engine = (args.length > 1) ? args[1] : "random";
+            int workerThreads = (args.length > 2) ? Integer.parseInt(args[2])
+                    : (engine.equals("random") ? 0 : Runtime.getRuntime().availableProcessors());
+
+            GameServer server = new GameServer(port, SelfPlaySimulator.strategy(engine), workerThreads, true);
+            System.out.println("TicTacTix server listening on port " + server.getPort() + " (" + engine + ")");
+            server.run();
+        }
+        catch (IllegalArgumentException | IOException e) {
+            System.out.println("ERROR: " + e.getMessage());
+            System.out.println("Usage: java GameServer [port] [engine: random, alphabeta, mcts, book] [worker threads]");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Asks the selector thread to close every connection and return from run().
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Serves the connections until stop() is called.
+     */
+    public void run() {
+        long nextReport = System.currentTimeMillis() + REPORT_INTERVAL_MILLIS;
+        long nextParking = System.currentTimeMillis() + REPORT_INTERVAL_MILLIS;
+        try {
+            while (running) {
+                selector.select(REPORT_INTERVAL_MILLIS);
+
+                Session done;
+                while ((done = movesDone.poll()) != null)
+                    finishComputerMove(done);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+
+                    if (key.isAcceptable())
+                        accept();
+                    else {
+                        Session session = (Session) key.attachment();
+                        if (key.isWritable())
+                            writePending(session);
+                        if (key.isValid() && key.isReadable())
+                            read(session);
+                    }
+                }
+
+                if (System.currentTimeMillis() >= nextParking) {
+                    parkIdleGames();
+                    nextParking = System.currentTimeMillis() + REPORT_INTERVAL_MILLIS;
+                }
+                if (printReports && System.currentTimeMillis() >= nextReport) {
+                    System.out.println(getReport());
+                    nextReport = System.currentTimeMillis() + REPORT_INTERVAL_MILLIS;
+                }
+            }
+        }
+        catch (IOException e) {
+            System.out.println("Server failed: " + e.getMessage());
+        }
+        finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Closes every connection, the server socket and the worker threads.
+     */
+    private void shutdown() {
+        for (SelectionKey key: selector.keys()) {
+            try {
+                key.channel().close();
+            }
+            catch (IOException e) {
+                // Closing anyway
+            }
+        }
+        try {
+            selector.close();
+        }
+        catch (IOException e) {
+            // Closing anyway
+        }
+        if (workers != null)
+            workers.shutdownNow();
+    }
+
+    /**
+     * @return number of open sessions, games, moves and the move latency
+     */
+    public String getReport() {
+        return "sessions=" + sessions + " accepted=" + acceptedSessions + " parked=" + parkedGames.getParkedCount()
+                + " games=" + gamesStarted + " finished=" + gamesFinished + " moves=" + moves + " latency: " + moveLatency;
+    }
+
+    /**
+     * Accepts every connection that is waiting.
+     */
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+
+            Session session = new Session(channel);
+            session.lastActive = System.currentTimeMillis();
+            try {
+                session.key = channel.register(selector, SelectionKey.OP_READ, session);
+            }
+            catch (ClosedChannelException e) {
+                continue;
+            }
+            sessions++;
+            acceptedSessions++;
+
+            output.clear();
+            reply(session, "WELCOME TicTacTix");
+            flush(session);
+        }
+    }
+
+    /**
+     * Reads what a client sent and handles every complete line.
+     */
+    private void read(Session session) {
+        int read;
+        try {
+            read = session.channel.read(session.input);
+        }
+        catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            close(session);
+            return;
+        }
+
+        session.lastActive = System.currentTimeMillis();
+        if (session.board == null)
+            session.board = parkedGames.unpark(session.parkedGame);
+        output.clear();
+        handleLines(session);
+        flush(session);
+    }
+
+    /**
+     * Handles the complete lines in a session's input buffer, stopping early while the
+     * computer is thinking (the rest is handled once its move is in).
+     */
+    private void handleLines(Session session) {
+        ByteBuffer input = session.input;
+        byte[] bytes = input.array();
+        int start = 0;
+
+        for (int i = 0; i < input.position() && !session.thinking && !session.closing; i++) {
+            if (bytes[i] == '\n') {
+                int end = (i > start && bytes[i - 1] == '\r') ? i - 1 : i;
+                handleCommand(session, new String(bytes, start, end - start, StandardCharsets.US_ASCII).trim());
+                start = i + 1;
+            }
+        }
+
+        // Keep the unfinished line at the front of the buffer
+        input.flip();
+        input.position(start);
+        input.compact();
+
+        if (!input.hasRemaining() && !session.thinking) {
+            reply(session, "ERROR Line too long");
+            session.closing = true;
+        }
+    }
+
+    /**
+     * Carries out one command of the protocol.
+     * @param session the session the command came from
+     * @param line    the command
+     */
+    private void handleCommand(Session session, String line) {
+        if (line.isEmpty())
+            return;
+
+        String[] words = line.split("\\s+");
+        switch (words[0].toUpperCase()) {
+            case "NEW":
+                newGame(session, (words.length > 1) ? words[1].toUpperCase() : "X");
+                break;
+            case "MOVE":
+                playerMove(session, words);
+                break;
+            case "BOARD":
+                if (output.remaining() < BoardRenderer.length())
+                    spill(session);
+                renderer.render(session.board, output);
+                reply(session, "END");
+                break;
+            case "STATS":
+                reply(session, "STATS " + getReport());
+                break;
+            case "QUIT":
+                reply(session, "BYE");
+                session.closing = true;
+                break;
+            default:
+                reply(session, "ERROR Unknown command (NEW, MOVE, BOARD, STATS, QUIT)");
+        }
+    }
+
+    /**
+     * Starts a new game in a session.
+     * @param first who moves first, "X" or "O"
+     */
+    private void newGame(Session session, String first) {
+        if (!first.equals("X") && !first.equals("O")) {
+            reply(session, "ERROR NEW takes X or O");
+            return;
+        }
+
+        session.board.reset();
+        session.inGame = true;
+        gamesStarted++;
+        reply(session, "GAME " + first);
+
+        if (first.equals("O")) {
+            session.moveStart = 0;
+            computerMove(session);
+        }
+        else {
+            reply(session, "TURN");
+        }
+    }
+
+    /**
+     * Plays the client's move and lets the computer answer.
+     * @param words the MOVE command split into words
+     */
+    private void playerMove(Session session, String[] words) {
+        if (!session.inGame) {
+            reply(session, "ERROR No game in progress, start one with NEW");
+            return;
+        }
+
+        int cell;
+        try {
+            if (words.length != 4)
+                throw new NumberFormatException();
+            int layer = Integer.parseInt(words[1]) - 1;
+            int row = Integer.parseInt(words[2]) - 1;
+            int column = Integer.parseInt(words[3]) - 1;
+            if (!inRange(layer) || !inRange(row) || !inRange(column))
+                throw new NumberFormatException();
+            if (session.board.getCell(layer, row, column) != ' ') {
+                reply(session, "ERROR That cell is not free");
+                return;
+            }
+            cell = TicTacTix.cellIndex(layer, row, column);
+        }
+        catch (NumberFormatException e) {
+            reply(session, "ERROR Usage: MOVE layer row column (1 to 3 each)");
+            return;
+        }
+
+        session.moveStart = System.nanoTime();
+        session.board.makeMove(TicTacTix.PLAYER, cell);
+        moves++;
+
+        if (!checkEnding(session))
+            computerMove(session);
+    }
+
+    private static boolean inRange(int coordinate) {
+        return coordinate >= 0 && coordinate < TicTacTix.SIZE;
+    }
+
+    /**
+     * Gets the computer's move, right away or from a worker thread. While a worker is
+     * busy the session's socket is not read, so a client cannot run ahead of its game.
+     */
+    private void computerMove(Session session) {
+        if (workers == null) {
+            session.computerMove = engines.get().chooseMove(session.board, TicTacTix.COMPUTER);
+            applyComputerMove(session);
+            return;
+        }
+
+        session.thinking = true;
+        updateInterest(session);
+        workers.execute(() -> {
+            try {
+                session.computerMove = engines.get().chooseMove(session.board, TicTacTix.COMPUTER);
+            }
+            catch (RuntimeException e) {
+                session.computerMove = -1;
+            }
+            movesDone.add(session);
+            selector.wakeup();
+        });
+    }
+
+    /**
+     * Picks up a computer move computed by a worker and carries on with the session.
+     */
+    private void finishComputerMove(Session session) {
+        session.thinking = false;
+        if (!session.key.isValid())
+            return; // The client left meanwhile
+
+        updateInterest(session);
+        output.clear();
+        applyComputerMove(session);
+        handleLines(session);
+        flush(session);
+    }
+
+    /**
+     * Plays the computer's move and tells the client.
+     */
+    private void applyComputerMove(Session session) {
+        int cell = session.computerMove;
+        if (cell < 0) {
+            reply(session, "ERROR The computer could not move");
+            session.closing = true;
+            return;
+        }
+
+        int size = TicTacTix.SIZE;
+        session.board.makeMove(TicTacTix.COMPUTER, cell);
+        moves++;
+        reply(session, "MOVED O " + (cell / (size * size) + 1) + " " + ((cell / size) % size + 1) + " " + (cell % size + 1));
+
+        if (!checkEnding(session))
+            reply(session, "TURN");
+        recordLatency(session);
+    }
+
+    /**
+     * Tells the client if the game is over.
+     * @return is the game over?
+     */
+    private boolean checkEnding(Session session) {
+        char state = session.board.findGameState();
+        if (state == TicTacTix.PLAYABLE)
+            return false;
+
+        reply(session, "OVER " + state);
+        session.inGame = false;
+        gamesFinished++;
+        recordLatency(session);
+        return true;
+    }
+
+    private void recordLatency(Session session) {
+        if (session.moveStart != 0) {
+            moveLatency.record(System.nanoTime() - session.moveStart);
+            session.moveStart = 0;
+        }
+    }
+
+    /**
+     * Adds a line to the output being prepared for a session.
+     */
+    private void reply(Session session, String line) {
+        if (output.remaining() < line.length() + 1)
+            spill(session);
+        for (int i = 0; i < line.length(); i++)
+            output.put((byte) line.charAt(i));
+        output.put((byte) '\n');
+    }
+
+    /**
+     * Sends the prepared output to a session. What the socket does not take right away is
+     * kept in the session and sent when the socket is writable again.
+     */
+    private void flush(Session session) {
+        output.flip();
+        if (output.hasRemaining()) {
+            if (session.pendingOutput != null) {
+                session.pendingOutput = append(session.pendingOutput, output);
+            }
+            else {
+                try {
+                    session.channel.write(output);
+                }
+                catch (IOException e) {
+                    close(session);
+                    return;
+                }
+                if (output.hasRemaining()) {
+                    session.pendingOutput = append(ByteBuffer.allocate(output.remaining()), output);
+                    updateInterest(session);
+                }
+            }
+        }
+        if (session.closing && session.pendingOutput == null)
+            close(session);
+    }
+
+    /**
+     * Moves the output prepared so far into the session's pending output, making room in
+     * the shared buffer. Only a client that sends many commands in one go gets here; the
+     * answers go out in order once the socket is writable.
+     */
+    private void spill(Session session) {
+        output.flip();
+        session.pendingOutput = append((session.pendingOutput != null) ? session.pendingOutput
+                : ByteBuffer.allocate(OUTPUT_BUFFER_BYTES), output);
+        output.clear();
+        updateInterest(session);
+    }
+
+    /**
+     * Sets what the selector watches a session for: writes while it has pending output,
+     * reads while it has none and no computer move is being computed. Not reading from a
+     * client that does not take its answers keeps the pending output bounded.
+     */
+    private void updateInterest(Session session) {
+        int ops = 0;
+        if (session.pendingOutput != null)
+            ops |= SelectionKey.OP_WRITE;
+        else if (!session.thinking)
+            ops |= SelectionKey.OP_READ;
+        session.key.interestOps(ops);
+    }
+
+    /**
+     * Sends output that was kept back earlier.
+     */
+    private void writePending(Session session) {
+        try {
+            session.pendingOutput.flip();
+            session.channel.write(session.pendingOutput);
+            session.pendingOutput.compact();
+        }
+        catch (IOException e) {
+            close(session);
+            return;
+        }
+
+        if (session.pendingOutput.position() == 0) {
+            session.pendingOutput = null;
+            updateInterest(session);
+            if (session.closing)
+                close(session);
+        }
+    }
+
+    /**
+     * @param  target buffer in write mode
+     * @param  source buffer in read mode
+     * @return        target (or a bigger copy of it) with the source appended
+     */
+    private static ByteBuffer append(ByteBuffer target, ByteBuffer source) {
+        if (target.remaining() < source.remaining()) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(target.capacity() * 2, target.position() + source.remaining()));
+            target.flip();
+            bigger.put(target);
+            target = bigger;
+        }
+        return target.put(source);
+    }
+
+    /**
+     * Parks the games of the sessions that have been idle for PARK_AFTER_MILLIS.
+     */
+    private void parkIdleGames() {
+        long idleSince = System.currentTimeMillis() - PARK_AFTER_MILLIS;
+        for (SelectionKey key: selector.keys()) {
+            Session session = (Session) key.attachment();
+            if (session != null && key.isValid() && session.board != null && !session.thinking
+                    && session.lastActive < idleSince) {
+                session.parkedGame = parkedGames.park(session.board);
+                session.board = null;
+            }
+        }
+    }
+
+    private void close(Session session) {
+        if (!session.channel.isOpen())
+            return;
+        if (session.board == null)
+            parkedGames.release(session.parkedGame);
+        try {
+            session.channel.close(); // Also cancels the key
+        }
+        catch (IOException e) {
+            // Gone anyway
+        }
+        sessions--;
+    }
+}
@@ -0,0 +1,426 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The Hall of Fame: everyone who ever beat the computer, with their number of wins.
+ *
+ * On disk it is an append-only log with one record per line. A record is either a plain
+ * name (one win, the format the game always wrote) or a name and a win count separated
+ * by a tab (written by compaction). The log is read once when the Hall of Fame is opened
+ * and from then on every query is answered by an in-memory index: a map from name to
+ * wins and a leaderboard kept sorted by wins, so top-K and paged listings never touch
+ * the file.
+ *
+ * Wins may be recorded from many threads at once. Records are queued and written by
+ * whichever thread gets to the file first, together with everything that was queued
+ * while the previous write was going on (group commit), so a burst of wins costs a few
+ * writes instead of one per win. When the log holds many more records than there are
+ * names it is compacted: rewritten with one aggregated record per name and atomically
+ * moved over the old file, which keeps it bounded by the number of distinct winners.
+ *
+ */
+public class HallOfFame implements Closeable {
+    public static final String DEFAULT_FILE = "HallOfFame.txt";
+
+    // Compact once the log has this many times more records than names (and at least MIN_COMPACT_RECORDS)
+    private static final int COMPACT_RATIO = 4;
+    private static final int MIN_COMPACT_RECORDS = 1024;
+    private static final char SEPARATOR = '\t';
+
+    // Best first, ties in alphabetical order
+    private static final Comparator<Entry> LEADERBOARD_ORDER =
+            Comparator.comparingLong(Entry::getWins).reversed().thenComparing(Entry::getName);
+
+    private final Path file;
+    private final boolean autoCompact;
+
+    // The index (guarded by this)
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> leaderboard = new TreeSet<>(LEADERBOARD_ORDER);
+    private long totalWins;
+
+    // Records waiting to be written (guarded by this)
+    private List<String> pending = new ArrayList<>();
+    private long queued;
+
+    // The log (guarded by writeLock)
+    private final Object writeLock = new Object();
+    private FileChannel log; // opened on the first write
+    private long logRecords;
+    private volatile long committed;
+    private boolean closed;
+
+    /**
+     * One name on the leaderboard. Entries are snapshots: recording another win for the
+     * name replaces its entry.
+     */
+    public static final class Entry {
+        private final String name;
+        private final long wins;
+
+        Entry(String name, long wins) {
+            this.name = name;
+            this.wins = wins;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getWins() {
+            return wins;
+        }
+
+        public String toString() {
+            return name + " (" + wins + ((wins == 1) ? " win)" : " wins)");
+        }
+    }
+
+    /**
+     * @param file        path of the log
+     * @param autoCompact compact the log automatically when it grows too large?
+     */
+    private HallOfFame(Path file, boolean autoCompact) {
+        this.file = file;
+        this.autoCompact = autoCompact;
+    }
+
+    /**
+     * Opens the Hall of Fame stored in a file and builds its index. A missing file is an
+     * empty Hall of Fame; the file is only created when the first win is recorded.
+     * @param  file path of the log
+     * @return      the opened Hall of Fame
+     * @throws IOException if the file exists but cannot be read
+     */
+    public static HallOfFame open(Path file) throws IOException {
+        return open(file, true);
+    }
+
+    /**
+     * @param  file        path of the log
+     * @param  autoCompact compact the log automatically when it grows too large?
+     * @return             the opened Hall of Fame
+     * @throws IOException if the file exists but cannot be read
+     */
+    public static HallOfFame open(Path file, boolean autoCompact) throws IOException {
+        HallOfFame hallOfFame = new HallOfFame(file, autoCompact);
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (hallOfFame.replay(line))
+                        hallOfFame.logRecords++;
+                }
+            }
+        }
+        return hallOfFame;
+    }
+
+    /**
+     * Adds one record of the log to the index.
+     * @param  line a line of the log
+     * @return      was the line a record (and not blank)?
+     */
+    private boolean replay(String line) {
+        String name = line.trim();
+        long wins = 1;
+
+        int separator = line.lastIndexOf(SEPARATOR);
+        if (separator >= 0) {
+            try {
+                wins = Long.parseLong(line.substring(separator + 1).trim());
+                name = line.substring(0, separator).trim();
+            }
+            catch (NumberFormatException e) {
+                // Not a count after all, keep the whole line as the name
+            }
+        }
+        if (name.isEmpty() || wins <= 0)
+            return false;
+
+        addWins(name, wins);
+        return true;
+    }
+
+    /**
+     * Records a win and writes it to the log. The win shows up in queries immediately;
+     * the method returns once it is in the file. Safe to call from several threads.
+     * @param  name name of the winner (surrounding blanks and tabs are removed)
+     * @throws IOException if the log cannot be written
+     */
+    public void recordWin(String name) throws IOException {
+        String cleanName = clean(name);
+        if (cleanName.isEmpty())
+            throw new IllegalArgumentException("A name needs at least one character");
+
+        long ticket;
+        synchronized (this) {
+            addWins(cleanName, 1);
+            pending.add(cleanName);
+            ticket = ++queued;
+        }
+        commit(ticket);
+    }
+
+    /**
+     * Makes sure every record up to a ticket is in the file. If another thread is busy
+     * writing, this waits for it and then writes everything that piled up meanwhile in
+     * one go (unless that thread's batch already contained the ticket).
+     * @param  ticket number of the record that has to be written
+     * @throws IOException if the log cannot be written
+     */
+    private void commit(long ticket) throws IOException {
+        synchronized (writeLock) {
+            if (committed >= ticket)
+                return; // Went out with someone else's batch
+            if (closed)
+                throw new IOException("The Hall of Fame is closed");
+
+            List<String> batch;
+            long last;
+            synchronized (this) {
+                batch = pending;
+                pending = new ArrayList<>();
+                last = queued;
+            }
+
+            StringBuilder records = new StringBuilder();
+            for (String name: batch)
+                records.append(name).append(System.lineSeparator());
+            ByteBuffer bytes = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+
+            if (log == null)
+                log = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            while (bytes.hasRemaining())
+                log.write(bytes);
+            log.force(false);
+
+            logRecords += batch.size();
+            committed = last;
+
+            if (autoCompact && logRecords >= MIN_COMPACT_RECORDS && logRecords > (long) COMPACT_RATIO * getNameCount())
+                compactLog();
+        }
+    }
+
+    /**
+     * Rewrites the log with a single record per name.
+     * @throws IOException if the new log cannot be written
+     */
+    public void compact() throws IOException {
+        synchronized (writeLock) {
+            if (closed)
+                throw new IOException("The Hall of Fame is closed");
+            compactLog();
+        }
+    }
+
+    /**
+     * Does the work of compact(); the caller holds writeLock. Records that are still
+     * queued are already counted in the index, so the new log takes them along and
+     * they are not written separately.
+     */
+    private void compactLog() throws IOException {
+        List<Entry> snapshot;
+        List<String> absorbed;
+        long last;
+        synchronized (this) {
+            snapshot = new ArrayList<>(leaderboard);
+            absorbed = pending;
+            pending = new ArrayList<>();
+            last = queued;
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Entry entry: snapshot) {
+                    writer.write(entry.getName());
+                    writer.write(SEPARATOR);
+                    writer.write(Long.toString(entry.getWins()));
+                    writer.newLine();
+                }
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+
+            if (log != null) {
+                log.close();
+                log = null;
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            // Keep the old log and put the absorbed records back in the queue
+            synchronized (this) {
+                absorbed.addAll(pending);
+                pending = absorbed;
+            }
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        logRecords = snapshot.size();
+        committed = last;
+    }
+
+    /**
+     * @return number of records ever queued
+     */
+    private synchronized long queuedCount() {
+        return queued;
+    }
+
+    /**
+     * Adds wins to a name in the index. The caller holds the lock on this.
+     */
+    private void addWins(String name, long wins) {
+        Entry old = entries.get(name);
+        Entry updated = new Entry(name, (old == null) ? wins : old.getWins() + wins);
+
+        if (old != null)
+            leaderboard.remove(old);
+        leaderboard.add(updated);
+        entries.put(name, updated);
+        totalWins += wins;
+    }
+
+    /**
+     * @param  name a name as typed by the player
+     * @return      the name as stored in the log (one line, no tabs)
+     */
+    private static String clean(String name) {
+        return name.replace(SEPARATOR, ' ').replace('\r', ' ').replace('\n', ' ').trim();
+    }
+
+    /**
+     * @param  k maximum number of entries
+     * @return   the k names with the most wins, best first
+     */
+    public synchronized List<Entry> topK(int k) {
+        return page(0, k);
+    }
+
+    /**
+     * Lists the leaderboard one page at a time.
+     * @param  page     number of the page (starting at 0)
+     * @param  pageSize number of entries per page
+     * @return          the entries on that page, best first (empty past the end)
+     */
+    public synchronized List<Entry> page(int page, int pageSize) {
+        if (page < 0 || pageSize < 0)
+            throw new IllegalArgumentException("Negative page or page size");
+
+        List<Entry> result = new ArrayList<>(Math.min(pageSize, leaderboard.size()));
+        long skip = (long) page * pageSize;
+        if (skip >= leaderboard.size())
+            return result;
+
+        Iterator<Entry> iterator = leaderboard.iterator();
+        for (long i = 0; i < skip; i++)
+            iterator.next();
+        while (iterator.hasNext() && result.size() < pageSize)
+            result.add(iterator.next());
+        return result;
+    }
+
+    /**
+     * @param  name name of a player
+     * @return      number of wins recorded for the name (0 if none)
+     */
+    public synchronized long getWins(String name) {
+        Entry entry = entries.get(clean(name));
+        return (entry == null) ? 0 : entry.getWins();
+    }
+
+    /**
+     * @return number of distinct names in the Hall of Fame
+     */
+    public synchronized int getNameCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of wins recorded for all the names together
+     */
+    public synchronized long getTotalWins() {
+        return totalWins;
+    }
+
+    /**
+     * @return is nobody in the Hall of Fame yet?
+     */
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Writes anything still queued and closes the log.
+     * @throws IOException if the log cannot be written
+     */
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            commit(queuedCount());
+            closed = true;
+            if (log != null) {
+                log.close();
+                log = null;
+            }
+        }
+    }
+
+    /**
+     * Usage: java HallOfFame [file] [top k | page n size | compact]
+     */
+    public static void main(String[] args) {
+        Path path = Paths.get((args.length > 0) ? args[0] : DEFAULT_FILE);
+        String command = (args.length > 1) ? args[1] : "top";
+
+        try (HallOfFame hallOfFame = open(path, false)) {
+            List<Entry> shown;
+            int first = 1;
+            switch (command) {
+                case "top":
+                    shown = hallOfFame.topK((args.length > 2) ? Integer.parseInt(args[2]) : 10);
+                    break;
+                case "page":
+                    int page = (args.length > 2) ? Integer.parseInt(args[2]) : 0;
+                    int size = (args.length > 3) ? Integer.parseInt(args[3]) : 10;
+                    shown = hallOfFame.page(page, size);
+                    first = page * size + 1;
+                    break;
+                case "compact":
+                    hallOfFame.compact();
+                    System.out.println("Compacted " + path + ": " + hallOfFame.getNameCount() + " names, "
+                            + hallOfFame.getTotalWins() + " wins");
+                    return;
+                default:
+                    throw new IllegalArgumentException("Unknown command: " + command);
+            }
+            for (Entry entry: shown)
+                System.out.println(first++ + ": " + entry);
+        }
+        catch (IOException | IllegalArgumentException e) {
+            System.out.println("ERROR: " + e.getMessage());
+            System.out.println("Usage: java HallOfFame [file] [top k | page n size | compact]");
+            System.exit(1);
+        }
+    }
+}
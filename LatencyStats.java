@@ -0,0 +1,150 @@
+import java.util.Arrays;
+
+/**
+ * A compact latency histogram. Values are counted in buckets that grow with the value
+ * (eight buckets per power of two), so any percentile is known to within about 12% while
+ * the whole histogram is a fixed array of a few hundred counters, whatever is recorded.
+ *
+ * Not thread-safe: every thread records into its own instance and the instances can be
+ * merged afterwards.
+ *
+ */
+public class LatencyStats {
+    // Values below 2^SUB_BITS get a bucket each, larger ones 2^SUB_BITS buckets per power of two
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts;
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public LatencyStats() {
+        counts = new long[BUCKETS];
+    }
+
+    /**
+     * Builds a histogram from counts collected elsewhere (see GameMetrics).
+     * @param counts bucket counts, indexed like bucket() (kept, not copied)
+     * @param sum    sum of the recorded values
+     * @param min    smallest recorded value
+     * @param max    largest recorded value
+     */
+    LatencyStats(long[] counts, long sum, long min, long max) {
+        this.counts = counts;
+        for (long bucketCount: counts)
+            count += bucketCount;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Records one value.
+     * @param nanos the latency in nanoseconds (negative values count as 0)
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[bucket(value)]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds the values of another histogram to this one.
+     * @param other histogram to add
+     */
+    public void merge(LatencyStats other) {
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] += other.counts[i];
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Forgets every recorded value.
+     */
+    public void clear() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * @param  value a value
+     * @return       index of the bucket counting it
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @param  bucket index of a bucket
+     * @return        the largest value counted in the bucket
+     */
+    private static long bucketLimit(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long low = (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return low + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    /**
+     * @param  percent a percentile between 0 and 100
+     * @return         the value that percentage of the recorded values do not exceed
+     *                 (rounded up to the end of its bucket, but never above the maximum)
+     */
+    public long getPercentile(double percent) {
+        if (count == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(count * percent / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(max, bucketLimit(i));
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMin() {
+        return (count == 0) ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return (count == 0) ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @return a one line summary in microseconds
+     */
+    public String toString() {
+        return String.format("n=%d mean=%.1fus p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus", count, getMean() / 1e3,
+                getPercentile(50) / 1e3, getPercentile(99) / 1e3, getPercentile(99.9) / 1e3, max / 1e3);
+    }
+}
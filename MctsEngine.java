@@ -0,0 +1,433 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An anytime engine for the COMPUTER player based on Monte Carlo Tree Search (UCT).
+ * It keeps playing random games from the current position until a wall-clock deadline
+ * and then plays the move that was explored the most.
+ *
+ * Every thread grows its own search tree (root parallelism) and the root statistics of
+ * all trees are added together at the end. Trees live in preallocated arrays and the
+ * random playouts work on the bitmask board, so nothing is allocated while searching.
+ * Between moves each tree keeps the part below the position that was actually reached,
+ * so the work spent on the expected reply is not thrown away.
+ *
+ * With a playout limit set, every move gets exactly that many playouts whatever the
+ * clock says, so a seeded engine plays the same games on a fast or a busy machine.
+ *
+ * @see MoveEngine
+ *
+ */
+public class MctsEngine implements MoveEngine {
+    // Exploration constant of the UCT formula
+    private static final double EXPLORATION = 1.4;
+
+    private final int threads;
+    private final long budgetNanos;
+    private final SearchTree[] trees;
+    private final ExecutorService workers; // null when running single-threaded
+    private long playoutLimit; // playouts per move, 0 to search until the deadline
+
+    // Statistics of the last move
+    private long lastPlayouts;
+    private long lastReused;
+    private long lastElapsed;
+    private int lastMove = -1;
+
+    /**
+     * Creates an engine using every available core, 100 ms per move and trees of up
+     * to 2^18 nodes.
+     */
+    public MctsEngine() {
+        this(Runtime.getRuntime().availableProcessors(), 100, 1 << 18, System.nanoTime());
+    }
+
+    /**
+     * @param threads      number of threads (and trees) to search with
+     * @param budgetMillis wall-clock time per move in milliseconds
+     * @param treeNodes    maximum number of nodes in each tree
+     * @param seed         seed of the random playouts (each thread derives its own generator from it)
+     */
+    public MctsEngine(int threads, long budgetMillis, int treeNodes, long seed) {
+        if (threads < 1 || budgetMillis < 1 || treeNodes < 2)
+            throw new IllegalArgumentException("Invalid MCTS settings");
+
+        this.threads = threads;
+        this.budgetNanos = budgetMillis * 1000000L;
+        this.trees = new SearchTree[threads];
+
+        SplittableRandom seeds = new SplittableRandom(seed);
+        for (int i = 0; i < threads; i++)
+            trees[i] = new SearchTree(treeNodes, seeds.split());
+        // Daemon threads, so an engine nobody shuts down does not keep the JVM alive
+        this.workers = (threads > 1) ? Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "mcts");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    public int chooseMove(TicTacTix board, char player) {
+        char opponent = (player == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+        return search(board.getCells(player), board.getCells(opponent));
+    }
+
+    public String getLastReport() {
+        if (lastMove < 0)
+            return "No search yet";
+        return String.format("move %d, %d playouts in %.1f ms (%.0f playouts/s), %d reused, %d thread(s)",
+                lastMove, lastPlayouts, lastElapsed / 1e6, lastPlayouts * 1e9 / Math.max(1, lastElapsed),
+                lastReused, threads);
+    }
+
+    /**
+     * @return number of playouts run for the last move (by all threads)
+     */
+    public long getLastPlayouts() {
+        return lastPlayouts;
+    }
+
+    /**
+     * Makes every move run a fixed number of playouts instead of searching for the time
+     * budget (split evenly over the threads, each taking at least one).
+     * @param playouts playouts per move, or 0 to go back to the time budget
+     */
+    public void setPlayoutLimit(long playouts) {
+        if (playouts < 0)
+            throw new IllegalArgumentException("The playout limit cannot be negative");
+        this.playoutLimit = playouts;
+    }
+
+    /**
+     * Stops the worker threads. The engine cannot be used afterwards.
+     */
+    public void shutdown() {
+        if (workers != null)
+            workers.shutdown();
+    }
+
+    /**
+     * Searches a position until the time budget runs out (or for the playout limit).
+     * @param  own      bitmask of the cells of the side to move
+     * @param  opponent bitmask of the other side's cells
+     * @return          the most visited move (cell index)
+     */
+    public int search(int own, int opponent) {
+        if (AlphaBetaEngine.emptyCells(own, opponent) == 0)
+            throw new IllegalArgumentException("There are no moves left to search");
+
+        long start = System.nanoTime();
+        long deadline = (playoutLimit > 0) ? Long.MAX_VALUE : start + budgetNanos;
+        long limit = (playoutLimit > 0) ? (playoutLimit + threads - 1) / threads : Long.MAX_VALUE;
+
+        lastReused = 0;
+        for (SearchTree tree: trees)
+            lastReused += tree.moveRoot(own, opponent);
+
+        if (workers == null) {
+            trees[0].run(deadline, limit);
+        }
+        else {
+            List<Callable<Object>> jobs = new ArrayList<>();
+            for (SearchTree tree: trees)
+                jobs.add(() -> tree.run(deadline, limit));
+            try {
+                for (Future<Object> job: workers.invokeAll(jobs))
+                    job.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException e) {
+                throw new IllegalStateException("MCTS worker failed", e.getCause());
+            }
+        }
+
+        // Add up the root statistics of every tree
+        long[] visits = new long[TicTacTix.CELLS];
+        lastPlayouts = 0;
+        for (SearchTree tree: trees) {
+            tree.addRootVisits(visits);
+            lastPlayouts += tree.playouts;
+        }
+
+        int best = Integer.numberOfTrailingZeros(AlphaBetaEngine.emptyCells(own, opponent));
+        for (int cell = 0; cell < TicTacTix.CELLS; cell++) {
+            if (visits[cell] > visits[best])
+                best = cell;
+        }
+
+        lastElapsed = System.nanoTime() - start;
+        lastMove = best;
+        return best;
+    }
+
+    /**
+     * One thread's search tree. Nodes are indexes into parallel arrays; the children of a
+     * node form a linked list through nextSibling. Scores are kept in points for the
+     * player who made the move into the node: 2 for a win, 1 for a draw, 0 for a loss.
+     */
+    private static class SearchTree {
+        private static final int NONE = -1;
+        private static final byte NOT_TERMINAL = -1;
+
+        private final int[] move;
+        private final int[] parent;
+        private final int[] firstChild;
+        private final int[] nextSibling;
+        private final int[] untried;  // moves not expanded yet (bitmask)
+        private final int[] visits;
+        private final long[] points;
+        private final byte[] terminal; // points of a finished game, or NOT_TERMINAL
+        private final SplittableRandom random;
+
+        private int size;
+        private int root = NONE;
+        private int rootOwn;
+        private int rootOpponent;
+        private long playouts;
+
+        SearchTree(int capacity, SplittableRandom random) {
+            move = new int[capacity];
+            parent = new int[capacity];
+            firstChild = new int[capacity];
+            nextSibling = new int[capacity];
+            untried = new int[capacity];
+            visits = new int[capacity];
+            points = new long[capacity];
+            terminal = new byte[capacity];
+            this.random = random;
+        }
+
+        /**
+         * Moves the root to a new position. If the position is two plies below the old
+         * root (our move and the reply) and that node exists, its subtree is kept.
+         * Otherwise, or if the tree is more than half full, it starts from scratch.
+         * @param  own      bitmask of the cells of the side to move
+         * @param  opponent bitmask of the other side's cells
+         * @return          number of visits kept from the previous search
+         */
+        int moveRoot(int own, int opponent) {
+            playouts = 0;
+            int reused = findDescendant(own, opponent);
+
+            if (reused == NONE || size > move.length / 2) {
+                size = 0;
+                root = newNode(NONE, NONE, AlphaBetaEngine.emptyCells(own, opponent), NOT_TERMINAL);
+                rootOwn = own;
+                rootOpponent = opponent;
+                return 0;
+            }
+            root = reused;
+            parent[root] = NONE;
+            rootOwn = own;
+            rootOpponent = opponent;
+            return visits[root];
+        }
+
+        /**
+         * Looks for the node of a position reached by one move of each side from the root.
+         * @param  own      bitmask of the cells of the side to move in the new position
+         * @param  opponent bitmask of the other side's cells in the new position
+         * @return          the node, or NONE if it is not in the tree
+         */
+        private int findDescendant(int own, int opponent) {
+            if (root == NONE || (own & rootOwn) != rootOwn || (opponent & rootOpponent) != rootOpponent)
+                return NONE;
+
+            int ownMove = own & ~rootOwn;
+            int opponentMove = opponent & ~rootOpponent;
+            if (Integer.bitCount(ownMove) != 1 || Integer.bitCount(opponentMove) != 1)
+                return NONE;
+
+            int child = findChild(root, Integer.numberOfTrailingZeros(ownMove));
+            if (child == NONE)
+                return NONE;
+            return findChild(child, Integer.numberOfTrailingZeros(opponentMove));
+        }
+
+        /**
+         * @param  node a node of the tree
+         * @param  cell a move from that node
+         * @return      the child reached by that move, or NONE if it was never expanded
+         */
+        private int findChild(int node, int cell) {
+            for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+                if (move[child] == cell)
+                    return child;
+            }
+            return NONE;
+        }
+
+        /**
+         * Allocates a node from the arrays.
+         * @return index of the new node
+         */
+        private int newNode(int parentNode, int cell, int moves, byte result) {
+            int node = size++;
+            move[node] = cell;
+            parent[node] = parentNode;
+            firstChild[node] = NONE;
+            nextSibling[node] = NONE;
+            untried[node] = (result == NOT_TERMINAL) ? moves : 0;
+            visits[node] = 0;
+            points[node] = 0;
+            terminal[node] = result;
+            return node;
+        }
+
+        /**
+         * Runs iterations until the deadline (the clock is checked before every playout)
+         * or the playout limit, whichever comes first.
+         * @param  deadline System.nanoTime() value to stop at
+         * @param  limit    maximum number of playouts
+         * @return          null (lets the method be used as a Callable)
+         */
+        Object run(long deadline, long limit) {
+            while (playouts < limit && System.nanoTime() < deadline) {
+                iterate();
+                playouts++;
+            }
+            return null;
+        }
+
+        /**
+         * One round of selection, expansion, simulation and backpropagation.
+         */
+        private void iterate() {
+            int node = root;
+            int own = rootOwn;          // side to move at 'node'
+            int opponent = rootOpponent;
+
+            // Selection: walk down fully expanded nodes by the UCT formula
+            while (terminal[node] == NOT_TERMINAL && untried[node] == 0 && firstChild[node] != NONE) {
+                node = selectChild(node);
+                int next = opponent;
+                opponent = own | (1 << move[node]);
+                own = next;
+            }
+
+            // Expansion: add one untried move, if there is still room in the tree
+            if (terminal[node] == NOT_TERMINAL && untried[node] != 0 && size < move.length) {
+                int cell = pickCell(untried[node]);
+                untried[node] &= ~(1 << cell);
+
+                int after = own | (1 << cell);
+                int moves = AlphaBetaEngine.emptyCells(after, opponent);
+                byte result = NOT_TERMINAL;
+                if (completesLine(after, cell))
+                    result = 2;
+                else if (moves == 0)
+                    result = 1;
+
+                int child = newNode(node, cell, moves, result);
+                nextSibling[child] = firstChild[node];
+                firstChild[node] = child;
+
+                node = child;
+                own = opponent;
+                opponent = after;
+            }
+
+            // Simulation, scored for the player who moved into 'node'
+            int score;
+            if (terminal[node] != NOT_TERMINAL)
+                score = terminal[node];
+            else
+                score = 2 - playout(own, opponent);
+
+            // Backpropagation, flipping the point of view at every level
+            for (; node != NONE; node = parent[node]) {
+                visits[node]++;
+                points[node] += score;
+                score = 2 - score;
+            }
+        }
+
+        /**
+         * Picks the child with the best UCT value.
+         * @param  node a fully expanded node
+         * @return      the selected child
+         */
+        private int selectChild(int node) {
+            double logVisits = Math.log(visits[node]);
+            double bestValue = Double.NEGATIVE_INFINITY;
+            int best = firstChild[node];
+
+            for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+                double mean = points[child] / (2.0 * visits[child]);
+                double value = mean + EXPLORATION * Math.sqrt(logVisits / visits[child]);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Plays random moves until the game ends.
+         * @param  own      bitmask of the cells of the side to move
+         * @param  opponent bitmask of the other side's cells
+         * @return          points for the side to move: 2 win, 1 draw, 0 loss
+         */
+        private int playout(int own, int opponent) {
+            boolean starter = true;
+
+            while (true) {
+                int empty = AlphaBetaEngine.emptyCells(own, opponent);
+                if (empty == 0)
+                    return 1;
+
+                int cell = pickCell(empty);
+                own |= 1 << cell;
+                if (completesLine(own, cell))
+                    return starter ? 2 : 0;
+
+                int next = opponent;
+                opponent = own;
+                own = next;
+                starter = !starter;
+            }
+        }
+
+        /**
+         * Picks a uniformly random cell out of a mask.
+         * @param  cells bitmask of candidate cells (not empty)
+         * @return       index of the chosen cell
+         */
+        private int pickCell(int cells) {
+            for (int skip = random.nextInt(Integer.bitCount(cells)); skip > 0; skip--)
+                cells &= cells - 1;
+            return Integer.numberOfTrailingZeros(cells);
+        }
+
+        /**
+         * Adds the visit count of each root move to a per-cell array.
+         * @param totals array indexed by cell
+         */
+        void addRootVisits(long[] totals) {
+            for (int child = firstChild[root]; child != NONE; child = nextSibling[child])
+                totals[move[child]] += visits[child];
+        }
+
+        /**
+         * @param  cells bitmask of one side's cells (including the cell just played)
+         * @param  cell  the cell just played
+         * @return       did that move complete a line?
+         */
+        private static boolean completesLine(int cells, int cell) {
+            for (int line: TicTacTix.LINES_THROUGH_CELL[cell]) {
+                if ((cells & TicTacTix.WIN_LINES[line]) == TicTacTix.WIN_LINES[line])
+                    return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * Something that can choose the COMPUTER's moves in a game of TicTacTix.
+ * An engine is plugged into a board with TicTacTix.setComputerEngine(); when no
+ * engine is set the computer keeps picking random cells.
+ *
+ * @see TicTacTix
+ *
+ */
+public interface MoveEngine {
+    /**
+     * Picks the cell the given player should play next. The board is never modified.
+     * @param  board  the game being played (must still be PLAYABLE)
+     * @param  player character code for the player to move (PLAYER / COMPUTER)
+     * @return        index of an empty, playable cell (see TicTacTix.cellIndex())
+     */
+    int chooseMove(TicTacTix board, char player);
+
+    /**
+     * Returns a short human readable summary of the work done for the last move
+     * (e.g. nodes searched and search speed).
+     * @return String describing the last call to chooseMove()
+     */
+    String getLastReport();
+}
@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The solved opening positions, read straight from a memory-mapped file. The book holds
+ * every canonical position up to a given number of markers, so the first moves of any
+ * game are answered with a binary search over the file instead of a search of the full
+ * game tree. Positions out of the book are handed to a fallback engine.
+ *
+ * File format (version 1, big endian):
+ * <pre>
+ *   header (32 bytes):  magic "TTXO" | version | entry count | depth | 16 unused bytes
+ *   keys   (8 bytes per entry):  canonical packed key (see Symmetry.pack()), ascending
+ *   data   (2 bytes per entry):  value | best move (cell index, in the canonical frame)
+ * </pre>
+ * Keys are (side to move, other side) and values are stored like in the Tablebase: +n
+ * means the side to move wins with n - 1 cells left empty at the end, -n means it loses
+ * that way and 0 is a draw.
+ *
+ * @see OpeningBookBuilder
+ *
+ */
+public class OpeningBook implements MoveEngine {
+    public static final int MAGIC = 0x5454584F; // "TTXO"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 32;
+    public static final String DEFAULT_FILE = "TicTacTix.book";
+
+    // Value returned by probe() for positions that are not in the book
+    public static final int MISS = -1;
+
+    private final MappedByteBuffer buffer;
+    private final int entryCount;
+    private final int depth;
+    private final int dataOffset;
+    private final MoveEngine fallback;
+
+    private String lastReport = "No lookup yet";
+
+    /**
+     * Wraps an already mapped book. Use open() to map a file.
+     * @param buffer   the mapped file
+     * @param fallback engine used for positions out of the book (may be null)
+     * @throws IOException if the file is not a book this version understands
+     */
+    private OpeningBook(MappedByteBuffer buffer, MoveEngine fallback) throws IOException {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a TicTacTix opening book");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported opening book version " + buffer.getInt(4));
+
+        this.buffer = buffer;
+        this.entryCount = buffer.getInt(8);
+        this.depth = buffer.getInt(12);
+        this.dataOffset = HEADER_BYTES + entryCount * 8;
+        this.fallback = fallback;
+
+        if (entryCount < 0 || buffer.capacity() < fileSize(entryCount))
+            throw new IOException("Opening book file is truncated or corrupt");
+    }
+
+    /**
+     * Memory-maps an opening book file. Only the header is read here.
+     * @param  file     path of the book
+     * @param  fallback engine used for positions out of the book (may be null)
+     * @return          the opened book
+     * @throws IOException if the file cannot be read or is not a valid book
+     */
+    public static OpeningBook open(Path file, MoveEngine fallback) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new OpeningBook(buffer, fallback);
+        }
+    }
+
+    /**
+     * @param  entryCount number of positions
+     * @return            size in bytes of a book file with that many positions
+     */
+    static long fileSize(int entryCount) {
+        return HEADER_BYTES + (long) entryCount * 10;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return the largest number of markers of the positions in the book
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Looks up a position in the book.
+     * @param  own      bitmask of the cells of the side to move
+     * @param  opponent bitmask of the other side's cells
+     * @return          the entry packed as (value << 8 | move), with the move already mapped
+     *                  back onto the given board, or MISS
+     */
+    public int probe(int own, int opponent) {
+        if (Integer.bitCount(own | opponent) > depth)
+            return MISS;
+
+        long form = Symmetry.canonicalForm(own, opponent);
+        int symmetry = Symmetry.formSymmetry(form);
+        long key = Symmetry.formKey(form);
+
+        int low = 0;
+        int high = entryCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long stored = buffer.getLong(HEADER_BYTES + middle * 8);
+            if (stored < key) {
+                low = middle + 1;
+            }
+            else if (stored > key) {
+                high = middle - 1;
+            }
+            else {
+                int value = buffer.get(dataOffset + middle * 2);
+                int move = Symmetry.transformCell(buffer.get(dataOffset + middle * 2 + 1), Symmetry.inverse(symmetry));
+                return (value << 8) | move;
+            }
+        }
+        return MISS;
+    }
+
+    public int chooseMove(TicTacTix board, char player) {
+        char opponent = (player == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+        int entry = probe(board.getCells(player), board.getCells(opponent));
+
+        if (entry != MISS) {
+            lastReport = "book move, value " + Tablebase.value(entry);
+            return Tablebase.move(entry);
+        }
+        if (fallback == null)
+            throw new IllegalStateException("Position is not in the opening book and there is no fallback engine");
+
+        int move = fallback.chooseMove(board, player);
+        lastReport = "out of book, " + fallback.getLastReport();
+        return move;
+    }
+
+    public String getLastReport() {
+        return lastReport;
+    }
+}
@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Offline solver that writes the OpeningBook file. Starting from the empty board it
+ * lists every canonical position with up to a given number of markers (either player
+ * may have moved first, and positions where somebody already won are left out), solves
+ * each one exactly and writes them sorted by key.
+ *
+ * The positions are few thanks to the symmetries of the cube (3 after one move, a few
+ * hundred after three, about 95,000 after six), but the early ones are the hardest to
+ * solve, so the exact solver's transposition table is shared by all of them.
+ *
+ * Usage: java OpeningBookBuilder [depth] [output file]
+ *
+ * @see OpeningBook
+ *
+ */
+public class OpeningBookBuilder {
+    public static final int DEFAULT_DEPTH = 6;
+
+    // Exact solver (no budget) shared by all the positions, so its table keeps helping
+    private final AlphaBetaEngine solver = new AlphaBetaEngine(0, 0, 22, true);
+    private final int depth;
+    // Canonical key -> (value << 8 | canonical best move)
+    private final Map<Long, Integer> entries = new HashMap<>();
+    // Number of positions and time taken to solve them, by number of markers
+    private final int[] levelPositions;
+    private final long[] levelNanos;
+
+    /**
+     * @param depth largest number of markers of the positions to put in the book
+     */
+    public OpeningBookBuilder(int depth) {
+        if (depth < 0 || depth >= TicTacTix.PLAYABLE_CELLS)
+            throw new IllegalArgumentException("The depth must be between 0 and " + (TicTacTix.PLAYABLE_CELLS - 1));
+        this.depth = depth;
+        this.levelPositions = new int[depth + 1];
+        this.levelNanos = new long[depth + 1];
+    }
+
+    public static void main(String[] args) {
+        try {
+            int depth = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_DEPTH;
+            Path file = Paths.get((args.length > 1) ? args[1] : OpeningBook.DEFAULT_FILE);
+            long start = System.nanoTime();
+
+            OpeningBookBuilder builder = new OpeningBookBuilder(depth);
+            builder.solve();
+            for (int markers = 0; markers <= depth; markers++) {
+                System.out.printf("%2d markers: %6d positions solved in %.1f s%n",
+                        markers, builder.getLevelPositions(markers), builder.getLevelNanos(markers) / 1e9);
+            }
+            builder.write(file);
+            System.out.printf("Wrote %d positions to %s in %.1f s%n",
+                    builder.entries.size(), file, (System.nanoTime() - start) / 1e9);
+        }
+        catch (IllegalArgumentException e) {
+            System.out.println("ERROR: " + e.getMessage());
+            System.out.println("Usage: java OpeningBookBuilder [depth] [output file]");
+            System.exit(1);
+        }
+        catch (IOException e) {
+            System.out.println("Could not write the opening book: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Lists the canonical positions one number of markers at a time and solves them.
+     * Positions are seen from the side to move. The number of positions and the time
+     * taken at each number of markers are kept for getLevelPositions() and getLevelNanos().
+     */
+    public void solve() {
+        Set<Long> level = new HashSet<>();
+        level.add(Symmetry.pack(0, 0));
+
+        for (int markers = 0; markers <= depth; markers++) {
+            long start = System.nanoTime();
+            Set<Long> next = new HashSet<>();
+
+            for (long key: level) {
+                int own = Symmetry.first(key);
+                int opponent = Symmetry.second(key);
+                solveEntry(key, own, opponent);
+
+                if (markers == depth)
+                    continue;
+                int empty = TicTacTix.ALL_CELLS & ~(own | opponent | TicTacTix.RESERVED_CELLS);
+                for (int moves = empty; moves != 0; moves &= moves - 1) {
+                    int after = own | (moves & -moves);
+                    if (!isWin(after, Integer.numberOfTrailingZeros(moves)))
+                        next.add(Symmetry.canonicalKey(opponent, after));
+                }
+            }
+            levelPositions[markers] = level.size();
+            levelNanos[markers] = System.nanoTime() - start;
+            level = next;
+        }
+    }
+
+    /**
+     * @param  markers a number of markers, from 0 to the depth of the book
+     * @return         number of canonical positions with that many markers (0 before solve())
+     */
+    public int getLevelPositions(int markers) {
+        return levelPositions[markers];
+    }
+
+    /**
+     * @param  markers a number of markers, from 0 to the depth of the book
+     * @return         nanoseconds solve() took over the positions with that many markers
+     */
+    public long getLevelNanos(int markers) {
+        return levelNanos[markers];
+    }
+
+    /**
+     * @param  cells bitmask of a player's cells
+     * @param  cell  the cell that player just played
+     * @return       does that move complete a line?
+     */
+    private static boolean isWin(int cells, int cell) {
+        for (int line: TicTacTix.LINES_THROUGH_CELL[cell]) {
+            if ((cells & TicTacTix.WIN_LINES[line]) == TicTacTix.WIN_LINES[line])
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Solves a canonical position exactly and records it.
+     * @param key      canonical key of the position
+     * @param own      bitmask of the cells of the side to move
+     * @param opponent bitmask of the other side's cells
+     */
+    private void solveEntry(long key, int own, int opponent) {
+        SearchResult result = solver.search(own, opponent);
+        if (!result.isSolved())
+            throw new IllegalStateException("Position could not be solved: " + key);
+
+        int value = TablebaseGenerator.toValue(result.getScore());
+        entries.put(key, (value << 8) | result.getMove());
+    }
+
+    /**
+     * Writes the solved positions to a book file (format described in OpeningBook).
+     * @param  file path of the file to create (replaced if it exists)
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        long[] keys = new long[entries.size()];
+        int count = 0;
+        for (long key: entries.keySet())
+            keys[count++] = key;
+        Arrays.sort(keys);
+
+        ByteBuffer out = ByteBuffer.allocate((int) OpeningBook.fileSize(keys.length)).order(ByteOrder.BIG_ENDIAN);
+        out.putInt(OpeningBook.MAGIC).putInt(OpeningBook.VERSION).putInt(keys.length).putInt(depth);
+        out.position(OpeningBook.HEADER_BYTES);
+        for (long key: keys)
+            out.putLong(key);
+        for (long key: keys)
+            out.putShort((short) (int) entries.get(key));
+        out.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining())
+                channel.write(out);
+        }
+    }
+}
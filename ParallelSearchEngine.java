@@ -0,0 +1,324 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A multi-core version of AlphaBetaEngine. The root and the nodes just below it are split
+ * into fork/join tasks that idle workers steal from each other; deeper down every task
+ * runs a normal sequential alpha-beta search on its own subtree.
+ *
+ * At a split node the first (most promising) move is searched before the others are
+ * forked, so that they start with a useful window. Each task reads its window from its
+ * parent when it starts, so it benefits from whatever its siblings have found so far. When
+ * a node gets a cutoff, the subtrees still running below it notice (they poll every 1024
+ * nodes) and give up, since their results are no longer needed. All workers share one
+ * lock-free transposition table.
+ *
+ * With a single thread no pool is created and the same search runs in the calling thread,
+ * which gives the same game values as the parallel search.
+ *
+ * @see AlphaBetaEngine
+ *
+ */
+public class ParallelSearchEngine implements MoveEngine {
+    private static final int INFINITY = AlphaBetaEngine.INFINITY;
+    private static final int WIN_SCORE = AlphaBetaEngine.WIN_SCORE;
+
+    private final int threads;
+    private final ForkJoinPool pool; // null when running single-threaded
+    private final TranspositionTable table;
+    private final long timeBudgetNanos; // 0 means no limit
+    private final int splitDepth;
+    // Every worker thread gets its own sequential searcher (they all share 'table')
+    private final ThreadLocal<AlphaBetaEngine> searchers;
+
+    // State of the search in progress
+    private final LongAdder nodes = new LongAdder();
+    private volatile long deadline;
+    private volatile boolean timeUp;
+
+    private SearchResult lastResult;
+
+    /**
+     * Creates an engine using every available core, a one second time budget, a
+     * table of 2^22 entries and splitting the first two plies.
+     */
+    public ParallelSearchEngine() {
+        this(Runtime.getRuntime().availableProcessors(), 1000, 22, 2);
+    }
+
+    /**
+     * @param threads          number of worker threads (1 searches in the calling thread)
+     * @param timeBudgetMillis maximum time per move in milliseconds (0 for no limit)
+     * @param tableBits        log2 of the number of (shared) transposition table entries
+     * @param splitDepth       number of plies from the root that are split into parallel tasks
+     */
+    public ParallelSearchEngine(int threads, long timeBudgetMillis, int tableBits, int splitDepth) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is needed");
+        if (timeBudgetMillis < 0 || splitDepth < 1)
+            throw new IllegalArgumentException("Invalid time budget or split depth");
+
+        this.threads = threads;
+        this.pool = (threads > 1) ? new ForkJoinPool(threads) : null;
+        this.table = new TranspositionTable(tableBits);
+        this.timeBudgetNanos = timeBudgetMillis * 1000000L;
+        this.splitDepth = splitDepth;
+        this.searchers = ThreadLocal.withInitial(() -> new AlphaBetaEngine(0, 0, table, true));
+    }
+
+    public int chooseMove(TicTacTix board, char player) {
+        char opponent = (player == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+        return search(board.getCells(player), board.getCells(opponent)).getMove();
+    }
+
+    public String getLastReport() {
+        if (lastResult == null)
+            return "No search yet";
+        return lastResult + ", " + threads + " thread(s)";
+    }
+
+    public SearchResult getLastResult() {
+        return lastResult;
+    }
+
+    /**
+     * Shuts the worker threads down. The engine cannot be used afterwards.
+     */
+    public void shutdown() {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    /**
+     * Searches a position for the best move of the side to move, deepening one ply at a
+     * time until the position is solved or the time budget runs out.
+     * @param  own      bitmask of the cells of the side to move
+     * @param  opponent bitmask of the other side's cells
+     * @return          the best move found along with its score and search statistics
+     */
+    public SearchResult search(int own, int opponent) {
+        long start = System.nanoTime();
+        int empty = AlphaBetaEngine.emptyCells(own, opponent);
+        if (empty == 0)
+            throw new IllegalArgumentException("There are no moves left to search");
+
+        nodes.reset();
+        timeUp = false;
+        deadline = (timeBudgetNanos > 0) ? start + timeBudgetNanos : Long.MAX_VALUE;
+
+        int remaining = Integer.bitCount(empty);
+        int bestMove = -1;
+        int bestScore = 0;
+        int completedDepth = 0;
+        boolean solved = false;
+
+        for (int depth = 1; depth <= remaining; depth++) {
+            SplitTask root = new SplitTask(null, own, opponent, depth, 0);
+            int score = (pool != null) ? pool.invoke(root) : root.compute();
+            if (root.invalid)
+                break;
+
+            bestMove = root.bestMove;
+            bestScore = score;
+            completedDepth = depth;
+            if (Math.abs(score) >= WIN_SCORE || depth == remaining) {
+                solved = true;
+                break;
+            }
+        }
+
+        // Not even one iteration finished: play the move the search would have tried first
+        if (bestMove < 0) {
+            int threats = TicTacTix.findThreats(opponent, own);
+            bestMove = searchers.get().orderedMoves(own, opponent, threats != 0 ? threats : empty,
+                    TranspositionTable.NO_MOVE)[0];
+        }
+
+        lastResult = new SearchResult(bestMove, bestScore, completedDepth, solved, nodes.sum(), System.nanoTime() - start);
+        return lastResult;
+    }
+
+    /**
+     * A node of the search tree that is searched as a fork/join task. Nodes within
+     * splitDepth plies of the root fork their children, deeper ones are searched
+     * sequentially by the worker's AlphaBetaEngine.
+     */
+    private class SplitTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final SplitTask parent;
+        private final int own;
+        private final int opponent;
+        private final int depth;
+        private final int ply;
+
+        // Window of this node; alpha is raised by the children as their results come in
+        private final AtomicInteger alpha = new AtomicInteger();
+        private int beta;
+        private volatile boolean cutoff;
+
+        // Results
+        private int bestMove = TranspositionTable.NO_MOVE;
+        private boolean invalid; // set if the result cannot be used (time ran out or no longer needed)
+
+        SplitTask(SplitTask parent, int own, int opponent, int depth, int ply) {
+            this.parent = parent;
+            this.own = own;
+            this.opponent = opponent;
+            this.depth = depth;
+            this.ply = ply;
+        }
+
+        /**
+         * Checks whether this node's result can no longer matter: the time is up or one of
+         * its ancestors already has a cutoff.
+         * @return should the search of this node stop?
+         */
+        boolean isAbandoned() {
+            if (timeUp)
+                return true;
+            if (System.nanoTime() >= deadline) {
+                timeUp = true;
+                return true;
+            }
+            for (SplitTask node = parent; node != null; node = node.parent) {
+                if (node.cutoff)
+                    return true;
+            }
+            return false;
+        }
+
+        protected Integer compute() {
+            // Take the window from the parent as it stands right now
+            int low = (parent == null) ? -INFINITY : -parent.beta;
+            beta = (parent == null) ? INFINITY : -parent.alpha.get();
+            alpha.set(low);
+
+            if (isAbandoned()) {
+                invalid = true;
+                return 0;
+            }
+            // The root is always split so that it knows which move is best
+            if (ply > 0 && (ply >= splitDepth || depth <= 2))
+                return searchSequentially();
+            return searchSplit();
+        }
+
+        /**
+         * Hands the whole subtree to this worker's sequential searcher.
+         * @return score of the node
+         */
+        private int searchSequentially() {
+            AlphaBetaEngine searcher = searchers.get();
+            int score = searcher.searchSubtree(own, opponent, alpha.get(), beta, depth, ply, this::isAbandoned);
+
+            nodes.add(searcher.getNodeCount());
+            invalid = searcher.wasAborted();
+            return score;
+        }
+
+        /**
+         * Searches the children of this node as parallel tasks (first child first).
+         * @return score of the node
+         */
+        private int searchSplit() {
+            nodes.increment();
+            int empty = AlphaBetaEngine.emptyCells(own, opponent);
+            int remaining = Integer.bitCount(empty);
+
+            // The same forced-move rules as the sequential search
+            int ownThreats = TicTacTix.findThreats(own, opponent);
+            if (ownThreats != 0) {
+                bestMove = Integer.numberOfTrailingZeros(ownThreats);
+                return WIN_SCORE + remaining - 1;
+            }
+            int moves = empty;
+            int opponentThreats = TicTacTix.findThreats(opponent, own);
+            if (opponentThreats != 0) {
+                bestMove = Integer.numberOfTrailingZeros(opponentThreats);
+                if (Integer.bitCount(opponentThreats) > 1)
+                    return -(WIN_SCORE + remaining - 2);
+                moves = opponentThreats;
+            }
+
+            long form = Symmetry.canonicalForm(own, opponent);
+            int symmetry = Symmetry.formSymmetry(form);
+            long key = Symmetry.formKey(form);
+            int tableMove = TranspositionTable.NO_MOVE;
+            long entry = table.probe(key);
+            if (entry != TranspositionTable.MISS && TranspositionTable.move(entry) != TranspositionTable.NO_MOVE)
+                tableMove = Symmetry.transformCell(TranspositionTable.move(entry), Symmetry.inverse(symmetry));
+
+            int[] ordered = searchers.get().orderedMoves(own, opponent, moves, tableMove);
+            int originalAlpha = alpha.get();
+            int best = -INFINITY;
+
+            // Eldest brother first, to get a window for the others
+            SplitTask first = child(ordered[0]);
+            int score = -first.compute();
+            if (first.invalid) {
+                invalid = true;
+                return 0;
+            }
+            best = score;
+            bestMove = ordered[0];
+            raiseAlpha(score);
+
+            if (alpha.get() < beta && ordered.length > 1) {
+                SplitTask[] children = new SplitTask[ordered.length - 1];
+                for (int i = 1; i < ordered.length; i++)
+                    children[i - 1] = child(ordered[i]);
+
+                if (pool != null) {
+                    for (int i = children.length - 1; i >= 0; i--)
+                        children[i].fork();
+                }
+
+                for (int i = 0; i < children.length; i++) {
+                    score = (pool != null) ? -children[i].join() : -children[i].compute();
+                    if (cutoff)
+                        continue; // Just draining the tasks that were told to stop
+                    if (children[i].invalid) {
+                        invalid = true;
+                        continue;
+                    }
+                    if (score > best) {
+                        best = score;
+                        bestMove = ordered[i + 1];
+                    }
+                    raiseAlpha(score);
+                    if (alpha.get() >= beta)
+                        cutoff = true; // Tell the remaining siblings to stop
+                }
+            }
+            if (invalid)
+                return 0;
+
+            int bound = TranspositionTable.EXACT;
+            if (best <= originalAlpha)
+                bound = TranspositionTable.UPPER;
+            else if (best >= beta)
+                bound = TranspositionTable.LOWER;
+            table.store(key, best, Symmetry.transformCell(bestMove, symmetry), Math.min(depth, remaining), bound);
+            return best;
+        }
+
+        /**
+         * @param  cell the move leading to the child
+         * @return      a task for the position after the move
+         */
+        private SplitTask child(int cell) {
+            return new SplitTask(this, opponent, own | (1 << cell), depth - 1, ply + 1);
+        }
+
+        /**
+         * Raises this node's alpha to a child's score if it is higher.
+         * @param score score of a child (from this node's point of view)
+         */
+        private void raiseAlpha(int score) {
+            alpha.accumulateAndGet(score, Math::max);
+        }
+    }
+}
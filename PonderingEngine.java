@@ -0,0 +1,178 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An alpha-beta engine that thinks on the human's time. As soon as it has picked its
+ * move it starts a background thread on the human's likely replies, most promising
+ * first, and searches the position each of them leads to exactly as the real search
+ * would. The finished results are kept and everything the background searches learn
+ * goes into the transposition table they share with the foreground engine.
+ *
+ * When the human has moved and the engine is asked for its reply, the pondering is
+ * stopped (the search in progress gives up within 1024 nodes) and the result for the
+ * position on the board is played at once if it was among those searched. Otherwise the
+ * engine searches as usual, starting from a table that already knows the position.
+ *
+ * @see AlphaBetaEngine
+ *
+ */
+public class PonderingEngine implements MoveEngine {
+    private final TranspositionTable table;
+    private final AlphaBetaEngine searcher; // used by the thread asking for moves
+    private final AlphaBetaEngine ponderer; // used by the background thread
+    private final ExecutorService background;
+
+    // Finished background searches, keyed by the packed position (computer, human)
+    private final Map<Long, SearchResult> pondered = new ConcurrentHashMap<>();
+    private Future<?> pondering;
+    private AtomicBoolean stopPondering;
+
+    private String lastReport = "No move yet";
+    private long ponderHits;
+    private long ponderMisses;
+
+    /**
+     * Creates an engine with a one second time budget per move and a table of 2^22 entries.
+     */
+    public PonderingEngine() {
+        this(1000, 22);
+    }
+
+    /**
+     * @param timeBudgetMillis maximum time per move in milliseconds (also used for every pondered reply)
+     * @param tableBits        log2 of the number of (shared) transposition table entries
+     */
+    public PonderingEngine(long timeBudgetMillis, int tableBits) {
+        if (timeBudgetMillis <= 0)
+            throw new IllegalArgumentException("Pondering needs a time budget");
+
+        this.table = new TranspositionTable(tableBits);
+        this.searcher = new AlphaBetaEngine(0, timeBudgetMillis, table, true);
+        this.ponderer = new AlphaBetaEngine(0, timeBudgetMillis, table, true);
+        this.background = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "ponder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int chooseMove(TicTacTix board, char player) {
+        long start = System.nanoTime();
+        stopPondering();
+
+        char opponent = (player == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+        int own = board.getCells(player);
+        int other = board.getCells(opponent);
+
+        SearchResult result = pondered.get(Symmetry.pack(own, other));
+        if (result != null) {
+            ponderHits++;
+            lastReport = String.format("pondered %s, answered in %.2f ms", result, (System.nanoTime() - start) / 1e6);
+        }
+        else {
+            ponderMisses++;
+            result = searcher.search(own, other);
+            lastReport = "not pondered, " + result;
+        }
+
+        startPondering(other, own | (1 << result.getMove()));
+        return result.getMove();
+    }
+
+    public String getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * @return number of moves answered from a pondered search
+     */
+    public long getPonderHits() {
+        return ponderHits;
+    }
+
+    /**
+     * @return number of moves that had to be searched when asked for
+     */
+    public long getPonderMisses() {
+        return ponderMisses;
+    }
+
+    /**
+     * Starts thinking about the replies to a position in the background.
+     * @param human    bitmask of the cells of the side about to move (the human)
+     * @param computer bitmask of this engine's cells
+     */
+    private void startPondering(int human, int computer) {
+        pondered.clear();
+        int empty = AlphaBetaEngine.emptyCells(human, computer);
+        if (empty == 0 || TicTacTix.hasLine(computer))
+            return;
+
+        AtomicBoolean stop = new AtomicBoolean();
+        stopPondering = stop;
+        pondering = background.submit(() -> ponder(human, computer, empty, stop));
+    }
+
+    /**
+     * Background part: searches the position after each likely reply until told to stop.
+     */
+    private void ponder(int human, int computer, int empty, AtomicBoolean stop) {
+        for (int reply: ponderer.orderedMoves(human, computer, empty, TranspositionTable.NO_MOVE)) {
+            if (stop.get())
+                return;
+            // Nothing to search after a reply that wins or fills the board
+            int after = human | (1 << reply);
+            if (TicTacTix.hasLine(after) || AlphaBetaEngine.emptyCells(computer, after) == 0)
+                continue;
+
+            SearchResult result = ponderer.search(computer, after, stop::get);
+            if (stop.get())
+                return; // cut short, so not the result a real search would give
+            pondered.put(Symmetry.pack(computer, after), result);
+        }
+    }
+
+    /**
+     * Stops the background search and waits for the thread to let go of the engine.
+     */
+    private void stopPondering() {
+        if (pondering == null)
+            return;
+
+        stopPondering.set(true);
+        awaitPondering();
+        pondering = null;
+    }
+
+    /**
+     * Waits for the background searches to end without stopping them, so every likely
+     * reply to the last move has been pondered (used by the tests).
+     */
+    void awaitPondering() {
+        if (pondering == null)
+            return;
+
+        try {
+            pondering.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Pondering failed", e.getCause());
+        }
+    }
+
+    /**
+     * Stops pondering and shuts the background thread down. The engine cannot be used afterwards.
+     */
+    public void shutdown() {
+        stopPondering();
+        background.shutdown();
+    }
+}
@@ -0,0 +1,319 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Analyzes a stream of board positions in bulk: for every position it gives the game
+ * state and, while the game is still on, the best move for the side to move.
+ *
+ * A position is one line of 27 characters, one per cell in cellIndex() order (layer by
+ * layer, row by row): X or O for a marker, a space, '.' or '-' for an empty cell and N
+ * for the reserved center, which is the only place an N may appear. The line may end
+ * with a space and X or O to say whose turn it is; otherwise the side with fewer markers
+ * moves, and X when both have the same number.
+ *
+ * Every input line gives one output line, in the same order, made of tab separated
+ * fields: the state (X, O, S or P, as returned by findGameState()), the best move as
+ * "layer row column" counted from 1 ("-" when the game is over) and the value of the
+ * position for the side to move (win, loss, draw or a search estimate). Positions that
+ * are not valid give "ERROR" and the reason instead.
+ *
+ * Lines are read in batches that are analyzed in parallel, each worker thread with its
+ * own board and alpha-beta engine (whose table is cleared for every batch, so the
+ * results are the same whatever the number of threads). Only a few batches per thread
+ * are in flight at once: the reader waits for the oldest batch to be written before
+ * reading more, so memory stays bounded however long the input is and the output keeps
+ * the input order.
+ *
+ * Usage: java PositionAnalyzer [input file | -] [output file | -] [threads] [node budget]
+ *
+ * @see AlphaBetaEngine
+ *
+ */
+public class PositionAnalyzer {
+    public static final int BATCH_SIZE = 16384;
+    public static final long DEFAULT_NODE_BUDGET = 2000;
+    // Batches in flight per worker thread
+    private static final int BATCHES_PER_THREAD = 2;
+    private static final int TABLE_BITS = 16;
+    // What readCells() returns for a line of the wrong length
+    static final long NOT_A_BOARD = -1;
+
+    private final int threads;
+    private final long nodeBudget;
+    private final ThreadLocal<Worker> workers;
+    private final AtomicLong invalid = new AtomicLong();
+
+    /**
+     * @param threads    number of worker threads
+     * @param nodeBudget search nodes per position (0 solves every position exactly)
+     */
+    public PositionAnalyzer(int threads, long nodeBudget) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is needed");
+        if (nodeBudget < 0)
+            throw new IllegalArgumentException("The node budget cannot be negative");
+
+        this.threads = threads;
+        this.nodeBudget = nodeBudget;
+        this.workers = ThreadLocal.withInitial(Worker::new);
+    }
+
+    public static void main(String[] args) {
+        try {
+            String input = (args.length > 0) ? args[0] : "-";
+            String output = (args.length > 1) ? args[1] : "-";
+            int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            long nodeBudget = (args.length > 3) ? Long.parseLong(args[3]) : DEFAULT_NODE_BUDGET;
+            PositionAnalyzer analyzer = new PositionAnalyzer(threads, nodeBudget);
+
+            try (BufferedReader in = input.equals("-")
+                        ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16)
+                        : Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8);
+                 Writer out = output.equals("-")
+                        ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16)
+                        : Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)) {
+                long start = System.nanoTime();
+                long positions = analyzer.run(in, out);
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                // The results may be going to standard output, so the summary goes elsewhere
+                System.err.printf("Analyzed %d positions (%d invalid) in %.1f s, %.0f positions/s%n",
+                        positions, analyzer.getInvalidCount(), seconds, positions / seconds);
+            }
+        }
+        catch (IllegalArgumentException e) {
+            System.out.println("ERROR: " + e.getMessage());
+            System.out.println("Usage: java PositionAnalyzer [input file | -] [output file | -] [threads] [node budget]");
+            System.exit(1);
+        }
+        catch (IOException | InterruptedException | ExecutionException e) {
+            System.out.println("ERROR: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Analyzes every position of a stream.
+     * @param  in  the positions, one per line
+     * @param  out receives one result line per position, in input order
+     * @return     number of positions read
+     * @throws IOException          if reading or writing fails
+     * @throws InterruptedException if interrupted while waiting for a batch
+     * @throws ExecutionException   if analyzing a batch fails
+     */
+    public long run(BufferedReader in, Writer out) throws IOException, InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+        long positions = 0;
+
+        try {
+            List<String> batch;
+            while (!(batch = readBatch(in)).isEmpty()) {
+                positions += batch.size();
+                // Back-pressure: write the oldest batch before reading past the limit
+                if (pending.size() == threads * BATCHES_PER_THREAD)
+                    out.write(pending.poll().get());
+
+                List<String> lines = batch;
+                pending.add(pool.submit(() -> analyzeBatch(lines)));
+            }
+            while (!pending.isEmpty())
+                out.write(pending.poll().get());
+            out.flush();
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        return positions;
+    }
+
+    /**
+     * @param  in the input
+     * @return    up to BATCH_SIZE lines (empty at the end of the input)
+     */
+    private static List<String> readBatch(BufferedReader in) throws IOException {
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        String line;
+        while (batch.size() < BATCH_SIZE && (line = in.readLine()) != null)
+            batch.add(line);
+        return batch;
+    }
+
+    /**
+     * @param  lines positions
+     * @return       the result lines of the positions
+     */
+    private String analyzeBatch(List<String> lines) {
+        Worker worker = workers.get();
+        startBatch();
+        StringBuilder results = new StringBuilder(lines.size() * 24);
+        for (String line: lines) {
+            worker.analyze(line, results);
+            results.append('\n');
+        }
+        return results.toString();
+    }
+
+    /**
+     * @return number of invalid positions met so far
+     */
+    public long getInvalidCount() {
+        return invalid.get();
+    }
+
+    /**
+     * Starts a new batch on the calling thread: its engine forgets what its table learned
+     * from earlier batches, so the results do not depend on which thread got which batch.
+     * Callers that make their own batches of analyze(String) calls start each one with it.
+     */
+    public void startBatch() {
+        workers.get().table.clear();
+    }
+
+    /**
+     * Analyzes one position on its own (handy for tests and one-off questions).
+     * @param  line a position in the input format
+     * @return      its result line (without the line break)
+     */
+    public String analyze(String line) {
+        StringBuilder result = new StringBuilder();
+        workers.get().analyze(line, result);
+        return result.toString();
+    }
+
+    /**
+     * The board and engine of one worker thread, reused for every position it analyzes.
+     */
+    private class Worker {
+        private final TicTacTix board = new TicTacTix();
+        private final TranspositionTable table = new TranspositionTable(TABLE_BITS);
+        private final AlphaBetaEngine engine = new AlphaBetaEngine(nodeBudget, 0, table, true);
+
+        /**
+         * Appends the result line of a position.
+         * @param line   a position in the input format
+         * @param result receives the result
+         */
+        void analyze(String line, StringBuilder result) {
+            int length = line.length();
+            if (length > 0 && line.charAt(length - 1) == '\r')
+                length--;
+            long markers = readCells(line, length);
+            if (markers == NOT_A_BOARD) {
+                error(result, "expected " + TicTacTix.CELLS + " cells, got " + length + " characters");
+                return;
+            }
+            if (markers < 0) {
+                int cell = (int) (-2 - markers);
+                char symbol = line.charAt(cell);
+                if ((TicTacTix.RESERVED_CELLS & (1 << cell)) != 0)
+                    error(result, "the center cell must be N");
+                else if (symbol == TicTacTix.RESERVED)
+                    error(result, "cell " + (cell + 1) + " cannot be reserved");
+                else
+                    error(result, "invalid character '" + symbol + "' in cell " + (cell + 1));
+                return;
+            }
+
+            int xCells = Symmetry.first(markers);
+            int oCells = Symmetry.second(markers);
+            int xCount = Integer.bitCount(xCells);
+            int oCount = Integer.bitCount(oCells);
+            if (Math.abs(xCount - oCount) > 1) {
+                error(result, xCount + " X markers and " + oCount + " O markers");
+                return;
+            }
+            if (TicTacTix.hasLine(xCells) && TicTacTix.hasLine(oCells)) {
+                error(result, "both players have completed a line");
+                return;
+            }
+
+            char toMove = (xCount > oCount) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+            if (length == TicTacTix.CELLS + 2) {
+                char given = line.charAt(TicTacTix.CELLS + 1);
+                if (line.charAt(TicTacTix.CELLS) != ' ' || (given != TicTacTix.PLAYER && given != TicTacTix.COMPUTER)) {
+                    error(result, "the side to move must be given as ' X' or ' O'");
+                    return;
+                }
+                int ownCount = (given == TicTacTix.PLAYER) ? xCount : oCount;
+                if (ownCount > xCount + oCount - ownCount) {
+                    error(result, given + " has more markers and cannot be the side to move");
+                    return;
+                }
+                toMove = given;
+            }
+
+            // Set the position up on the worker's board so the state follows the game's own rules
+            board.reset();
+            for (int cells = xCells; cells != 0; cells &= cells - 1)
+                board.makeMove(TicTacTix.PLAYER, Integer.numberOfTrailingZeros(cells));
+            for (int cells = oCells; cells != 0; cells &= cells - 1)
+                board.makeMove(TicTacTix.COMPUTER, Integer.numberOfTrailingZeros(cells));
+
+            char state = board.findGameState();
+            result.append(state).append('\t');
+            if (state != TicTacTix.PLAYABLE) {
+                result.append("-\t-");
+                return;
+            }
+
+            char opponent = (toMove == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+            SearchResult best = engine.search(board.getCells(toMove), board.getCells(opponent));
+            int move = best.getMove();
+            int size = TicTacTix.SIZE;
+            result.append(move / (size * size) + 1).append(' ')
+                  .append((move / size) % size + 1).append(' ')
+                  .append(move % size + 1).append('\t')
+                  .append(best.describeScore());
+        }
+
+        private void error(StringBuilder result, String reason) {
+            invalid.incrementAndGet();
+            result.append("ERROR\t").append(reason);
+        }
+    }
+
+    /**
+     * Reads the markers of a position in the input format, checking only that the line
+     * is a board (not the rules of the game, which analyze() reports on).
+     * @param  line   a position
+     * @param  length length of the line without its line break
+     * @return        Symmetry.pack() of the X and the O cells, or a negative value if the
+     *                line is not a board: NOT_A_BOARD if its length is wrong, otherwise
+     *                -2 - the index of the first cell that cannot be read
+     */
+    static long readCells(String line, int length) {
+        if (length != TicTacTix.CELLS && length != TicTacTix.CELLS + 2)
+            return NOT_A_BOARD;
+
+        int xCells = 0;
+        int oCells = 0;
+        for (int cell = 0; cell < TicTacTix.CELLS; cell++) {
+            char symbol = line.charAt(cell);
+            if (((TicTacTix.RESERVED_CELLS & (1 << cell)) != 0) != (symbol == TicTacTix.RESERVED))
+                return -2 - cell;
+            if (symbol == TicTacTix.PLAYER)
+                xCells |= 1 << cell;
+            else if (symbol == TicTacTix.COMPUTER)
+                oCells |= 1 << cell;
+            else if (symbol != TicTacTix.RESERVED && symbol != ' ' && symbol != '.' && symbol != '-')
+                return -2 - cell;
+        }
+        return Symmetry.pack(xCells, oCells);
+    }
+}
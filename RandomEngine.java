@@ -0,0 +1,43 @@
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * The simplest possible engine: plays a uniformly random empty cell. It uses its own
+ * seedable generator, so games are reproducible and engines on different threads
+ * never contend on a shared generator.
+ *
+ * @see MoveEngine
+ *
+ */
+public class RandomEngine implements MoveEngine {
+    private final RandomGenerator random;
+
+    /**
+     * Creates an engine with an unpredictable seed.
+     */
+    public RandomEngine() {
+        this(new SplittableRandom());
+    }
+
+    /**
+     * @param seed seed of the engine's random generator
+     */
+    public RandomEngine(long seed) {
+        this(new SplittableRandom(seed));
+    }
+
+    /**
+     * @param random the generator to draw moves from (not shared with other threads)
+     */
+    public RandomEngine(RandomGenerator random) {
+        this.random = random;
+    }
+
+    public int chooseMove(TicTacTix board, char player) {
+        return board.randomEmptyCell(random);
+    }
+
+    public String getLastReport() {
+        return "random move";
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * The outcome of a search for the best move in a position: the move itself, how good
+ * it is, and how much work it took to find it.
+ *
+ * Scores are from the point of view of the side to move. Anything at or above
+ * AlphaBetaEngine.WIN_SCORE is a forced win (higher is a quicker win), anything at or
+ * below -WIN_SCORE is a forced loss, and everything in between is either a proven
+ * draw (0 with isSolved()) or a heuristic estimate.
+ *
+ * @see AlphaBetaEngine
+ *
+ */
+public class SearchResult {
+    private final int move;
+    private final int score;
+    private final int depth;
+    private final boolean solved;
+    private final long nodes;
+    private final long elapsedNanos;
+
+    /**
+     * @param move         index of the best cell found
+     * @param score        score of the position (side to move's point of view)
+     * @param depth        number of plies that were searched completely
+     * @param solved       is the score the exact game theoretic value?
+     * @param nodes        number of positions visited
+     * @param elapsedNanos wall clock time of the search
+     */
+    public SearchResult(int move, int score, int depth, boolean solved, long nodes, long elapsedNanos) {
+        this.move = move;
+        this.score = score;
+        this.depth = depth;
+        this.solved = solved;
+        this.nodes = nodes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getMove() {
+        return move;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public boolean isSolved() {
+        return solved;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return number of positions visited per second of search
+     */
+    public double getNodesPerSecond() {
+        if (elapsedNanos == 0)
+            return 0;
+        return nodes * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Describes the value of the position in words (win / loss / draw / estimate).
+     * @return String form of the score
+     */
+    public String describeScore() {
+        if (score >= AlphaBetaEngine.WIN_SCORE)
+            return "win";
+        if (score <= -AlphaBetaEngine.WIN_SCORE)
+            return "loss";
+        if (solved)
+            return "draw";
+        return "estimate " + score;
+    }
+
+    public String toString() {
+        return String.format("move %d (%s), depth %d, %d nodes in %.1f ms, %.0f nodes/s",
+                move, describeScore(), depth, nodes, elapsedNanos / 1e6, getNodesPerSecond());
+    }
+}
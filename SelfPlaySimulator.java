@@ -0,0 +1,227 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Headless driver that plays large numbers of complete games between two strategies
+ * and reports aggregate statistics. Nothing is read from or printed to the console
+ * while games are running.
+ *
+ * Games are handed out to a fixed pool of worker threads in batches. Each worker has its
+ * own board and its own statistics, and creates fresh strategy instances for every batch
+ * it claims, from a seed derived from the simulation seed and the number of the batch, so
+ * the workers share nothing but the batch counter. Which worker plays a batch does not
+ * matter: with a fixed seed a run is reproducible with any number of threads, as long as
+ * the strategies only depend on their seed.
+ *
+ * Games can also be archived (see GameRecordWriter): every worker then writes its games
+ * to its own segments in the archive directory.
+ *
+ * Usage: java SelfPlaySimulator [games] [threads] [X strategy] [O strategy] [seed] [archive directory]
+ * where a strategy is one of: random, alphabeta, mcts, book (the opening book, then alphabeta)
+ *
+ * @see SimulationStats
+ *
+ */
+public class SelfPlaySimulator {
+    // Number of games a worker claims at a time
+    private static final int BATCH_SIZE = 4096;
+
+    private final LongFunction<MoveEngine> playerStrategy;
+    private final LongFunction<MoveEngine> computerStrategy;
+    private final int threads;
+    private final long seed;
+    private final boolean alternateFirst;
+    private Path archive; // null when games are not recorded
+
+    /**
+     * @param playerStrategy   creates the strategy for X from a seed
+     * @param computerStrategy creates the strategy for O from a seed
+     * @param threads          number of worker threads
+     * @param seed             seed all the strategy seeds are derived from
+     * @param alternateFirst   should O go first in every other game (otherwise X always starts)?
+     */
+    public SelfPlaySimulator(LongFunction<MoveEngine> playerStrategy, LongFunction<MoveEngine> computerStrategy,
+                             int threads, long seed, boolean alternateFirst) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is needed");
+
+        this.playerStrategy = playerStrategy;
+        this.computerStrategy = computerStrategy;
+        this.threads = threads;
+        this.seed = seed;
+        this.alternateFirst = alternateFirst;
+    }
+
+    public static void main(String[] args) {
+        try {
+            long games = (args.length > 0) ? Long.parseLong(args[0]) : 1000000;
+            int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+            LongFunction<MoveEngine> x = strategy((args.length > 2) ? args[2] : "random");
+            LongFunction<MoveEngine> o = strategy((args.length > 3) ? args[3] : "random");
+            long seed = (args.length > 4) ? Long.parseLong(args[4]) : System.nanoTime();
+
+            SelfPlaySimulator simulator = new SelfPlaySimulator(x, o, threads, seed, false);
+            if (args.length > 5)
+                simulator.setArchive(Paths.get(args[5]));
+            System.out.println(simulator.run(games));
+        }
+        catch (IllegalArgumentException | IllegalStateException e) {
+            System.out.println("ERROR: " + e.getMessage());
+            System.out.println("Usage: java SelfPlaySimulator [games] [threads] [X strategy] [O strategy] [seed] [archive directory]");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Records every game played by later runs in an archive.
+     * @param archive archive directory, or null to stop recording
+     */
+    public void setArchive(Path archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * Maps a strategy name onto a factory for that strategy.
+     * @param  name one of random, alphabeta, mcts, book
+     * @return      a factory creating the strategy from a seed
+     * @throws IllegalArgumentException if the name is not known
+     */
+    public static LongFunction<MoveEngine> strategy(String name) {
+        switch (name) {
+            case "random":
+                return RandomEngine::new;
+            case "alphabeta":
+                return seed -> new AlphaBetaEngine(0, 0, 18, true);
+            case "mcts":
+                return seed -> new MctsEngine(1, 5, 1 << 14, seed);
+            case "book":
+                return seed -> {
+                    try {
+                        return OpeningBook.open(Paths.get(OpeningBook.DEFAULT_FILE), new AlphaBetaEngine(0, 0, 18, true));
+                    }
+                    catch (IOException e) {
+                        throw new IllegalStateException("Could not open the opening book: " + e.getMessage());
+                    }
+                };
+            default:
+                throw new IllegalArgumentException("Unknown strategy: " + name);
+        }
+    }
+
+    /**
+     * Plays a number of games and collects their statistics.
+     * @param  games number of games to play
+     * @return       statistics of all the games
+     */
+    public SimulationStats run(long games) {
+        long start = System.nanoTime();
+        AtomicLong nextBatch = new AtomicLong();
+        List<Callable<SimulationStats>> workers = new ArrayList<>();
+
+        for (int i = 0; i < threads; i++) {
+            int worker = i;
+            workers.add(() -> work(nextBatch, games, worker));
+        }
+
+        SimulationStats total = new SimulationStats();
+        if (threads == 1) {
+            try {
+                total.merge(work(nextBatch, games, 0));
+            }
+            catch (IOException e) {
+                throw new IllegalStateException("Could not archive the games: " + e.getMessage(), e);
+            }
+        }
+        else {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                for (Future<SimulationStats> worker: pool.invokeAll(workers))
+                    total.merge(worker.get());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException e) {
+                throw new IllegalStateException("Simulation worker failed", e.getCause());
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+
+        total.setElapsedNanos(System.nanoTime() - start);
+        return total;
+    }
+
+    /**
+     * The body of one worker: claims batches of games until all of them are taken.
+     * @param  nextBatch shared counter of the next batch to hand out
+     * @param  games     total number of games to play
+     * @param  worker    number of the worker (names its archive segments)
+     * @return           statistics of the games this worker played
+     * @throws IOException if the games cannot be archived
+     */
+    private SimulationStats work(AtomicLong nextBatch, long games, int worker) throws IOException {
+        TicTacTix board = new TicTacTix();
+        SimulationStats stats = new SimulationStats();
+
+        try (GameRecordWriter writer = (archive != null)
+                ? new GameRecordWriter(archive, "selfplay-" + worker, GameRecordWriter.DEFAULT_SEGMENT_BYTES) : null) {
+            long batch;
+            while ((batch = nextBatch.getAndIncrement()) * BATCH_SIZE < games) {
+                // The batch's own strategies: element 'batch' of the stream seeded by the simulation seed
+                SplittableRandom seeds = new SplittableRandom(
+                        new SplittableRandom(seed + batch * 0x9E3779B97F4A7C15L).nextLong());
+                MoveEngine x = playerStrategy.apply(seeds.nextLong());
+                MoveEngine o = computerStrategy.apply(seeds.nextLong());
+
+                long first = batch * BATCH_SIZE;
+                long last = Math.min(games, first + BATCH_SIZE);
+                for (long game = first; game < last; game++) {
+                    char starter = (alternateFirst && game % 2 == 1) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+                    playGame(board, x, o, starter, stats);
+                    if (writer != null)
+                        writer.append(board);
+                }
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Plays one complete game and records how it ended.
+     * @param board   board to play on (it is reset first)
+     * @param x       strategy playing X
+     * @param o       strategy playing O
+     * @param starter character code of the player who moves first
+     * @param stats   statistics to record the game in
+     * @return        final state of the game (PLAYER / COMPUTER / STALEMATE)
+     */
+    public static char playGame(TicTacTix board, MoveEngine x, MoveEngine o, char starter, SimulationStats stats) {
+        board.reset();
+        char turn = starter;
+        char state = TicTacTix.PLAYABLE;
+        int moves = 0;
+
+        while (state == TicTacTix.PLAYABLE) {
+            MoveEngine strategy = (turn == TicTacTix.PLAYER) ? x : o;
+            board.makeMove(turn, strategy.chooseMove(board, turn));
+            moves++;
+            state = board.findGameState();
+            turn = (turn == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+        }
+        stats.record(state, moves);
+        return state;
+    }
+}
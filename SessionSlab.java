@@ -0,0 +1,156 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Off-heap parking space for games nobody is playing right now. A parked game takes one
+ * fixed-width slot of SLOT_BYTES bytes in direct memory holding its moves in the archive
+ * record format (see GameRecord), which also gives both players' cells, the side to move
+ * and the move count. The game is brought back by replaying its moves onto a board, which
+ * takes about a microsecond, and comes back exactly as it was (move order included, so
+ * undo() and archiving keep working).
+ *
+ * Slots are allocated in chunks of 64K direct-buffer slots as more games are parked.
+ * Free slots are linked through the slab itself, so the heap holds nothing per parked
+ * game: a million parked games take 18 MB of direct memory.
+ *
+ * A slab is not thread-safe.
+ *
+ * @see GameServer
+ *
+ */
+public class SessionSlab {
+    public static final int SLOT_BYTES = GameRecord.MAX_RECORD_BYTES;
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SLOTS = 1 << CHUNK_BITS;
+    // Header byte of a free slot (more moves than any game has); the next free slot follows it
+    private static final byte FREE = (byte) 0xFF;
+    private static final int NONE = -1;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private int freeHead = NONE;
+    private int parked;
+
+    // Reused for every game parked or restored
+    private final byte[] moveBytes = new byte[GameRecord.MAX_MOVES];
+    private final int[] moves = new int[GameRecord.MAX_MOVES];
+
+    /**
+     * Stores a game in a free slot. The board can be reused or dropped afterwards.
+     * @param  board the game to park
+     * @return       handle of the slot, for restore(), unpark() and release()
+     */
+    public int park(TicTacTix board) {
+        int handle = allocate();
+        int count = board.getMoveCount();
+        for (int i = 0; i < count; i++)
+            moveBytes[i] = (byte) board.getMove(i);
+
+        ByteBuffer chunk = chunks.get(handle >>> CHUNK_BITS);
+        chunk.position(offset(handle));
+        GameRecord.encode(chunk, board.getFirstMover(), moveBytes, count, board.findGameState());
+        parked++;
+        return handle;
+    }
+
+    /**
+     * Sets a board up as the parked game of a slot. The game stays parked.
+     * @param handle the slot
+     * @param board  board to put the game on (its engine and random generator are kept)
+     * @throws IllegalArgumentException if no game is parked in the slot
+     */
+    public void restore(int handle, TicTacTix board) {
+        ByteBuffer chunk = parkedChunk(handle);
+        byte header = chunk.get(offset(handle));
+        int count = GameRecord.moveCount(header);
+        char turn = GameRecord.firstPlayer(header);
+
+        chunk.position(offset(handle) + 1);
+        GameRecord.decodeMoves(chunk, count, moves);
+        board.reset();
+        for (int i = 0; i < count; i++) {
+            board.makeMove(turn, moves[i]);
+            turn = (turn == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+        }
+    }
+
+    /**
+     * Brings a parked game back on a new board and frees its slot.
+     * @param  handle the slot
+     * @return        the game
+     * @throws IllegalArgumentException if no game is parked in the slot
+     */
+    public TicTacTix unpark(int handle) {
+        TicTacTix board = new TicTacTix();
+        restore(handle, board);
+        release(handle);
+        return board;
+    }
+
+    /**
+     * Frees a slot without restoring its game.
+     * @param handle the slot
+     * @throws IllegalArgumentException if no game is parked in the slot
+     */
+    public void release(int handle) {
+        ByteBuffer chunk = parkedChunk(handle);
+        chunk.put(offset(handle), FREE);
+        chunk.putInt(offset(handle) + 1, freeHead);
+        freeHead = handle;
+        parked--;
+    }
+
+    /**
+     * @return number of games parked
+     */
+    public int getParkedCount() {
+        return parked;
+    }
+
+    /**
+     * @return direct memory taken by the slab in bytes
+     */
+    public long getReservedBytes() {
+        return (long) chunks.size() * CHUNK_SLOTS * SLOT_BYTES;
+    }
+
+    /**
+     * Takes a slot off the free list, adding a chunk when there is none.
+     */
+    private int allocate() {
+        if (freeHead == NONE) {
+            if (chunks.size() == 1 << (31 - CHUNK_BITS))
+                throw new IllegalStateException("Too many parked games");
+            int first = chunks.size() << CHUNK_BITS;
+            ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SLOTS * SLOT_BYTES).order(ByteOrder.BIG_ENDIAN);
+            chunks.add(chunk);
+            // Link the new slots in order, the last one to what was free before (nothing)
+            for (int slot = 0; slot < CHUNK_SLOTS; slot++) {
+                chunk.put(slot * SLOT_BYTES, FREE);
+                chunk.putInt(slot * SLOT_BYTES + 1, (slot + 1 < CHUNK_SLOTS) ? first + slot + 1 : NONE);
+            }
+            freeHead = first;
+        }
+
+        int handle = freeHead;
+        freeHead = chunks.get(handle >>> CHUNK_BITS).getInt(offset(handle) + 1);
+        return handle;
+    }
+
+    /**
+     * @return the chunk of a slot that holds a parked game
+     * @throws IllegalArgumentException if it does not
+     */
+    private ByteBuffer parkedChunk(int handle) {
+        if (handle < 0 || (handle >>> CHUNK_BITS) >= chunks.size()
+                || chunks.get(handle >>> CHUNK_BITS).get(offset(handle)) == FREE)
+            throw new IllegalArgumentException("No game is parked in slot " + handle);
+        return chunks.get(handle >>> CHUNK_BITS);
+    }
+
+    private static int offset(int handle) {
+        return (handle & (CHUNK_SLOTS - 1)) * SLOT_BYTES;
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Aggregate results of a batch of complete games: how they ended and how long they
+ * lasted. Each simulation worker fills its own instance and the instances are merged
+ * at the end, so counting never needs any synchronization.
+ *
+ * @see SelfPlaySimulator
+ *
+ */
+public class SimulationStats {
+    private long games;
+    private long playerWins;
+    private long computerWins;
+    private long stalemates;
+    // gameLengths[n] is the number of games that lasted n moves
+    private final long[] gameLengths = new long[TicTacTix.PLAYABLE_CELLS + 1];
+    private long elapsedNanos;
+
+    /**
+     * Records one finished game.
+     * @param result final state of the game (PLAYER / COMPUTER / STALEMATE)
+     * @param moves  number of moves that were played
+     */
+    public void record(char result, int moves) {
+        games++;
+        gameLengths[moves]++;
+
+        if (result == TicTacTix.PLAYER)
+            playerWins++;
+        else if (result == TicTacTix.COMPUTER)
+            computerWins++;
+        else
+            stalemates++;
+    }
+
+    /**
+     * Adds the counts of another instance to this one.
+     * @param other statistics to add
+     */
+    public void merge(SimulationStats other) {
+        games += other.games;
+        playerWins += other.playerWins;
+        computerWins += other.computerWins;
+        stalemates += other.stalemates;
+        for (int moves = 0; moves < gameLengths.length; moves++)
+            gameLengths[moves] += other.gameLengths[moves];
+    }
+
+    public void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    public long getPlayerWins() {
+        return playerWins;
+    }
+
+    public long getComputerWins() {
+        return computerWins;
+    }
+
+    public long getStalemates() {
+        return stalemates;
+    }
+
+    /**
+     * @param  moves a game length
+     * @return       number of games that lasted exactly that many moves
+     */
+    public long getGamesOfLength(int moves) {
+        return gameLengths[moves];
+    }
+
+    /**
+     * @return average number of moves per game
+     */
+    public double getAverageLength() {
+        long totalMoves = 0;
+        for (int moves = 0; moves < gameLengths.length; moves++)
+            totalMoves += moves * gameLengths[moves];
+        return (games == 0) ? 0 : (double) totalMoves / games;
+    }
+
+    /**
+     * @return number of games finished per second of wall-clock time
+     */
+    public double getGamesPerSecond() {
+        return (elapsedNanos == 0) ? 0 : games * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Formats a count as a percentage of all games.
+     */
+    private String percent(long count) {
+        return String.format("%6.2f%%", (games == 0) ? 0 : 100.0 * count / games);
+    }
+
+    /**
+     * Returns a printable report: outcome rates, game length distribution and throughput.
+     * @return String containing the report
+     */
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+
+        out.append(String.format("Games played:   %d in %.2f s (%.0f games/s)%n", games, elapsedNanos / 1e9, getGamesPerSecond()));
+        out.append("X wins:         ").append(percent(playerWins)).append(" (").append(playerWins).append(")\n");
+        out.append("O wins:         ").append(percent(computerWins)).append(" (").append(computerWins).append(")\n");
+        out.append("Stalemates:     ").append(percent(stalemates)).append(" (").append(stalemates).append(")\n");
+        out.append(String.format("Average length: %.2f moves%n", getAverageLength()));
+        out.append("Game lengths:\n");
+        for (int moves = 0; moves < gameLengths.length; moves++) {
+            if (gameLengths[moves] > 0)
+                out.append(String.format("  %2d moves: %s (%d)%n", moves, percent(gameLengths[moves]), gameLengths[moves]));
+        }
+        return out.toString();
+    }
+}
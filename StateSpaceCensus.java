@@ -0,0 +1,233 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts every position that can be reached from the empty board, by depth, along with
+ * how many of them are wins for X, wins for O and stalemates. Games stop at the first
+ * win, so positions where the game was already over before the last move are not
+ * reachable and are not counted. Positions are classified the way findGameState()
+ * does it, so a full board counts as a stalemate even if the last move completed a line.
+ *
+ * The same position can be reached through many move orders, and the middle depths hold
+ * billions of positions, far too many for any set of visited positions. Instead every
+ * position is given a single parent (the position without its lowest-numbered marker of
+ * the player who moved last, among the ones that could have been the last move) and the
+ * walk only follows a move when it leads to a child of the current position. That visits
+ * each reachable position exactly once, needs no memory beyond the current path, and lets
+ * the subtrees be counted in parallel without sharing anything.
+ *
+ * Usage: java StateSpaceCensus [max depth] [threads] [first player X/O]
+ *
+ * @see CensusReport
+ *
+ */
+public class StateSpaceCensus {
+    // Nodes this close to the root are split into parallel tasks
+    private static final int SPLIT_DEPTH = 3;
+    private static final int FREE_CELLS = TicTacTix.ALL_CELLS & ~TicTacTix.RESERVED_CELLS;
+
+    private final int threads;
+    private final int maxDepth;
+
+    /**
+     * @param threads  number of worker threads (1 counts in the calling thread)
+     * @param maxDepth number of markers to count up to (PLAYABLE_CELLS for the whole game)
+     */
+    public StateSpaceCensus(int threads, int maxDepth) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is needed");
+        if (maxDepth < 0 || maxDepth > TicTacTix.PLAYABLE_CELLS)
+            throw new IllegalArgumentException("The depth must be between 0 and " + TicTacTix.PLAYABLE_CELLS);
+
+        this.threads = threads;
+        this.maxDepth = maxDepth;
+    }
+
+    public static void main(String[] args) {
+        try {
+            int maxDepth = (args.length > 0) ? Integer.parseInt(args[0]) : TicTacTix.PLAYABLE_CELLS;
+            int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+            char first = (args.length > 2) ? Character.toUpperCase(args[2].charAt(0)) : TicTacTix.PLAYER;
+            if (first != TicTacTix.PLAYER && first != TicTacTix.COMPUTER)
+                throw new IllegalArgumentException("The first player must be X or O");
+
+            System.out.println(new StateSpaceCensus(threads, maxDepth).run(first));
+        }
+        catch (IllegalArgumentException e) {
+            System.out.println("ERROR: " + e.getMessage());
+            System.out.println("Usage: java StateSpaceCensus [max depth] [threads] [first player X/O]");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Counts the positions of games started by the given player.
+     * @param  firstPlayer character code of the player who moves first (PLAYER / COMPUTER)
+     * @return             the counts by depth
+     */
+    public CensusReport run(char firstPlayer) {
+        long start = System.nanoTime();
+        CensusTask root = new CensusTask(firstPlayer, 0, 0, 0);
+        CensusReport report;
+
+        if (threads == 1) {
+            report = root.compute();
+        }
+        else {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                report = pool.invoke(root);
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * A reachable position that is still being played, along with everything below it.
+     * Positions near the root fork a task per child, deeper ones are walked sequentially.
+     */
+    private class CensusTask extends RecursiveTask<CensusReport> {
+        private static final long serialVersionUID = 1L;
+
+        private final char firstPlayer;
+        private final int toMove;  // cells of the player whose turn it is
+        private final int waiting; // cells of the other player
+        private final int depth;
+
+        CensusTask(char firstPlayer, int toMove, int waiting, int depth) {
+            this.firstPlayer = firstPlayer;
+            this.toMove = toMove;
+            this.waiting = waiting;
+            this.depth = depth;
+        }
+
+        protected CensusReport compute() {
+            CensusReport report = new CensusReport(firstPlayer, maxDepth);
+            if (depth == 0)
+                report.recordPlayable(0, 1);
+
+            int toMoveThreats = TicTacTix.findThreats(toMove, waiting);
+            int waitingThreats = TicTacTix.findThreats(waiting, toMove);
+            if (depth >= SPLIT_DEPTH || threads == 1) {
+                walk(toMove, waiting, toMoveThreats, waitingThreats, depth, report);
+                return report;
+            }
+
+            int children = countEndings(toMove, waiting, toMoveThreats, depth, report);
+            List<CensusTask> tasks = new ArrayList<>();
+            for (; children != 0; children &= children - 1) {
+                int cell = Integer.numberOfTrailingZeros(children);
+                report.recordPlayable(depth + 1, 1);
+                tasks.add(new CensusTask(firstPlayer, waiting, toMove | (1 << cell), depth + 1));
+            }
+            for (CensusTask task: invokeAll(tasks))
+                report.merge(task.join());
+            return report;
+        }
+
+        /**
+         * Counts everything below a position, depth first. The threats of both players
+         * are passed down and updated move by move instead of being searched for again.
+         * @param toMove         cells of the player whose turn it is
+         * @param waiting        cells of the other player
+         * @param toMoveThreats  cells that would complete a line for the player to move
+         * @param waitingThreats cells that would complete a line for the other player
+         * @param depth          number of markers on the board
+         * @param report         where to count the positions
+         */
+        private void walk(int toMove, int waiting, int toMoveThreats, int waitingThreats, int depth, CensusReport report) {
+            int children = countEndings(toMove, waiting, toMoveThreats, depth, report);
+
+            // The last level only needs counting
+            if (depth + 1 == maxDepth) {
+                report.recordPlayable(depth + 1, Integer.bitCount(children));
+                return;
+            }
+            for (; children != 0; children &= children - 1) {
+                int cell = Integer.numberOfTrailingZeros(children);
+                int after = toMove | (1 << cell);
+
+                report.recordPlayable(depth + 1, 1);
+                walk(waiting, after, waitingThreats & ~(1 << cell), toMoveThreats | newThreats(after, waiting, cell),
+                        depth + 1, report);
+            }
+        }
+
+        /**
+         * Counts the children of a position where the game is over and finds the ones
+         * that are still being played.
+         * @param  toMove        cells of the player whose turn it is
+         * @param  waiting       cells of the other player
+         * @param  toMoveThreats cells that would complete a line for the player to move
+         * @param  depth         number of markers on the board
+         * @param  report        where to count the finished positions
+         * @return               the moves leading to children that are still being played
+         */
+        private int countEndings(int toMove, int waiting, int toMoveThreats, int depth, CensusReport report) {
+            if (depth >= maxDepth)
+                return 0;
+
+            int empty = FREE_CELLS & ~(toMove | waiting);
+            boolean full = (depth + 1 == TicTacTix.PLAYABLE_CELLS);
+            char mover = ((depth % 2 == 0) == (firstPlayer == TicTacTix.PLAYER)) ? TicTacTix.PLAYER : TicTacTix.COMPUTER;
+
+            for (int moves = toMoveThreats; moves != 0; moves &= moves - 1) {
+                int cell = Integer.numberOfTrailingZeros(moves);
+                if (isParent(toMove, cell))
+                    report.recordEnding(depth + 1, full ? TicTacTix.STALEMATE : mover);
+            }
+
+            // Without a line any of the mover's markers could have been the last one, so
+            // only a move below all of them leads to a child of this position
+            int lowest = toMove & -toMove;
+            int quiet = empty & ~toMoveThreats & ((lowest == 0) ? -1 : lowest - 1);
+            if (full) {
+                for (; quiet != 0; quiet &= quiet - 1)
+                    report.recordEnding(depth + 1, TicTacTix.STALEMATE);
+                return 0;
+            }
+            return quiet;
+        }
+
+        /**
+         * Finds the threats a marker creates on the lines through its cell.
+         * @param  own      cells of the player, including the new marker
+         * @param  opponent cells of the other player
+         * @param  cell     cell of the new marker
+         * @return          cells that now complete a line through the cell for the player
+         */
+        private int newThreats(int own, int opponent, int cell) {
+            int threats = 0;
+            for (int line: TicTacTix.LINES_THROUGH_CELL[cell]) {
+                int mask = TicTacTix.WIN_LINES[line];
+                if ((mask & opponent) == 0 && Integer.bitCount(mask & own) == TicTacTix.SIZE - 1)
+                    threats |= mask & ~own;
+            }
+            return threats;
+        }
+
+        /**
+         * Checks whether a winning move leads to a child of this position: no marker of
+         * the mover with a lower number lies on every completed line (removing such a
+         * marker instead would also give a position that is still being played).
+         * @param  toMove cells of the player whose turn it is
+         * @param  cell   a move that completes at least one line
+         * @return        is this position the parent of the one after the move?
+         */
+        private boolean isParent(int toMove, int cell) {
+            int after = toMove | (1 << cell);
+            int common = -1;
+            for (int line: TicTacTix.LINES_THROUGH_CELL[cell]) {
+                if ((TicTacTix.WIN_LINES[line] & after) == TicTacTix.WIN_LINES[line])
+                    common &= TicTacTix.WIN_LINES[line];
+            }
+            return (common & toMove & ((1 << cell) - 1)) == 0;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * The 48 rotations and reflections of the TicTacTix cube. Every symmetry keeps the
+ * reserved center cell in place, so two boards that map onto each other are the
+ * same position as far as the game is concerned.
+ *
+ * Board masks are transformed with precomputed lookup tables: a 27-bit mask is split
+ * into three 9-bit chunks (one per layer) and each chunk is mapped with a single array
+ * read, so a whole board is permuted with a handful of lookups.
+ *
+ * A position's canonical form is its image with the smallest packed key. canonicalForm()
+ * finds it together with the symmetry that produces it in a single pass over the 48
+ * symmetries, skipping the second mask whenever the first one already loses, which
+ * canonicalizes a few million positions per second. Games are canonicalized the same
+ * way on their move sequences (see canonicalGameSymmetry()).
+ *
+ * @see TicTacTix
+ *
+ */
+public class Symmetry {
+    // Number of symmetries of a cube (6 axis orders x 8 combinations of flips)
+    public static final int COUNT = 48;
+
+    private static final int CHUNK_BITS = TicTacTix.SIZE * TicTacTix.SIZE;
+    private static final int CHUNKS = TicTacTix.SIZE;
+
+    // All 6 orderings of the (layer, row, column) axes
+    private static final int[][] AXIS_ORDERS = {
+        {0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0}
+    };
+
+    // CELL_MAP[symmetry][cell] is the cell that 'cell' is moved to by the symmetry
+    private static final int[][] CELL_MAP = buildCellMaps();
+    // INVERSE[symmetry] is the symmetry that undoes it
+    private static final int[] INVERSE = buildInverses();
+    // The image of one 9-bit chunk of a mask, at CHUNK_MAP[(symmetry * CHUNKS + chunk) << CHUNK_BITS | bits]
+    // (a single flat array, so a lookup is one bounds check and one read)
+    private static final int[] CHUNK_MAP = buildChunkMaps();
+
+    // A canonical form holds the canonicalizing symmetry above the 2 x 27 bits of the key
+    private static final int KEY_BITS = 2 * TicTacTix.CELLS;
+    private static final long KEY_MASK = (1L << KEY_BITS) - 1;
+
+    /**
+     * Not meant to be instantiated; all methods are static.
+     */
+    private Symmetry() {
+    }
+
+    /**
+     * Builds the cell permutation of every symmetry. Symmetry 0 is the identity.
+     * @return a COUNT x CELLS table of cell images
+     */
+    private static int[][] buildCellMaps() {
+        int[][] maps = new int[COUNT][TicTacTix.CELLS];
+        int size = TicTacTix.SIZE;
+
+        for (int symmetry = 0; symmetry < COUNT; symmetry++) {
+            int[] order = AXIS_ORDERS[symmetry / 8];
+            int flips = symmetry % 8;
+
+            for (int cell = 0; cell < TicTacTix.CELLS; cell++) {
+                int[] coords = {cell / (size * size), (cell / size) % size, cell % size};
+                int[] image = new int[3];
+
+                for (int axis = 0; axis < 3; axis++) {
+                    image[axis] = coords[order[axis]];
+                    if ((flips & (1 << axis)) != 0)
+                        image[axis] = size - 1 - image[axis];
+                }
+                maps[symmetry][cell] = TicTacTix.cellIndex(image[0], image[1], image[2]);
+            }
+        }
+        return maps;
+    }
+
+    /**
+     * Finds, for every symmetry, the symmetry that maps every cell back to where it started.
+     * @return table of inverse symmetries
+     */
+    private static int[] buildInverses() {
+        int[] inverses = new int[COUNT];
+
+        for (int symmetry = 0; symmetry < COUNT; symmetry++) {
+            for (int candidate = 0; candidate < COUNT; candidate++) {
+                boolean identity = true;
+                for (int cell = 0; cell < TicTacTix.CELLS && identity; cell++) {
+                    identity = CELL_MAP[candidate][CELL_MAP[symmetry][cell]] == cell;
+                }
+                if (identity) {
+                    inverses[symmetry] = candidate;
+                    break;
+                }
+            }
+        }
+        return inverses;
+    }
+
+    /**
+     * Precomputes the image of every possible 9-bit chunk of a board mask under every symmetry.
+     * @return the chunk lookup table
+     */
+    private static int[] buildChunkMaps() {
+        int[] table = new int[(COUNT * CHUNKS) << CHUNK_BITS];
+
+        for (int symmetry = 0; symmetry < COUNT; symmetry++) {
+            for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                int base = (symmetry * CHUNKS + chunk) << CHUNK_BITS;
+                for (int bits = 0; bits < (1 << CHUNK_BITS); bits++) {
+                    int image = 0;
+                    for (int bit = 0; bit < CHUNK_BITS; bit++) {
+                        if ((bits & (1 << bit)) != 0)
+                            image |= 1 << CELL_MAP[symmetry][chunk * CHUNK_BITS + bit];
+                    }
+                    table[base | bits] = image;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Applies a symmetry to a board mask.
+     * @param  cells    bitmask of cells (as produced by TicTacTix.cellIndex())
+     * @param  symmetry index of the symmetry (0 <= symmetry < COUNT)
+     * @return          the transformed mask
+     */
+    public static int transform(int cells, int symmetry) {
+        int base = symmetry * CHUNKS << CHUNK_BITS;
+        int mask = (1 << CHUNK_BITS) - 1;
+
+        return CHUNK_MAP[base | (cells & mask)]
+                | CHUNK_MAP[(base + (1 << CHUNK_BITS)) | ((cells >>> CHUNK_BITS) & mask)]
+                | CHUNK_MAP[(base + (2 << CHUNK_BITS)) | (cells >>> (2 * CHUNK_BITS))];
+    }
+
+    /**
+     * Applies a symmetry to a single cell index.
+     * @param  cell     index of the cell
+     * @param  symmetry index of the symmetry
+     * @return          index of the cell it is moved to
+     */
+    public static int transformCell(int cell, int symmetry) {
+        return CELL_MAP[symmetry][cell];
+    }
+
+    /**
+     * Returns the symmetry that undoes the given one.
+     * @param  symmetry index of the symmetry
+     * @return          index of its inverse
+     */
+    public static int inverse(int symmetry) {
+        return INVERSE[symmetry];
+    }
+
+    /**
+     * Packs two board masks into a single key. The key is laid out as
+     * [first mask (27 bits)][second mask (27 bits)].
+     * @param  first  bitmask of the first player's cells
+     * @param  second bitmask of the second player's cells
+     * @return        the packed key
+     */
+    public static long pack(int first, int second) {
+        return ((long) first << TicTacTix.CELLS) | second;
+    }
+
+    /**
+     * @param  key a packed key
+     * @return     the first mask packed into it
+     */
+    public static int first(long key) {
+        return (int) (key >>> TicTacTix.CELLS) & TicTacTix.ALL_CELLS;
+    }
+
+    /**
+     * @param  key a packed key
+     * @return     the second mask packed into it
+     */
+    public static int second(long key) {
+        return (int) key & TicTacTix.ALL_CELLS;
+    }
+
+    /**
+     * Finds a position's canonical form, which is the transformed position with the
+     * smallest packed key, and the symmetry that produces it. The two are returned
+     * together; take them apart with formKey() and formSymmetry().
+     * @param  first  bitmask of the first player's cells
+     * @param  second bitmask of the second player's cells
+     * @return        the canonical key with the canonicalizing symmetry above it
+     */
+    public static long canonicalForm(int first, int second) {
+        int bestFirst = Integer.MAX_VALUE;
+        int bestSecond = Integer.MAX_VALUE;
+        int bestSymmetry = 0;
+
+        for (int symmetry = 0; symmetry < COUNT; symmetry++) {
+            // The first mask decides the order of the keys; the second only breaks ties
+            int image = transform(first, symmetry);
+            if (image > bestFirst)
+                continue;
+            int secondImage = transform(second, symmetry);
+            if (image < bestFirst || secondImage < bestSecond) {
+                bestFirst = image;
+                bestSecond = secondImage;
+                bestSymmetry = symmetry;
+            }
+        }
+        return (long) bestSymmetry << KEY_BITS | pack(bestFirst, bestSecond);
+    }
+
+    /**
+     * @param  form a canonical form returned by canonicalForm()
+     * @return      the canonical packed key
+     */
+    public static long formKey(long form) {
+        return form & KEY_MASK;
+    }
+
+    /**
+     * @param  form a canonical form returned by canonicalForm()
+     * @return      index of the canonicalizing symmetry
+     */
+    public static int formSymmetry(long form) {
+        return (int) (form >>> KEY_BITS);
+    }
+
+    /**
+     * Finds the symmetry that maps a position onto its canonical form.
+     * @param  first  bitmask of the first player's cells
+     * @param  second bitmask of the second player's cells
+     * @return        index of the canonicalizing symmetry
+     */
+    public static int canonicalSymmetry(int first, int second) {
+        return formSymmetry(canonicalForm(first, second));
+    }
+
+    /**
+     * Returns the packed key of a position's canonical form. All 48 symmetric
+     * copies of a position share the same canonical key.
+     * @param  first  bitmask of the first player's cells
+     * @param  second bitmask of the second player's cells
+     * @return        the canonical packed key
+     */
+    public static long canonicalKey(int first, int second) {
+        return formKey(canonicalForm(first, second));
+    }
+
+    /**
+     * Finds the symmetry that maps a game onto its canonical form: the transformed move
+     * sequence that comes first in lexicographic order. Games that are symmetric copies
+     * of each other (the same moves, turned or mirrored) have the same canonical form.
+     * @param  moves     the cells played, in order
+     * @param  moveCount number of moves
+     * @return           index of the canonicalizing symmetry
+     */
+    public static int canonicalGameSymmetry(int[] moves, int moveCount) {
+        // Symmetries still tied for the smallest sequence so far, one bit each
+        long candidates = (1L << COUNT) - 1;
+
+        for (int i = 0; i < moveCount && Long.bitCount(candidates) > 1; i++) {
+            int smallest = Integer.MAX_VALUE;
+            long tied = 0;
+            for (long left = candidates; left != 0; left &= left - 1) {
+                int symmetry = Long.numberOfTrailingZeros(left);
+                int image = CELL_MAP[symmetry][moves[i]];
+                if (image < smallest) {
+                    smallest = image;
+                    tied = 0;
+                }
+                if (image == smallest)
+                    tied |= 1L << symmetry;
+            }
+            candidates = tied;
+        }
+        return Long.numberOfTrailingZeros(candidates);
+    }
+}
@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A precomputed table of perfect play, read straight from a memory-mapped file.
+ * Each entry holds the game theoretic value and the best move of one canonical
+ * position, so the computer answers any position in the table with a single lookup.
+ * Positions that are not in the table are handed to a fallback engine.
+ *
+ * File format (version 1, big endian):
+ * <pre>
+ *   header (32 bytes):  magic "TTXB" | version | entry count | slot count | 16 unused bytes
+ *   keys   (8 bytes per slot):  OCCUPIED bit | canonical packed key (see Symmetry.pack())
+ *   data   (2 bytes per slot):  value | best move (cell index, in the canonical frame)
+ * </pre>
+ * The slots form an open addressing hash table (linear probing, power of two size), so a
+ * lookup touches a few bytes of the file and nothing is ever loaded onto the heap.
+ * Keys are always (side to move, other side). A value of +n means the side to move wins
+ * with n - 1 cells left empty at the end, -n means it loses that way and 0 is a draw.
+ *
+ * @see TablebaseGenerator
+ *
+ */
+public class Tablebase implements MoveEngine {
+    public static final int MAGIC = 0x54545842; // "TTXB"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 32;
+    public static final long OCCUPIED = 1L << 63;
+
+    // Value returned by probe() for positions that are not in the table
+    public static final int MISS = -1;
+
+    private final MappedByteBuffer buffer;
+    private final int entryCount;
+    private final int slotCount;
+    private final int dataOffset;
+    private final MoveEngine fallback;
+
+    private String lastReport = "No lookup yet";
+
+    /**
+     * Wraps an already mapped table. Use open() to map a file.
+     * @param buffer   the mapped file
+     * @param fallback engine used for positions missing from the table (may be null)
+     * @throws IOException if the file is not a tablebase this version understands
+     */
+    private Tablebase(MappedByteBuffer buffer, MoveEngine fallback) throws IOException {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a TicTacTix tablebase");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported tablebase version " + buffer.getInt(4));
+
+        this.buffer = buffer;
+        this.entryCount = buffer.getInt(8);
+        this.slotCount = buffer.getInt(12);
+        this.dataOffset = HEADER_BYTES + slotCount * 8;
+        this.fallback = fallback;
+
+        if (Integer.bitCount(slotCount) != 1 || buffer.capacity() < fileSize(slotCount))
+            throw new IOException("Tablebase file is truncated or corrupt");
+    }
+
+    /**
+     * Memory-maps a tablebase file. Only the header is read here, so this is cheap
+     * no matter how large the file is.
+     * @param  file     path of the tablebase
+     * @param  fallback engine used for positions missing from the table (may be null)
+     * @return          the opened tablebase
+     * @throws IOException if the file cannot be read or is not a valid tablebase
+     */
+    public static Tablebase open(Path file, MoveEngine fallback) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Tablebase(buffer, fallback);
+        }
+    }
+
+    /**
+     * @param  slotCount number of hash slots
+     * @return           size in bytes of a tablebase file with that many slots
+     */
+    static long fileSize(int slotCount) {
+        return HEADER_BYTES + (long) slotCount * 10;
+    }
+
+    /**
+     * Finds the hash slot a key starts probing from.
+     * @param  key       canonical packed key
+     * @param  slotCount number of slots (power of two)
+     * @return           slot index
+     */
+    static int slot(long key, int slotCount) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(slotCount))) & (slotCount - 1);
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Looks up a position in the table.
+     * @param  own      bitmask of the cells of the side to move
+     * @param  opponent bitmask of the other side's cells
+     * @return          the entry packed as (value << 8 | move), with the move already mapped
+     *                  back onto the given board, or MISS
+     */
+    public int probe(int own, int opponent) {
+        long form = Symmetry.canonicalForm(own, opponent);
+        int symmetry = Symmetry.formSymmetry(form);
+        long key = Symmetry.formKey(form);
+
+        for (int index = slot(key, slotCount); ; index = (index + 1) & (slotCount - 1)) {
+            long stored = buffer.getLong(HEADER_BYTES + index * 8);
+            if ((stored & OCCUPIED) == 0)
+                return MISS;
+
+            if ((stored & ~OCCUPIED) == key) {
+                int value = buffer.get(dataOffset + index * 2);
+                int move = Symmetry.transformCell(buffer.get(dataOffset + index * 2 + 1), Symmetry.inverse(symmetry));
+                return (value << 8) | move;
+            }
+        }
+    }
+
+    /**
+     * @param  entry an entry returned by probe()
+     * @return       the value of the position for the side to move (see the class comment)
+     */
+    public static int value(int entry) {
+        return entry >> 8;
+    }
+
+    /**
+     * @param  entry an entry returned by probe()
+     * @return       the best move (cell index)
+     */
+    public static int move(int entry) {
+        return entry & 0xFF;
+    }
+
+    public int chooseMove(TicTacTix board, char player) {
+        char opponent = (player == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+        int entry = probe(board.getCells(player), board.getCells(opponent));
+
+        if (entry != MISS) {
+            lastReport = "tablebase hit, value " + value(entry);
+            return move(entry);
+        }
+        if (fallback == null)
+            throw new IllegalStateException("Position is not in the tablebase and there is no fallback engine");
+
+        int move = fallback.chooseMove(board, player);
+        lastReport = "tablebase miss, " + fallback.getLastReport();
+        return move;
+    }
+
+    public String getLastReport() {
+        return lastReport;
+    }
+}
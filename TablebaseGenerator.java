@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Offline solver that writes the Tablebase file used by the computer player.
+ *
+ * Every position reachable from the empty board is far too many to store (the count
+ * grows into the hundreds of millions a few moves in), but the computer never needs most
+ * of them: once it follows the table it only ever makes its own best move. So the
+ * generator does a forward solve of the computer's strategy: from the empty board, with
+ * the computer moving either first or second, it follows the best move on the computer's
+ * turns and every legal move on the human's turns. Each position met on the way is
+ * solved exactly and stored (value and best move) under its canonical key. The result
+ * covers every position a game against the table can reach.
+ *
+ * Usage: java TablebaseGenerator [output file]
+ *
+ * @see Tablebase
+ *
+ */
+public class TablebaseGenerator {
+    public static final String DEFAULT_FILE = "TicTacTix.tbl";
+
+    // Exact solver (no budget) shared by all the positions, so its table keeps helping
+    private final AlphaBetaEngine solver = new AlphaBetaEngine(0, 0, 22, true);
+    // Canonical key -> (value << 8 | canonical best move)
+    private final Map<Long, Integer> entries = new HashMap<>();
+    // Canonical keys (tagged with whose turn it is) that have already been walked
+    private final Set<Long> visited = new HashSet<>();
+
+    public static void main(String[] args) {
+        Path file = Paths.get(args.length > 0 ? args[0] : DEFAULT_FILE);
+        long start = System.nanoTime();
+
+        TablebaseGenerator generator = new TablebaseGenerator();
+        generator.solve();
+        try {
+            generator.write(file);
+        }
+        catch (IOException e) {
+            System.out.println("Could not write the tablebase: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.printf("Wrote %d positions to %s in %.1f s%n",
+                generator.entries.size(), file, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Walks the computer's strategy from the empty board, once with the computer moving
+     * first and once with it moving second.
+     */
+    public void solve() {
+        walk(0, 0, true);
+        walk(0, 0, false);
+    }
+
+    /**
+     * Recursive part of solve(). Positions are seen from the side to move.
+     * @param own          bitmask of the cells of the side to move
+     * @param opponent     bitmask of the other side's cells
+     * @param computerTurn is the side to move the computer?
+     */
+    private void walk(int own, int opponent, boolean computerTurn) {
+        int empty = TicTacTix.ALL_CELLS & ~(own | opponent | TicTacTix.RESERVED_CELLS);
+        if (empty == 0)
+            return;
+
+        long form = Symmetry.canonicalForm(own, opponent);
+        int symmetry = Symmetry.formSymmetry(form);
+        long key = Symmetry.formKey(form);
+        if (!visited.add(computerTurn ? key | Tablebase.OCCUPIED : key))
+            return;
+
+        int best = solveEntry(key, own, opponent, symmetry);
+
+        if (computerTurn) {
+            playAndWalk(own, opponent, best, true);
+        }
+        else {
+            for (int moves = empty; moves != 0; moves &= moves - 1)
+                playAndWalk(own, opponent, Integer.numberOfTrailingZeros(moves), false);
+        }
+    }
+
+    /**
+     * Plays a move and carries on walking from the resulting position, unless it ended the game.
+     * @param own          bitmask of the cells of the side to move
+     * @param opponent     bitmask of the other side's cells
+     * @param cell         the move to play
+     * @param computerTurn is the side making the move the computer?
+     */
+    private void playAndWalk(int own, int opponent, int cell, boolean computerTurn) {
+        int after = own | (1 << cell);
+
+        for (int line: TicTacTix.LINES_THROUGH_CELL[cell]) {
+            if ((after & TicTacTix.WIN_LINES[line]) == TicTacTix.WIN_LINES[line])
+                return;
+        }
+        // The player that just moved is now the one waiting
+        walk(opponent, after, !computerTurn);
+    }
+
+    /**
+     * Solves a position exactly and records it in the table (if it is not there yet).
+     * @param  key      canonical key of the position
+     * @param  own      bitmask of the cells of the side to move
+     * @param  opponent bitmask of the other side's cells
+     * @param  symmetry symmetry that maps the position onto its canonical form
+     * @return          the best move on the original (not canonical) board
+     */
+    private int solveEntry(long key, int own, int opponent, int symmetry) {
+        Integer known = entries.get(key);
+        if (known != null)
+            return Symmetry.transformCell(known & 0xFF, Symmetry.inverse(symmetry));
+
+        SearchResult result = solver.search(own, opponent);
+        if (!result.isSolved())
+            throw new IllegalStateException("Position could not be solved: " + key);
+
+        int value = toValue(result.getScore());
+        entries.put(key, (value << 8) | Symmetry.transformCell(result.getMove(), symmetry));
+        return result.getMove();
+    }
+
+    /**
+     * Converts an exact search score into the compact value stored in the file.
+     * @param  score score returned by AlphaBetaEngine (must be exact)
+     * @return       +n for a win, -n for a loss (n - 1 cells left empty at the end), 0 for a draw
+     */
+    static int toValue(int score) {
+        if (score >= AlphaBetaEngine.WIN_SCORE)
+            return score - AlphaBetaEngine.WIN_SCORE + 1;
+        if (score <= -AlphaBetaEngine.WIN_SCORE)
+            return -(-score - AlphaBetaEngine.WIN_SCORE + 1);
+        return 0;
+    }
+
+    /**
+     * Writes the solved positions to a tablebase file (format described in Tablebase).
+     * @param  file path of the file to create (replaced if it exists)
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        // Keep the table at most half full so that probes stay short
+        int slotCount = Integer.highestOneBit(Math.max(1, entries.size() * 2 - 1)) << 1;
+        long[] keys = new long[slotCount];
+        short[] data = new short[slotCount];
+
+        for (Map.Entry<Long, Integer> entry: entries.entrySet()) {
+            long key = entry.getKey();
+            int index = Tablebase.slot(key, slotCount);
+            while ((keys[index] & Tablebase.OCCUPIED) != 0)
+                index = (index + 1) & (slotCount - 1);
+
+            keys[index] = key | Tablebase.OCCUPIED;
+            data[index] = (short) (int) entry.getValue();
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) Tablebase.fileSize(slotCount)).order(ByteOrder.BIG_ENDIAN);
+        out.putInt(Tablebase.MAGIC).putInt(Tablebase.VERSION).putInt(entries.size()).putInt(slotCount);
+        out.position(Tablebase.HEADER_BYTES);
+        for (long key: keys)
+            out.putLong(key);
+        for (short value: data)
+            out.putShort(value);
+        out.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining())
+                channel.write(out);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 import java.util.Arrays;
 import java.util.InputMismatchException;
 import java.util.Scanner;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
 /**
  * class for the Tic-Tactix game. This class will instantiate the
@@ -13,7 +15,44 @@ import java.util.Scanner;
  *
  */
 public class TicTacTix {
-   private char[][][] board;
+    // Each player's cells are packed into the low 27 bits of an int.
+    // Cell [layer][row][column] lives at bit (layer * 9 + row * 3 + column)
+    private int playerCells;
+    private int computerCells;
+
+    // Incremental bookkeeping, updated by every move so that the game state never needs a full scan
+    private final byte[] playerLineCounts = new byte[WIN_LINES.length];   // PLAYER's cells on each line
+    private final byte[] computerLineCounts = new byte[WIN_LINES.length]; // COMPUTER's cells on each line
+    private int filledCells;        // number of cells taken by either player
+    private int playerLinesDone;    // number of lines fully owned by PLAYER
+    private int computerLinesDone;  // number of lines fully owned by COMPUTER
+
+    // The moves in the order they were made (the first filledCells entries are used)
+    private final byte[] moveLog = new byte[PLAYABLE_CELLS];
+    private char firstMover;
+
+    // The empty cells, in no particular order: freeCells[0 .. PLAYABLE_CELLS - filledCells - 1].
+    // freeSlot[cell] is the position of an empty cell in freeCells, so a cell that gets
+    // played is swapped with the last entry and dropped in constant time.
+    private final byte[] freeCells = FREE_CELLS.clone();
+    private final byte[] freeSlot = FREE_SLOTS.clone();
+
+    // Zobrist hash of the markers on the board (see ZOBRIST_KEYS)
+    private long hash;
+
+    // Source of the computer's random moves (each board has its own, so boards on
+    // different threads never contend on a shared generator)
+    private RandomGenerator random = new SplittableRandom();
+
+    // Immediate threats: empty cells that would complete a line for a player right now.
+    // A cell can be the missing cell of several lines, so a per-cell count backs each mask.
+    private final byte[] playerThreatCounts = new byte[CELLS];
+    private final byte[] computerThreatCounts = new byte[CELLS];
+    private int playerThreats;
+    private int computerThreats;
+
+    // Engine used to pick the computer's moves (null means random moves)
+    private MoveEngine computerEngine;
 
     // A few constants used to make the logic more transparent
     public static final char PLAYER = 'X';
@@ -21,32 +60,71 @@ public class TicTacTix {
     // Game states
     public static final char STALEMATE = 'S';
     public static final char PLAYABLE = 'P';
+    // Symbol printed for the reserved cell
+    public static final char RESERVED = 'N';
 
     private static final int LAYER = 0;
     private static final int ROW = 1;
     private static final int COLUMN = 2;
 
+    // Number of cells along one edge of the cube, and in the whole cube
+    public static final int SIZE = 3;
+    public static final int CELLS = SIZE * SIZE * SIZE;
+
+    // The center cell is inaccessible
+    private static final int CENTER = cellIndex(1, 1, 1);
+    public static final int RESERVED_CELLS = 1 << CENTER;
+    public static final int ALL_CELLS = (1 << CELLS) - 1;
+
+    // The lines come from the tables shared with boards of every size (see CubeGeometry)
+    static final CubeGeometry GEOMETRY = CubeGeometry.of(SIZE, CENTER);
+    // Every line a player can still complete (lines through a reserved cell are left out)
+    static final int[] WIN_LINES = GEOMETRY.getLineMasks();
+    // For every cell, the indices (into WIN_LINES) of the lines passing through it
+    static final int[][] LINES_THROUGH_CELL = GEOMETRY.getLinesThroughCells();
+    // Number of cells that can actually be played on
+    public static final int PLAYABLE_CELLS = CELLS - Integer.bitCount(RESERVED_CELLS);
+    // Random keys for Zobrist hashing: ZOBRIST_KEYS[0][cell] for an X on the cell,
+    // ZOBRIST_KEYS[1][cell] for an O. A board's hash is the XOR of the keys of its markers.
+    static final long[][] ZOBRIST_KEYS = new long[2][CELLS];
+    static {
+        SplittableRandom keys = new SplittableRandom(0x5A0B127L);
+        for (long[] player: ZOBRIST_KEYS) {
+            for (int cell = 0; cell < CELLS; cell++)
+                player[cell] = keys.nextLong();
+        }
+    }
+    // The free-cell index of an empty board
+    private static final byte[] FREE_CELLS = new byte[PLAYABLE_CELLS];
+    private static final byte[] FREE_SLOTS = new byte[CELLS];
+    static {
+        int slot = 0;
+        for (int cell = 0; cell < CELLS; cell++) {
+            if ((RESERVED_CELLS & (1 << cell)) == 0) {
+                FREE_CELLS[slot] = (byte) cell;
+                FREE_SLOTS[cell] = (byte) slot++;
+            }
+        }
+    }
+
     // Scanner to get input from user
     // Only moves and input within the game (not the interface)
     private static final Scanner input = new Scanner(System.in);
 
     public TicTacTix () {
-        board = new char[3][3][3];
-        initBoard();
-        board[1][1][1] = 'N'; // The center cell is inaccessible
+        playerCells = 0;
+        computerCells = 0;
     }
 
     /**
-     * \u0000 (null character) is the default char value in Java
-     * Some terminals will handle printing this character differently
-     * This method was written to avoid variation in how the board is printed
-     * by filling the array with spaces.
+     * Maps a set of coordinates to the bit that represents that cell in a board mask.
+     * @param  layer  layer coord of the cell
+     * @param  row    row coord of the cell
+     * @param  column column coord of the cell
+     * @return        index of the cell (0 <= index < CELLS)
      */
-    private void initBoard() {
-        for (char[][] layer: board) {
-            for (char[] row: layer)
-                Arrays.fill(row, ' ');
-        }
+    public static int cellIndex(int layer, int row, int column) {
+        return (layer * SIZE + row) * SIZE + column;
     }
 
     /**
@@ -55,6 +133,30 @@ public class TicTacTix {
      * @param player the character constant for a player (PLAYER / COMPUTER)
      */
     public void makeMove(char player) {
+        if (!GameMetrics.ENABLED) {
+            pickAndPlace(player);
+            return;
+        }
+
+        // Only the computer's whole moves are timed (the player's include thinking time);
+        // placing the marker is timed for both in placeAndRecord()
+        long start = System.nanoTime();
+        pickAndPlace(player);
+        if (player == COMPUTER)
+            GameMetrics.COMPUTER_MOVE.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Body of makeMove(player): gets a valid move for the player and plays it.
+     * @param player the character constant for a player (PLAYER / COMPUTER)
+     */
+    private void pickAndPlace(char player) {
+        // Random computer moves come straight from the free-cell index, no retries needed
+        if (player == COMPUTER && computerEngine == null) {
+            placeAndRecord(player, randomEmptyCell());
+            return;
+        }
+
         int layer = 0;
         int row = 0;
         int column = 0;
@@ -70,10 +172,281 @@ public class TicTacTix {
             column = coords[COLUMN];
             // Check if the move is valid
             validMove = validateMove(layer, row, column, player);
+            if (GameMetrics.ENABLED && !validMove)
+                GameMetrics.countRetry();
         } while (!validMove);
 
         // Fill the grid with the appropriate character
-        board[layer][row][column] = player;
+        placeAndRecord(player, cellIndex(layer, row, column));
+    }
+
+    /**
+     * Makes a move on a given cell without any console input or output. This is what
+     * code that drives games by itself (such as the self-play simulator) uses.
+     * @param player character code for the player making the move (PLAYER / COMPUTER)
+     * @param cell   index of the cell to play (see cellIndex())
+     * @throws IllegalArgumentException if the player is unknown or the cell is not free
+     */
+    public void makeMove(char player, int cell) {
+        if (player != PLAYER && player != COMPUTER)
+            throw new IllegalArgumentException("Invalid player: " + player);
+        if (cell < 0 || cell >= CELLS || (getEmptyCells() & (1 << cell)) == 0)
+            throw new IllegalArgumentException("Cell " + cell + " cannot be played");
+
+        placeAndRecord(player, cell);
+    }
+
+    /**
+     * Places a marker for either makeMove() method, timing it in GameMetrics.MAKE_MOVE
+     * when metrics are on.
+     * @param player character code for the player making the move
+     * @param cell   index of the (empty) cell being played
+     */
+    private void placeAndRecord(char player, int cell) {
+        if (!GameMetrics.ENABLED) {
+            placeMarker(player, cell);
+            return;
+        }
+        long start = System.nanoTime();
+        placeMarker(player, cell);
+        GameMetrics.MAKE_MOVE.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Clears the board so that the object can be reused for a new game.
+     * The computer's engine is kept.
+     */
+    public void reset() {
+        playerCells = 0;
+        computerCells = 0;
+        filledCells = 0;
+        playerLinesDone = 0;
+        computerLinesDone = 0;
+        playerThreats = 0;
+        computerThreats = 0;
+        hash = 0;
+        Arrays.fill(playerLineCounts, (byte) 0);
+        Arrays.fill(computerLineCounts, (byte) 0);
+        Arrays.fill(playerThreatCounts, (byte) 0);
+        Arrays.fill(computerThreatCounts, (byte) 0);
+        System.arraycopy(FREE_CELLS, 0, freeCells, 0, PLAYABLE_CELLS);
+        System.arraycopy(FREE_SLOTS, 0, freeSlot, 0, CELLS);
+    }
+
+    /**
+     * Puts a player's marker on an (empty) cell and updates the line counters, the
+     * filled-cell counter and the threat masks. Only the lines through the cell that was
+     * just played can change, so nothing else on the board is looked at.
+     * @param player character code for the player making the move
+     * @param cell   index of the cell being played
+     */
+    private void placeMarker(char player, int cell) {
+        int[] lines = LINES_THROUGH_CELL[cell];
+
+        // Take out what these lines contributed to the threats before the move...
+        for (int line: lines)
+            updateThreats(line, -1);
+
+        if (player == PLAYER) {
+            playerCells |= 1 << cell;
+            for (int line: lines) {
+                if (++playerLineCounts[line] == SIZE)
+                    playerLinesDone++;
+            }
+            hash ^= ZOBRIST_KEYS[0][cell];
+        }
+        else {
+            computerCells |= 1 << cell;
+            for (int line: lines) {
+                if (++computerLineCounts[line] == SIZE)
+                    computerLinesDone++;
+            }
+            hash ^= ZOBRIST_KEYS[1][cell];
+        }
+        // Swap the cell with the last free entry and drop it
+        int slot = freeSlot[cell];
+        byte last = freeCells[PLAYABLE_CELLS - filledCells - 1];
+        freeCells[slot] = last;
+        freeSlot[last] = (byte) slot;
+
+        if (filledCells == 0)
+            firstMover = player;
+        moveLog[filledCells++] = (byte) cell;
+
+        // ...and put back what they contribute after it
+        for (int line: lines)
+            updateThreats(line, 1);
+    }
+
+    /**
+     * Plays a move for the side to move (see getSideToMove()) without any console input
+     * or output. Together with undo() this lets analysis code explore a position in place:
+     * neither allocates and both update the board's counters and hash incrementally.
+     * @param cell index of the cell to play (see cellIndex())
+     * @throws IllegalArgumentException if the cell is not free
+     */
+    public void play(int cell) {
+        if (cell < 0 || cell >= CELLS || (getEmptyCells() & (1 << cell)) == 0)
+            throw new IllegalArgumentException("Cell " + cell + " cannot be played");
+        placeMarker(getSideToMove(), cell);
+    }
+
+    /**
+     * Takes back the last move, whichever method made it.
+     * @return the cell that was freed
+     * @throws IllegalStateException if no move has been made
+     */
+    public int undo() {
+        if (filledCells == 0)
+            throw new IllegalStateException("There is no move to undo");
+
+        int cell = moveLog[filledCells - 1];
+        int[] lines = LINES_THROUGH_CELL[cell];
+
+        // The exact reverse of placeMarker()
+        for (int line: lines)
+            updateThreats(line, -1);
+
+        if ((playerCells & (1 << cell)) != 0) {
+            playerCells &= ~(1 << cell);
+            for (int line: lines) {
+                if (playerLineCounts[line]-- == SIZE)
+                    playerLinesDone--;
+            }
+            hash ^= ZOBRIST_KEYS[0][cell];
+        }
+        else {
+            computerCells &= ~(1 << cell);
+            for (int line: lines) {
+                if (computerLineCounts[line]-- == SIZE)
+                    computerLinesDone--;
+            }
+            hash ^= ZOBRIST_KEYS[1][cell];
+        }
+
+        // The cell still knows its old slot; the entry moved there goes back to the end
+        filledCells--;
+        int slot = freeSlot[cell];
+        int end = PLAYABLE_CELLS - filledCells - 1;
+        byte moved = freeCells[slot];
+        freeCells[end] = moved;
+        freeSlot[moved] = (byte) end;
+        freeCells[slot] = (byte) cell;
+        freeSlot[cell] = (byte) slot;
+
+        for (int line: lines)
+            updateThreats(line, 1);
+        return cell;
+    }
+
+    /**
+     * @return the player whose turn it is: the one who did not make the last move
+     *         (PLAYER on an empty board)
+     */
+    public char getSideToMove() {
+        if (filledCells == 0)
+            return PLAYER;
+        return ((playerCells & (1 << moveLog[filledCells - 1])) != 0) ? COMPUTER : PLAYER;
+    }
+
+    /**
+     * Returns the Zobrist hash of the position: the XOR of a fixed random key per
+     * (player, cell) of every marker on the board. It is kept up to date by every move
+     * and undo, so it costs nothing to read; equal positions have equal hashes whatever
+     * order the moves were played in.
+     * @return 64-bit hash of the markers on the board
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Adds (or removes) a single line's contribution to the threat masks. A line is a
+     * threat for a player when they own all but one of its cells and the last one is empty.
+     * @param line  index of the line in WIN_LINES
+     * @param delta 1 to add the line's contribution, -1 to remove it
+     */
+    private void updateThreats(int line, int delta) {
+        int empty = WIN_LINES[line] & ~(playerCells | computerCells);
+
+        if (playerLineCounts[line] == SIZE - 1 && computerLineCounts[line] == 0)
+            playerThreats = adjustThreat(playerThreatCounts, playerThreats, empty, delta);
+        else if (computerLineCounts[line] == SIZE - 1 && playerLineCounts[line] == 0)
+            computerThreats = adjustThreat(computerThreatCounts, computerThreats, empty, delta);
+    }
+
+    /**
+     * Helper method for updateThreats(). Adjusts the number of lines a cell is the missing
+     * cell of and keeps the matching bit in the threat mask in sync with it.
+     * @param  counts  per-cell threat counts for one player
+     * @param  threats the player's current threat mask
+     * @param  cell    single-bit mask of the threatened cell
+     * @param  delta   1 or -1
+     * @return         the updated threat mask
+     */
+    private static int adjustThreat(byte[] counts, int threats, int cell, int delta) {
+        int index = Integer.numberOfTrailingZeros(cell);
+        counts[index] += delta;
+
+        if (counts[index] > 0)
+            return threats | cell;
+        return threats & ~cell;
+    }
+
+    /**
+     * Returns every empty cell that would immediately win the game for the given player.
+     * The mask is kept up to date by each move, so this is a constant time lookup.
+     * @param  player character code for the player (PLAYER / COMPUTER)
+     * @return        bitmask of the winning cells (bit index as given by cellIndex())
+     */
+    public int getThreats(char player) {
+        if (player == PLAYER)
+            return playerThreats;
+        return computerThreats;
+    }
+
+    /**
+     * Finds the threats of one side directly from a pair of board masks. This is the
+     * stateless counterpart of getThreats() used by the search engines, which explore
+     * positions without building a TicTacTix object for each of them.
+     * @param  own      bitmask of the cells of the side whose threats are wanted
+     * @param  opponent bitmask of the other side's cells
+     * @return          bitmask of the empty cells that would complete a line for 'own'
+     */
+    static int findThreats(int own, int opponent) {
+        int threats = 0;
+
+        for (int line: WIN_LINES) {
+            if ((line & opponent) == 0 && Integer.bitCount(line & own) == SIZE - 1)
+                threats |= line & ~own;
+        }
+        return threats;
+    }
+
+    /**
+     * Checks a board mask for a completed line, the stateless counterpart of the win
+     * check in findGameState() for code that only has the masks of a position.
+     * @param  cells bitmask of a player's cells
+     * @return       does the player own a whole line?
+     */
+    static boolean hasLine(int cells) {
+        for (int line: WIN_LINES) {
+            if ((cells & line) == line)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if playing on a cell would immediately win the game for the given player.
+     * @param  player character code for the player (PLAYER / COMPUTER)
+     * @param  layer  layer coord of the cell
+     * @param  row    row coord of the cell
+     * @param  column column coord of the cell
+     * @return        would this move complete a line (boolean) ?
+     */
+    public boolean isThreat(char player, int layer, int row, int column) {
+        return (getThreats(player) & (1 << cellIndex(layer, row, column))) != 0;
     }
 
     /**
@@ -94,11 +467,12 @@ public class TicTacTix {
             coords[COLUMN] = getCoordInput(COLUMN) - 1;
         }
 
-        // Computer randomly picks a coordinate
+        // Computer asks its engine (random moves never get here, see makeMove())
         else if (player == COMPUTER) {
-            coords[LAYER] = randInt(0, 3);
-            coords[ROW] = randInt(0, 3);
-            coords[COLUMN] = randInt(0, 3);
+            int cell = computerEngine.chooseMove(this, COMPUTER);
+            coords[LAYER] = cell / (SIZE * SIZE);
+            coords[ROW] = (cell / SIZE) % SIZE;
+            coords[COLUMN] = cell % SIZE;
         }
         // Just in case an attempt is made to pass in character other than X/O
         else {
@@ -144,7 +518,8 @@ public class TicTacTix {
      * @return        is the move valid?
      */
     private boolean validateMove(int layer, int row, int col, char player) {
-        if (board[layer][row][col] != ' ') {
+        int cell = 1 << cellIndex(layer, row, col);
+        if (((playerCells | computerCells | RESERVED_CELLS) & cell) != 0) {
             // Only be verbose when the user picks a cell that's taken
             if (player == PLAYER) {
                 System.out.println("This cell is already taken. Please pick another one");
@@ -161,11 +536,11 @@ public class TicTacTix {
      * @return       is the coord within a valid range?
      */
     private boolean validateCoord(int coord) {
-        if ((coord >= 1) && (coord <= 3)) {
+        if ((coord >= 1) && (coord <= SIZE)) {
             return true;
         }
         else {
-            System.out.println("Coordinate is out of bounds. Please enter a value between 1 and 3");
+            System.out.println("Coordinate is out of bounds. Please enter a value between 1 and " + SIZE);
             return false;
         }
     }
@@ -199,144 +574,142 @@ public class TicTacTix {
      *         Otherwise returns the character constant for the current state of the game (STALEMATE/PLAYABLE)
      */
     public char findGameState() {
-        char[] symbols = {PLAYER, COMPUTER};
-        boolean diagonals, streak;
+        if (!GameMetrics.ENABLED)
+            return computeGameState();
 
-        if (!checkStalemate()) {
-            for (char symbol: symbols) {
-                diagonals = checkDiagonals(symbol);
-                streak = checkAllStreaks(symbol);
+        long start = System.nanoTime();
+        char state = computeGameState();
+        GameMetrics.FIND_GAME_STATE.record(System.nanoTime() - start);
+        return state;
+    }
 
-                if (diagonals || streak)
-                    return symbol; // Return winner
-            }
+    /**
+     * Body of findGameState().
+     * @return the character code for the winner or the current state of the game
+     */
+    private char computeGameState() {
+        // The counters are kept up to date by every move, so nothing has to be scanned here
+        if (!checkStalemate()) {
+            if (playerLinesDone > 0)
+                return PLAYER;
+            if (computerLinesDone > 0)
+                return COMPUTER;
             return PLAYABLE;
         }
         return STALEMATE;
     }
 
     /**
-     * Checks of any diagonal streak on the board. Any streak that isn't a straight line
-     * in any plane (x/y/z) is considered a diagonal streak.
-     *
-     * @param  symbol the character code for the player
-     * @return        did the specified player hit any diagonal streak (boolean) ?
+     * Checks if a board is in the state of stalemate. A helper method to clarify
+     * the logic in findGameState()
+     * @return boolean (is the board in the state of a stalemate?)
      */
-    private boolean checkDiagonals(char symbol) {
-        // Note: This is a very ugly way to solve this sub-problem,
-        // but optimizing it (while keeping it readable) would involve significantly more code.
-        // Don't check the middle layer because not vertical diagonals can pass through it's center
-        int[] diag_cells = {0, 2}; // Possible end coords for a diagonal
+    private boolean checkStalemate() {
+        // The board is full once every playable cell is taken
+        return filledCells == PLAYABLE_CELLS;
+    }
 
-        // Check all vertical diagonals
-        for (int col: diag_cells) {
-            // a == b && b == c and c == symbol => a == b == c == symbol
-            if ((board[0][0][col] == board[1][1][col]) && (board[1][1][col] == board[2][2][col]) && (board[2][2][col] == symbol))
-                return true;
-            else if ((board[0][2][col] == board[1][1][col]) && (board[1][1][col] == board[2][0][col]) && (board[2][0][col] == symbol))
-                return true;
-        }
-        for (int row: diag_cells) {
-            if((board[0][row][2] == board[1][row][1]) && (board[1][row][1] == board[2][row][0]) && (board[0][row][2] == symbol))
-                return true;
-            else if((board[0][row][0] == board[1][row][1]) && (board[1][row][1] == board[2][row][2]) && (board[0][row][0] == symbol))
-                return true;
-        }
+    /**
+     * Returns the cells held by a player as a bitmask (bit index as given by cellIndex()).
+     * @param  player character code for the player (PLAYER / COMPUTER)
+     * @return        bitmask of the player's cells
+     */
+    public int getCells(char player) {
+        if (player == PLAYER)
+            return playerCells;
+        return computerCells;
+    }
 
-        // Check horizontal diagonals (at the top and bottom face of the game "cube")
-        for (int layer: diag_cells) {
-            if ((board[layer][0][0] == board[layer][1][1]) && (board[layer][1][1] == board[layer][2][2]) && (board[layer][2][2] == symbol))
-                return true;
-            if ((board[layer][0][2] == board[layer][1][1]) && (board[layer][1][1] == board[layer][2][0]) && (board[layer][2][0] == symbol))
-                return true;
-        }
+    /**
+     * Returns the cells that can still be played on.
+     * @return bitmask of the empty, non-reserved cells
+     */
+    public int getEmptyCells() {
+        return ALL_CELLS & ~(playerCells | computerCells | RESERVED_CELLS);
+    }
 
-        return false;
+    /**
+     * @return number of moves made so far in this game
+     */
+    public int getMoveCount() {
+        return filledCells;
     }
 
     /**
-     * Checks for all streaks that are not considered diagonals.
-     * The check can be a little confusing because it has been optimised.
-     * But the idea is that, instead of iterating over plane (in either the x, y or z-axis)
-     * seperately to find a streak in the board. We could assign generic variables x and y to simulataneously
-     * check over all 3 dimensions at the same time.
-     * @param  symbol character code for the player specified
-     * @return        Is there a straight streak anywhere (for the given player) on the board?
-     */
-    private boolean checkAllStreaks(char symbol) {
-        for (int x = 0; x < 3; x++) {
-            for (int y = 0; y < 3; y++) {
-                if (checkStreak(x, y, symbol, LAYER))
-                    return true;
-                if (checkStreak(x, y, symbol, ROW))
-                    return true;
-                if (checkStreak(x, y, symbol, COLUMN))
-                    return true;
-            }
-        }
-        return false;
+     * @param  index number of the move (0 for the first move of the game)
+     * @return       the cell that was played by that move
+     */
+    public int getMove(int index) {
+        if (index < 0 || index >= filledCells)
+            throw new IndexOutOfBoundsException("Move " + index + " has not been made");
+        return moveLog[index];
     }
 
     /**
-     * Checks for an individual streak on the board given a set of coordinates and a direction to search in.
-     * For example checkStreak(0, 2, LAYER) would search of a streak starting on row: 0, col: 2 and would check
-     * in the layer direction. Note: checkStreak(0, 2, ROW), however, would check for streaks starting at
-     * layer: 0, col: 2 and would look for a streak in the ROW direction
-     * @param  x      A generic variable for the first component of a coordinate in a plane
-     * @param  y      A generic variable for the second component of a coordinate in a plane
-     * @param  symbol the character code for the player whose streak is being checked
-     * @param  type   Which direction should I search for the streak in?
-     * @return        did I find a streak at the given coordinates (boolean) ?
+     * @return character code of the player who made the first move (undefined before it)
      */
-    private boolean checkStreak(int x, int y, char symbol, int type) {
-        int streak = 0;
+    public char getFirstMover() {
+        return firstMover;
+    }
 
-        for (int count = 0; count < 3; count++) {
-            if (type == LAYER) {
-                if (board[count][x][y] == symbol)
-                    streak++;
-            }
-            else if (type == ROW) {
-                if (board[x][count][y] == symbol)
-                    streak++;
-            }
-            else if (type == COLUMN) {
-                if (board[x][y][count] == symbol)
-                    streak++;
-            }
-        }
-        if (streak == 3)
-            return true;
+    /**
+     * Picks an empty cell uniformly at random with the board's own generator.
+     * @return index of the cell
+     * @throws IllegalStateException if the board is full
+     */
+    public int randomEmptyCell() {
+        return randomEmptyCell(random);
+    }
 
-        return false;
+    /**
+     * Picks an empty cell uniformly at random in constant time, from the free-cell index.
+     * @param  random source of randomness
+     * @return        index of the cell
+     * @throws IllegalStateException if the board is full
+     */
+    public int randomEmptyCell(RandomGenerator random) {
+        int empty = PLAYABLE_CELLS - filledCells;
+        if (empty == 0)
+            throw new IllegalStateException("The board is full");
+        return freeCells[random.nextInt(empty)];
     }
 
     /**
-     * Checks if a board is in the state of stalemate. A helper method to clarify
-     * the logic in findGameState()
-     * @return boolean (is the board in the state of a stalemate?)
+     * Sets the generator of the computer's random moves, e.g. a seeded SplittableRandom
+     * to make games reproducible. A generator must not be shared between threads.
+     * @param random the generator to use
      */
-    private boolean checkStalemate() {
-        for (int x = 0; x < 3; x++) {
-            for (int y = 0; y < 3; y++) {
-                for (int z = 0; z < 3; z++) {
-                    if (board[x][y][z] == ' ')
-                        return false; // if a single cell is empty, the board is not in stalemate
-                }
-            }
-        }
-        return true;
+    public void setRandom(RandomGenerator random) {
+        if (random == null)
+            throw new IllegalArgumentException("The generator cannot be null");
+        this.random = random;
+    }
+
+    /**
+     * Sets the engine used to choose the computer's moves.
+     * @param engine the engine to use, or null to go back to random moves
+     */
+    public void setComputerEngine(MoveEngine engine) {
+        computerEngine = engine;
     }
 
     /**
-     * Helper function to get a random number within a given range
-     * Not inclusive of the max limit i.e. x ϵ [min, max)
-     * @param  min Minimum value of the random number
-     * @param  max Maximum value of the random number (not inclusive)
-     * @return     A random integer in the specified limit
+     * Returns the character shown in a single cell of the board.
+     * @param  layer  layer coord of the cell
+     * @param  row    row coord of the cell
+     * @param  column column coord of the cell
+     * @return        PLAYER / COMPUTER if the cell is taken, RESERVED for reserved cells, ' ' otherwise
      */
-    private static int randInt(int min, int max){
-        return ((int) (Math.random() * (max - min))) + min; // random() generates a number between 0 and 1
+    public char getCell(int layer, int row, int column) {
+        int cell = 1 << cellIndex(layer, row, column);
+
+        if ((playerCells & cell) != 0)
+            return PLAYER;
+        if ((computerCells & cell) != 0)
+            return COMPUTER;
+        if ((RESERVED_CELLS & cell) != 0)
+            return RESERVED;
+        return ' ';
     }
 
     /**
@@ -345,35 +718,13 @@ public class TicTacTix {
      * @return String Decorated ASCII characters for the board
      */
     public String toString() {
-        String out = " =============================\n";
-
-        // Layer labels
-        out += "  Layer 1   Layer 2   Layer 3 \n   1 2 3     1 2 3     1 2 3 \n";
-        out += " -----------------------------\n";
-
-        for (int line = 0; line < 5; line++) {
-            if (line % 2 == 0) {
-                for (int layer = 0; layer < 3; layer++) {
-                    String row = line/2 + 1 + ": "; // Row label
-
-                    for (int col = 0; col < 5; col++) {
-                        // Even column values contain cells
-                        if (col % 2 == 0)
-                            row += board[layer][line/2][col/2];
-                        else
-                            row += "|";
-                    }
-                    row += "  ";
-                    out += row;
-                }
-                out += "\n";
-            }
-            else {
-                out += "   =+=+=     =+=+=     =+=+=\n";
-            }
-        }
-        out += "\n *****************************\n";
-
-        return out;
+        // The picture is a precomputed template with the cells patched in
+        if (!GameMetrics.ENABLED)
+            return BoardRenderer.renderToString(this);
+
+        long start = System.nanoTime();
+        String picture = BoardRenderer.renderToString(this);
+        GameMetrics.TO_STRING.record(System.nanoTime() - start);
+        return picture;
     }
 }
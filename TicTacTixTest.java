@@ -1,8 +1,7 @@
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Scanner;
 import java.util.InputMismatchException;
 
@@ -19,15 +18,19 @@ public class TicTacTixTest {
     private static final int GREETING_MESSAGE = 1;
     private static final int GET_PLAYER_NAME = 2;
     private static final int HALL_OF_FAME = 3;
-    private static final String HALL_OF_FAME_FILE = "HallOfFame.txt";
+    private static final String HALL_OF_FAME_FILE = HallOfFame.DEFAULT_FILE;
+    private static final int HALL_OF_FAME_SHOWN = 10; // Names shown at the start
+    private static final String GAME_ARCHIVE = "games"; // Every game is recorded here
 
     private static final Scanner input = new Scanner(System.in);
-    private static BufferedReader buffer; // To read the file
-    private static PrintWriter writer; // Write to the file
+    private static HallOfFame hallOfFame; // null if the file could not be read
     private static TicTacTix board;
+    private static MoveEngine engine; // null when the computer plays randomly
 
     public static void main(String[] args) {
         board = new TicTacTix();
+        engine = useOpeningBook(createEngine(args));
+        board.setComputerEngine(engine);
         printPrompt(GREETING_MESSAGE);
         printHallofFame();
 
@@ -36,6 +39,84 @@ public class TicTacTixTest {
         gameLoop(goingFirst, goingSecond);
     }
 
+    /**
+     * Picks the engine the computer plays with from the command line arguments.
+     * With no arguments the computer keeps making random moves.
+     * Usage: java TicTacTixTest [alphabeta | ponder [millis] | parallel [threads] | mcts [millis] | tablebase [file]]
+     * @param  args command line arguments given to main()
+     * @return      the engine to use, or null for random moves
+     */
+    private static MoveEngine createEngine(String[] args) {
+        if (args.length == 0)
+            return null;
+
+        if (args[0].equals("alphabeta")) {
+            return new AlphaBetaEngine();
+        }
+        else if (args[0].equals("ponder")) {
+            try {
+                long millis = (args.length > 1) ? Long.parseLong(args[1]) : 1000;
+                return new PonderingEngine(millis, 22);
+            }
+            catch (IllegalArgumentException e) {
+                System.out.println("Invalid time budget, using 1000 ms.");
+                return new PonderingEngine();
+            }
+        }
+        else if (args[0].equals("parallel")) {
+            try {
+                int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+                return new ParallelSearchEngine(threads, 1000, 22, 2);
+            }
+            catch (IllegalArgumentException e) {
+                System.out.println("Invalid thread count, using every core.");
+                return new ParallelSearchEngine();
+            }
+        }
+        else if (args[0].equals("mcts")) {
+            try {
+                long millis = (args.length > 1) ? Long.parseLong(args[1]) : 100;
+                return new MctsEngine(Runtime.getRuntime().availableProcessors(), millis, 1 << 18, System.nanoTime());
+            }
+            catch (IllegalArgumentException e) {
+                System.out.println("Invalid time budget, using 100 ms.");
+                return new MctsEngine();
+            }
+        }
+        else if (args[0].equals("tablebase")) {
+            String file = (args.length > 1) ? args[1] : TablebaseGenerator.DEFAULT_FILE;
+            try {
+                return Tablebase.open(Paths.get(file), new AlphaBetaEngine());
+            }
+            catch (IOException e) {
+                System.out.println("Could not open the tablebase (" + e.getMessage() + "), using the search engine instead.");
+                return new AlphaBetaEngine();
+            }
+        }
+        System.out.println("Unknown engine '" + args[0] + "', the computer will play randomly.");
+        return null;
+    }
+
+    /**
+     * Puts the opening book (if one has been built) in front of the computer's engine,
+     * so the first moves of a game are looked up instead of searched.
+     * @param  engine the engine chosen on the command line (null for random moves)
+     * @return        the engine to use
+     */
+    private static MoveEngine useOpeningBook(MoveEngine engine) {
+        Path file = Paths.get(OpeningBook.DEFAULT_FILE);
+        if (engine == null || !Files.exists(file))
+            return engine;
+
+        try {
+            return OpeningBook.open(file, engine);
+        }
+        catch (IOException e) {
+            System.out.println("Could not open the opening book (" + e.getMessage() + "), playing without it.");
+            return engine;
+        }
+    }
+
     /**
      * Returns a char (X/O) that is the assigned symbol for the player going first.
      * i.e. if the user is going first the method returns 'X' else returns 'O'
@@ -108,20 +189,17 @@ public class TicTacTixTest {
     private static void printHallofFame() {
         printPrompt(HALL_OF_FAME);
         try {
-            buffer = new BufferedReader(new FileReader(HALL_OF_FAME_FILE));
+            hallOfFame = HallOfFame.open(Paths.get(HALL_OF_FAME_FILE));
 
-            String line = "";
+            if (hallOfFame.isEmpty()) {
+                System.out.println("Mwahaha...No human has ever beat me!");
+            }
             int count = 1;
-            while (line != null) {
-                line = buffer.readLine().trim();
-                System.out.println(count + ": " + line);
+            for (HallOfFame.Entry entry: hallOfFame.topK(HALL_OF_FAME_SHOWN)) {
+                System.out.println(count + ": " + entry);
                 count++;
             }
         }
-        catch (NullPointerException e) {
-            // Don't do anything here
-            // Handling EOF (by not raising a NullPointerException)
-        }
         catch (IOException e) {
             System.out.println("Mwahaha...No human has ever beat me!");
         }
@@ -151,9 +229,17 @@ public class TicTacTixTest {
      * @param player the code for the player whose move is to be handled (PLAYER / COMPUTER)
      */
     private static void handlePlayer(char player) {
+        long start = GameMetrics.ENABLED ? System.nanoTime() : 0;
         System.out.println(board);
         System.out.println(getPlayerGreeting(player));
         board.makeMove(player);
+
+        // Show how hard the computer had to think
+        if (player == board.COMPUTER && engine != null) {
+            System.out.println("[" + engine.getLastReport() + "]");
+        }
+        if (GameMetrics.ENABLED)
+            GameMetrics.TURN.record(System.nanoTime() - start);
     }
 
     /**
@@ -163,6 +249,7 @@ public class TicTacTixTest {
     private static void handleEnding(char gameState) {
         // Show the final state of the board
         System.out.println(board);
+        archiveGame();
         
         if (gameState == board.PLAYER) {
             System.out.println("Yay! You won!");
@@ -180,6 +267,19 @@ public class TicTacTixTest {
         printPrompt(10); // Good-bye!
     }
 
+    /**
+     * Appends the game that just ended to the game archive.
+     */
+    private static void archiveGame() {
+        try (GameRecordWriter writer = new GameRecordWriter(Paths.get(GAME_ARCHIVE), "console",
+                GameRecordWriter.DEFAULT_SEGMENT_BYTES)) {
+            writer.append(board);
+        }
+        catch (IOException e) {
+            System.out.println("Could not record this game: " + e.getMessage());
+        }
+    }
+
     /**
      * Simple helper method to return a String containing a prompt
      * before each player's turn.
@@ -198,22 +298,24 @@ public class TicTacTixTest {
      */
     private static void addHighScorer() {
         try {
-            writer = new PrintWriter(new FileWriter(HALL_OF_FAME_FILE, true));
+            if (hallOfFame == null) {
+                hallOfFame = HallOfFame.open(Paths.get(HALL_OF_FAME_FILE));
+            }
             String playerName = "";
 
-            while (playerName.equals("")) {
+            while (playerName.trim().equals("")) {
                 // Get the player name
                 printPrompt(GET_PLAYER_NAME);
                 playerName = input.nextLine();
 
                 // If the player didn't enter anything
-                if (playerName.equals("")) {
+                if (playerName.trim().equals("")) {
                     System.out.println("Please enter a name with atleast one character.");
                 }
             }
 
-            writer.println(playerName); // Add the player into the Hall of Fame file
-            writer.close(); // Close file
+            hallOfFame.recordWin(playerName); // Add the player into the Hall of Fame file
+            hallOfFame.close(); // Close file
             System.out.println("You have been inducted into the TicTacTix Hall of Fame!");
         }
         // If the file could not be opened
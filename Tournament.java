@@ -0,0 +1,568 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongFunction;
+
+/**
+ * Plays a tournament between named strategies (see SelfPlaySimulator.strategy()) and
+ * rates them. Strategies meet in matches of an even number of games in which each of
+ * them moves first in half of the games. The pairings are either a round robin (every
+ * strategy meets every other one once per round) or Swiss (each round pairs strategies
+ * with similar scores that have not met yet, and one sits the round out when their
+ * number is odd).
+ *
+ * Matches are played in parallel, a match per thread at a time. Every match creates its
+ * engines from a seed derived from the tournament seed, the round and the two strategies,
+ * so its result does not depend on the number of threads or on the order matches are
+ * played in. (MCTS engines run a fixed number of playouts per move rather than searching
+ * for a time, which would depend on how busy the machine is.) Round robin rounds are all
+ * scheduled at once; Swiss rounds one after the other, as each one is paired from the
+ * results of the previous ones.
+ *
+ * Each finished match is appended to the results file as one line of six numbers (round,
+ * the two strategies, their wins and the draws) under a header naming the tournament.
+ * Run again with the same arguments, the tournament carries on from the file: finished
+ * matches are not played again and a Swiss tournament pairs its rounds exactly as before.
+ *
+ * The ratings are the maximum likelihood Elo ratings of all the games (a draw counts as
+ * half a win for each side), averaging 1500, with 95% confidence intervals from the
+ * curvature of the likelihood. Every pairing that played gets one extra virtual draw, so
+ * that a strategy that won all its games still gets a finite rating.
+ *
+ * Usage: java Tournament strategies [roundrobin | swiss] [rounds] [games per match] [seed] [threads] [results file]
+ * where strategies is a comma separated list of: random, alphabeta, mcts, book
+ *
+ * @see SelfPlaySimulator
+ *
+ */
+public class Tournament {
+    public static final double AVERAGE_ELO = 1500;
+    private static final double ELO_PER_NATURAL_LOG = 400 / Math.log(10);
+    // Playouts per move of an MCTS engine (about what its 5 ms budget gives on one core)
+    public static final long MCTS_PLAYOUTS = 2000;
+    private static final int MAX_ITERATIONS = 100000;
+
+    private final String[] names;
+    private final List<LongFunction<MoveEngine>> strategies = new ArrayList<>();
+    private final boolean swiss;
+    private final int rounds;
+    private final int gamesPerMatch;
+    private final long seed;
+    private final int threads;
+
+    // Finished matches by "round first second"
+    private final Map<String, Match> finished = new HashMap<>();
+    // Totals over the finished matches: wins[a][b] is the number of games a won against b
+    private final long[][] wins;
+    private final long[][] draws;
+
+    /**
+     * The result of one match.
+     */
+    private static final class Match {
+        final int round;
+        final int first;
+        final int second;
+        long firstWins;
+        long secondWins;
+        long draws;
+
+        Match(int round, int first, int second) {
+            this.round = round;
+            this.first = first;
+            this.second = second;
+        }
+
+        String key() {
+            return round + " " + first + " " + second;
+        }
+
+        String toLine() {
+            return key() + " " + firstWins + " " + secondWins + " " + draws;
+        }
+    }
+
+    /**
+     * @param names         names of the strategies taking part (at least two, all different)
+     * @param swiss         Swiss pairings rather than a round robin?
+     * @param rounds        number of rounds
+     * @param gamesPerMatch number of games of a match (even, so both sides move first equally often)
+     * @param seed          seed all the match seeds are derived from
+     * @param threads       number of matches played at the same time
+     */
+    public Tournament(String[] names, boolean swiss, int rounds, int gamesPerMatch, long seed, int threads) {
+        if (names.length < 2 || new HashSet<>(Arrays.asList(names)).size() != names.length)
+            throw new IllegalArgumentException("A tournament needs at least two different strategies");
+        if (rounds < 1 || threads < 1)
+            throw new IllegalArgumentException("At least one round and one thread are needed");
+        if (gamesPerMatch < 2 || gamesPerMatch % 2 != 0)
+            throw new IllegalArgumentException("A match must have an even number of games");
+
+        for (String name: names)
+            strategies.add(SelfPlaySimulator.strategy(name));
+        this.names = names.clone();
+        this.swiss = swiss;
+        this.rounds = rounds;
+        this.gamesPerMatch = gamesPerMatch;
+        this.seed = seed;
+        this.threads = threads;
+        this.wins = new long[names.length][names.length];
+        this.draws = new long[names.length][names.length];
+    }
+
+    public static void main(String[] args) {
+        try {
+            if (args.length < 1)
+                throw new IllegalArgumentException("Name the strategies taking part");
+            String format = (args.length > 1) ? args[1] : "roundrobin";
+            if (!format.equals("roundrobin") && !format.equals("swiss"))
+                throw new IllegalArgumentException("Unknown tournament format: " + format);
+            int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+            int games = (args.length > 3) ? Integer.parseInt(args[3]) : 100;
+            long seed = (args.length > 4) ? Long.parseLong(args[4]) : 1;
+            int threads = (args.length > 5) ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+
+            Tournament tournament = new Tournament(args[0].split(","), format.equals("swiss"), rounds, games, seed, threads);
+            long start = System.nanoTime();
+            int played = tournament.run((args.length > 6) ? Paths.get(args[6]) : null);
+            System.out.printf("%d matches played (%d taken from the results file) in %.1f s%n%n",
+                    played, tournament.finished.size() - played, (System.nanoTime() - start) / 1e9);
+            System.out.print(tournament.getStandings());
+        }
+        catch (IllegalArgumentException | IllegalStateException e) {
+            System.out.println("ERROR: " + e.getMessage());
+            System.out.println("Usage: java Tournament strategies [roundrobin | swiss] [rounds] [games per match] [seed] [threads] [results file]");
+            System.exit(1);
+        }
+        catch (ExecutionException e) {
+            System.out.println("ERROR: " + e.getCause().getMessage());
+            System.exit(1);
+        }
+        catch (IOException | InterruptedException e) {
+            System.out.println("ERROR: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return the first line of the results file, which names the tournament
+     */
+    private String header() {
+        return "# TicTacTix tournament: " + String.join(",", names) + (swiss ? " swiss" : " roundrobin")
+                + " rounds=" + rounds + " games=" + gamesPerMatch + " seed=" + seed;
+    }
+
+    /**
+     * Plays every match not finished yet.
+     * @param  results file the results are streamed to and resumed from (null to keep them in memory only)
+     * @return         number of matches played
+     * @throws IOException          if the results file cannot be read or written
+     * @throws InterruptedException if interrupted while waiting for a match
+     * @throws ExecutionException   if a match fails
+     */
+    public int run(Path results) throws IOException, InterruptedException, ExecutionException {
+        if (results != null)
+            resume(results);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        int played = 0;
+        try (BufferedWriter out = (results != null) ? Files.newBufferedWriter(results, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND) : null) {
+            if (out != null && finished.isEmpty() && Files.size(results) == 0) {
+                out.write(header());
+                out.newLine();
+                out.flush();
+            }
+
+            if (swiss) {
+                for (int round = 0; round < rounds; round++)
+                    played += playMatches(pool, swissPairings(round), out);
+            }
+            else {
+                List<Match> matches = new ArrayList<>();
+                for (int round = 0; round < rounds; round++) {
+                    for (int first = 0; first < names.length; first++) {
+                        for (int second = first + 1; second < names.length; second++)
+                            matches.add(new Match(round, first, second));
+                    }
+                }
+                played += playMatches(pool, matches, out);
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        return played;
+    }
+
+    /**
+     * Plays the matches of a list that are not finished yet, writing each result as soon
+     * as it is in.
+     * @return number of matches played
+     */
+    private int playMatches(ExecutorService pool, List<Match> matches, BufferedWriter out)
+            throws IOException, InterruptedException, ExecutionException {
+        CompletionService<Match> done = new ExecutorCompletionService<>(pool);
+        int submitted = 0;
+        for (Match match: matches) {
+            if (!finished.containsKey(match.key())) {
+                done.submit(() -> play(match));
+                submitted++;
+            }
+        }
+
+        for (int i = 0; i < submitted; i++) {
+            Match match = done.take().get();
+            if (out != null) {
+                out.write(match.toLine());
+                out.newLine();
+                out.flush();
+            }
+            add(match);
+        }
+        return submitted;
+    }
+
+    /**
+     * Plays one match with engines of its own.
+     * @param  match the pairing (its results are filled in)
+     * @return       the match
+     */
+    private Match play(Match match) {
+        SplittableRandom random = new SplittableRandom(seed ^ ((long) match.round << 40)
+                ^ ((long) match.first << 20) ^ match.second);
+        MoveEngine x = strategies.get(match.first).apply(random.nextLong());
+        MoveEngine o = strategies.get(match.second).apply(random.nextLong());
+        for (MoveEngine engine: new MoveEngine[] {x, o}) {
+            if (engine instanceof MctsEngine)
+                ((MctsEngine) engine).setPlayoutLimit(MCTS_PLAYOUTS);
+        }
+        TicTacTix board = new TicTacTix();
+        board.setRandom(random.split());
+        SimulationStats stats = new SimulationStats();
+
+        for (int game = 0; game < gamesPerMatch; game++) {
+            char starter = (game % 2 == 0) ? TicTacTix.PLAYER : TicTacTix.COMPUTER;
+            char result = SelfPlaySimulator.playGame(board, x, o, starter, stats);
+            if (result == TicTacTix.PLAYER)
+                match.firstWins++;
+            else if (result == TicTacTix.COMPUTER)
+                match.secondWins++;
+            else
+                match.draws++;
+        }
+        return match;
+    }
+
+    /**
+     * Counts a finished match.
+     */
+    private void add(Match match) {
+        finished.put(match.key(), match);
+        wins[match.first][match.second] += match.firstWins;
+        wins[match.second][match.first] += match.secondWins;
+        draws[match.first][match.second] += match.draws;
+        draws[match.second][match.first] += match.draws;
+    }
+
+    /**
+     * Pairs a Swiss round: strategies are ranked by points so far (ties in an order drawn
+     * from the seed) and each one, from the top, meets the best ranked strategy below it
+     * that it has not met yet (or the next one if it has met them all). Points, opponents
+     * met and byes only come from the rounds before this one.
+     * @param  round number of the round (the earlier rounds must be finished)
+     * @return       the round's matches
+     */
+    private List<Match> swissPairings(int round) {
+        Integer[] order = new Integer[names.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        SplittableRandom random = new SplittableRandom(seed ^ ((long) round << 40) ^ 0x5155);
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Integer swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        // Only the earlier rounds count: a resumed tournament may already hold results of
+        // this round and later ones, and must pair the round exactly as it first did
+        long[] points = new long[names.length]; // half points
+        boolean[][] met = new boolean[names.length][names.length];
+        for (Match match: finished.values()) {
+            if (match.round >= round)
+                continue;
+            points[match.first] += 2 * match.firstWins + match.draws;
+            points[match.second] += 2 * match.secondWins + match.draws;
+            met[match.first][match.second] = true;
+            met[match.second][match.first] = true;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(points[b], points[a])); // stable, so ties keep the drawn order
+
+        Set<Integer> paired = new HashSet<>();
+        // The lowest ranked strategy that has not sat out yet sits out when the number is odd
+        if (names.length % 2 != 0) {
+            for (int i = order.length - 1; i >= 0; i--) {
+                if (!hadBye(order[i], round)) {
+                    paired.add(order[i]);
+                    break;
+                }
+            }
+            if (paired.isEmpty())
+                paired.add(order[order.length - 1]);
+        }
+
+        List<Match> matches = new ArrayList<>();
+        for (int i = 0; i < order.length; i++) {
+            int first = order[i];
+            if (paired.contains(first))
+                continue;
+            int opponent = -1;
+            for (int j = i + 1; j < order.length; j++) {
+                if (paired.contains(order[j]))
+                    continue;
+                if (opponent < 0)
+                    opponent = order[j];
+                if (!met[first][order[j]]) {
+                    opponent = order[j];
+                    break;
+                }
+            }
+            if (opponent < 0)
+                break;
+            paired.add(first);
+            paired.add(opponent);
+            matches.add(new Match(round, Math.min(first, opponent), Math.max(first, opponent)));
+        }
+        return matches;
+    }
+
+    /**
+     * @return did the strategy sit out one of the rounds before this one?
+     */
+    private boolean hadBye(int strategy, int round) {
+        for (int earlier = 0; earlier < round; earlier++) {
+            boolean played = false;
+            for (Match match: finished.values()) {
+                if (match.round == earlier && (match.first == strategy || match.second == strategy)) {
+                    played = true;
+                    break;
+                }
+            }
+            if (!played)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the matches already in a results file. A line cut short by an interrupted run
+     * is removed, so new results are appended after the last complete one.
+     * @param  results the results file (nothing happens if it does not exist)
+     * @throws IOException if the file cannot be read or truncated
+     * @throws IllegalArgumentException if the file belongs to another tournament
+     */
+    private void resume(Path results) throws IOException {
+        if (!Files.exists(results) || Files.size(results) == 0)
+            return;
+
+        String text = new String(Files.readAllBytes(results), StandardCharsets.UTF_8);
+        int complete = text.lastIndexOf('\n') + 1;
+        String[] lines = text.substring(0, complete).split("\n");
+        if (complete == 0 || !lines[0].equals(header()))
+            throw new IllegalArgumentException(results + " holds the results of another tournament");
+
+        for (int i = 1; i < lines.length; i++) {
+            String[] fields = lines[i].trim().split(" ");
+            if (fields.length != 6)
+                throw new IllegalArgumentException("Bad line " + (i + 1) + " in " + results);
+            Match match = new Match(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+            match.firstWins = Long.parseLong(fields[3]);
+            match.secondWins = Long.parseLong(fields[4]);
+            match.draws = Long.parseLong(fields[5]);
+            add(match);
+        }
+
+        if (complete < text.length()) {
+            try (FileChannel channel = FileChannel.open(results, StandardOpenOption.WRITE)) {
+                channel.truncate(text.substring(0, complete).getBytes(StandardCharsets.UTF_8).length);
+            }
+        }
+    }
+
+    /**
+     * Computes the maximum likelihood Elo ratings of the games played so far.
+     * @return for every strategy {rating, half width of its 95% confidence interval}
+     *         (NaN for a strategy without games, or an interval that cannot be known
+     *         because some strategies were never compared, even indirectly)
+     */
+    public double[][] getRatings() {
+        int count = names.length;
+        // Games and points (in half points) per pairing, one virtual draw added to every pairing that played
+        double[][] games = new double[count][count];
+        double[] score = new double[count];
+        boolean[] rated = new boolean[count];
+        for (int a = 0; a < count; a++) {
+            for (int b = 0; b < count; b++) {
+                long played = wins[a][b] + wins[b][a] + draws[a][b];
+                if (a == b || played == 0)
+                    continue;
+                games[a][b] = played + 1;
+                score[a] += wins[a][b] + (draws[a][b] + 1) / 2.0;
+                rated[a] = true;
+            }
+        }
+
+        // Minorization-maximization for the Bradley-Terry strengths (Hunter, 2004)
+        double[] strength = new double[count];
+        Arrays.fill(strength, 1);
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            double change = 0;
+            double logSum = 0;
+            for (int a = 0; a < count; a++) {
+                if (!rated[a])
+                    continue;
+                double sum = 0;
+                for (int b = 0; b < count; b++) {
+                    if (games[a][b] > 0)
+                        sum += games[a][b] / (strength[a] + strength[b]);
+                }
+                double updated = score[a] / sum;
+                change = Math.max(change, Math.abs(Math.log(updated / strength[a])));
+                strength[a] = updated;
+                logSum += Math.log(updated);
+            }
+            // Keep the geometric mean at 1 (ratings average AVERAGE_ELO)
+            double mean = Math.exp(logSum / Math.max(1, countRated(rated)));
+            for (int a = 0; a < count; a++)
+                strength[a] /= mean;
+            if (change < 1e-12)
+                break;
+        }
+
+        double[][] ratings = new double[count][2];
+        double[] deviation = deviations(games, strength, rated);
+        for (int a = 0; a < count; a++) {
+            ratings[a][0] = rated[a] ? AVERAGE_ELO + ELO_PER_NATURAL_LOG * Math.log(strength[a]) : Double.NaN;
+            ratings[a][1] = rated[a] ? 1.96 * ELO_PER_NATURAL_LOG * deviation[a] : Double.NaN;
+        }
+        return ratings;
+    }
+
+    private static int countRated(boolean[] rated) {
+        int count = 0;
+        for (boolean r: rated)
+            count += r ? 1 : 0;
+        return count;
+    }
+
+    /**
+     * Standard deviations of the log strengths, from the inverse of the Fisher information
+     * (a weighted graph Laplacian, inverted on the ratings that average to a fixed value).
+     */
+    private static double[] deviations(double[][] games, double[] strength, boolean[] rated) {
+        int[] index = new int[countRated(rated)];
+        int n = 0;
+        for (int a = 0; a < rated.length; a++) {
+            if (rated[a])
+                index[n++] = a;
+        }
+
+        // Laplacian plus 1/n everywhere: its inverse minus 1/n is the pseudo-inverse of the Laplacian
+        double[][] matrix = new double[n][2 * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                int a = index[i];
+                int b = index[j];
+                if (i != j && games[a][b] > 0) {
+                    double p = strength[a] / (strength[a] + strength[b]);
+                    double information = games[a][b] * p * (1 - p);
+                    matrix[i][j] -= information;
+                    matrix[i][i] += information;
+                }
+                matrix[i][j] += 1.0 / n;
+            }
+            matrix[i][n + i] = 1;
+        }
+
+        double[] deviation = new double[rated.length];
+        Arrays.fill(deviation, Double.NaN);
+        // Gauss-Jordan elimination with partial pivoting
+        for (int column = 0; column < n; column++) {
+            int pivot = column;
+            for (int row = column + 1; row < n; row++) {
+                if (Math.abs(matrix[row][column]) > Math.abs(matrix[pivot][column]))
+                    pivot = row;
+            }
+            if (Math.abs(matrix[pivot][column]) < 1e-9)
+                return deviation; // strategies in separate groups cannot be compared
+            double[] swap = matrix[column];
+            matrix[column] = matrix[pivot];
+            matrix[pivot] = swap;
+
+            double divisor = matrix[column][column];
+            for (int k = 0; k < 2 * n; k++)
+                matrix[column][k] /= divisor;
+            for (int row = 0; row < n; row++) {
+                double factor = matrix[row][column];
+                if (row != column && factor != 0) {
+                    for (int k = 0; k < 2 * n; k++)
+                        matrix[row][k] -= factor * matrix[column][k];
+                }
+            }
+        }
+        for (int i = 0; i < n; i++)
+            deviation[index[i]] = Math.sqrt(Math.max(0, matrix[i][n + i] - 1.0 / n));
+        return deviation;
+    }
+
+    /**
+     * @return the standings table: strategies by rating, with their games and scores
+     */
+    public String getStandings() {
+        double[][] ratings = getRatings();
+        Integer[] order = new Integer[names.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(
+                Double.isNaN(ratings[b][0]) ? Double.NEGATIVE_INFINITY : ratings[b][0],
+                Double.isNaN(ratings[a][0]) ? Double.NEGATIVE_INFINITY : ratings[a][0]));
+
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%4s  %-12s %6s %8s %8s %7s %8s %8s %8s%n",
+                "rank", "strategy", "elo", "95% ci", "games", "score", "wins", "draws", "losses"));
+        for (int rank = 0; rank < order.length; rank++) {
+            int a = order[rank];
+            long won = 0;
+            long drawn = 0;
+            long lost = 0;
+            for (int b = 0; b < names.length; b++) {
+                won += wins[a][b];
+                drawn += draws[a][b];
+                lost += wins[b][a];
+            }
+            long games = won + drawn + lost;
+            table.append(String.format("%4d  %-12s %6.0f %8s %8d %6.1f%% %8d %8d %8d%n", rank + 1, names[a],
+                    ratings[a][0], Double.isNaN(ratings[a][1]) ? "?" : String.format("+-%.0f", ratings[a][1]),
+                    games, (games == 0) ? 0.0 : 100.0 * (won + drawn / 2.0) / games, won, drawn, lost));
+        }
+        return table.toString();
+    }
+}
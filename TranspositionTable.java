@@ -0,0 +1,125 @@
+import java.util.Arrays;
+
+/**
+ * A fixed size hash table of search results, keyed by packed position keys.
+ * The table never grows: when two positions land in the same slot the newer one
+ * simply replaces the older one.
+ *
+ * Each slot is two longs, the entry data and (key XOR data). A reader only accepts an
+ * entry when the XOR checks out, so a slot torn by two threads writing at once is
+ * seen as a miss instead of a wrong answer. This lets several searches share one table
+ * without any locking.
+ *
+ * @see AlphaBetaEngine
+ *
+ */
+public class TranspositionTable {
+    // Bound types of a stored score
+    public static final int NONE = 0;
+    public static final int EXACT = 1;
+    public static final int LOWER = 2; // the real score is at least the stored one
+    public static final int UPPER = 3; // the real score is at most the stored one
+
+    // Value returned by probe() when the position is not in the table
+    public static final long MISS = 0;
+
+    // Move stored when a result has no best move
+    public static final int NO_MOVE = 0xFF;
+
+    private final long[] checks;
+    private final long[] entries;
+    private final int shift;
+
+    /**
+     * Creates a table with 2^sizeBits slots (16 bytes per slot).
+     * @param sizeBits log2 of the number of slots
+     */
+    public TranspositionTable(int sizeBits) {
+        if (sizeBits < 1 || sizeBits > 30)
+            throw new IllegalArgumentException("Table size must be between 2^1 and 2^30 slots");
+
+        checks = new long[1 << sizeBits];
+        entries = new long[1 << sizeBits];
+        shift = 64 - sizeBits;
+    }
+
+    /**
+     * Spreads a position key over the slots of the table (Fibonacci hashing).
+     * @param  key packed position key
+     * @return     slot index
+     */
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /**
+     * Looks up a position.
+     * @param  key packed position key
+     * @return     the stored entry (to be unpacked with score()/move()/depth()/bound()) or MISS
+     */
+    public long probe(long key) {
+        int index = slot(key);
+        long entry = entries[index];
+
+        if ((checks[index] ^ entry) != key || bound(entry) == NONE)
+            return MISS;
+        return entry;
+    }
+
+    /**
+     * Stores the result of searching a position, replacing whatever was in its slot.
+     * @param key   packed position key
+     * @param score score of the position from the side to move's point of view
+     * @param move  best move found (cell index) or NO_MOVE
+     * @param depth number of plies the score was searched to
+     * @param bound EXACT, LOWER or UPPER
+     */
+    public void store(long key, int score, int move, int depth, int bound) {
+        int index = slot(key);
+        // Layout: [score (32 bits)][unused (8 bits)][move (8 bits)][depth (8 bits)][bound (8 bits)]
+        long entry = ((long) score << 32) | ((move & 0xFFL) << 16) | ((depth & 0xFFL) << 8) | (bound & 0xFFL);
+
+        entries[index] = entry;
+        checks[index] = key ^ entry;
+    }
+
+    /**
+     * Removes every entry from the table.
+     */
+    public void clear() {
+        Arrays.fill(entries, MISS);
+        Arrays.fill(checks, MISS);
+    }
+
+    /**
+     * @param  entry an entry returned by probe()
+     * @return       the stored score
+     */
+    public static int score(long entry) {
+        return (int) (entry >> 32);
+    }
+
+    /**
+     * @param  entry an entry returned by probe()
+     * @return       the stored best move (or NO_MOVE)
+     */
+    public static int move(long entry) {
+        return (int) ((entry >>> 16) & 0xFF);
+    }
+
+    /**
+     * @param  entry an entry returned by probe()
+     * @return       the depth the stored score was searched to
+     */
+    public static int depth(long entry) {
+        return (int) ((entry >>> 8) & 0xFF);
+    }
+
+    /**
+     * @param  entry an entry returned by probe()
+     * @return       the bound type of the stored score (EXACT / LOWER / UPPER)
+     */
+    public static int bound(long entry) {
+        return (int) (entry & 0xFF);
+    }
+}
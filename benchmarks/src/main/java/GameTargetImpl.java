@@ -0,0 +1,98 @@
+import java.util.SplittableRandom;
+
+import tictactix.bench.GameTarget;
+
+/**
+ * Implements the benchmark operations on top of TicTacTix (see GameTarget for why
+ * this class sits in the default package).
+ *
+ * @see TicTacTix
+ *
+ */
+public class GameTargetImpl implements GameTarget {
+    // How many random fills to try before giving up on finding a position without a winner
+    private static final int MAX_ATTEMPTS = 10000000;
+
+    private final TicTacTix board = new TicTacTix();
+    private final TicTacTix gameBoard = new TicTacTix();
+    private int[] moves = new int[0];
+    private MoveEngine playerEngine;
+    private MoveEngine computerEngine;
+    private final SimulationStats stats = new SimulationStats();
+    private final BoardRenderer renderer = new BoardRenderer();
+    private final StringBuilder picture = new StringBuilder(BoardRenderer.length());
+
+    public void prepare(int filledCells, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        playerEngine = new RandomEngine(random.split());
+        computerEngine = new RandomEngine(random.split());
+        board.setRandom(random.split());
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            board.reset();
+            moves = new int[filledCells];
+            char turn = TicTacTix.PLAYER;
+
+            for (int i = 0; i < filledCells && board.findGameState() == TicTacTix.PLAYABLE; i++) {
+                moves[i] = playerEngine.chooseMove(board, turn);
+                board.makeMove(turn, moves[i]);
+                turn = other(turn);
+            }
+            if (board.findGameState() == TicTacTix.PLAYABLE && Integer.bitCount(board.getEmptyCells()) == TicTacTix.PLAYABLE_CELLS - filledCells)
+                return;
+        }
+        throw new IllegalStateException("Could not find a position with " + filledCells + " moves and no winner");
+    }
+
+    public char findGameState() {
+        return board.findGameState();
+    }
+
+    public String render() {
+        return board.toString();
+    }
+
+    public int renderInto() {
+        picture.setLength(0);
+        renderer.render(board, picture);
+        return picture.length();
+    }
+
+    public int computerMove() {
+        restorePosition();
+        board.makeMove(TicTacTix.COMPUTER);
+        return board.getCells(TicTacTix.COMPUTER);
+    }
+
+    public int restorePosition() {
+        board.reset();
+        char turn = TicTacTix.PLAYER;
+        for (int move: moves) {
+            board.makeMove(turn, move);
+            turn = other(turn);
+        }
+        return board.getCells(TicTacTix.COMPUTER);
+    }
+
+    public long playUndo() {
+        long hashes = 0;
+        for (int empty = board.getEmptyCells(); empty != 0; empty &= empty - 1) {
+            board.play(Integer.numberOfTrailingZeros(empty));
+            hashes ^= board.getHash();
+            board.undo();
+        }
+        return hashes;
+    }
+
+    public char playRandomGame() {
+        return SelfPlaySimulator.playGame(gameBoard, playerEngine, computerEngine, TicTacTix.PLAYER, stats);
+    }
+
+    /**
+     * @param  player character code of a player
+     * @return        character code of the other player
+     */
+    private static char other(char player) {
+        return (player == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+    }
+}
@@ -0,0 +1,77 @@
+package tictactix.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput benchmarks of the game core: game state detection and rendering on empty,
+ * mid-game and near-full boards, the computer's move, and complete random games.
+ * Run them through BenchmarkRunner to also get allocation rates from the GC profiler.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+    // Moves already played: empty, mid-game and near-full boards
+    @Param({"0", "12", "22"})
+    public int filledCells;
+
+    private GameTarget target;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        // GameTargetImpl is in the default package, so it can only be reached by name
+        target = (GameTarget) Class.forName("GameTargetImpl").getDeclaredConstructor().newInstance();
+        target.prepare(filledCells, 42);
+    }
+
+    @Benchmark
+    public char findGameState() {
+        return target.findGameState();
+    }
+
+    @Benchmark
+    public String render() {
+        return target.render();
+    }
+
+    @Benchmark
+    public int renderInto() {
+        return target.renderInto();
+    }
+
+    @Benchmark
+    public int computerMove() {
+        return target.computerMove();
+    }
+
+    @Benchmark
+    public int restorePositionBaseline() {
+        return target.restorePosition();
+    }
+
+    @Benchmark
+    public long playUndo() {
+        return target.playUndo();
+    }
+
+    @Benchmark
+    public char randomGame() {
+        return target.playRandomGame();
+    }
+}
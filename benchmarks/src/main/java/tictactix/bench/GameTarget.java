@@ -0,0 +1,62 @@
+package tictactix.bench;
+
+/**
+ * The game operations measured by the benchmarks.
+ *
+ * The game classes live in the default package, which code in a named package cannot
+ * import, while JMH refuses benchmarks in the default package. This interface bridges
+ * the two: GameTargetImpl (default package) implements it on top of TicTacTix, and the
+ * benchmarks load that class once by name. Calls go through a single implementation,
+ * so the JIT inlines them like direct calls.
+ *
+ */
+public interface GameTarget {
+    /**
+     * Sets up a board with a number of random moves already played and nobody having won.
+     * @param filledCells number of moves to play (0 for an empty board)
+     * @param seed        seed of the random moves
+     */
+    void prepare(int filledCells, long seed);
+
+    /**
+     * @return TicTacTix.findGameState() of the prepared board
+     */
+    char findGameState();
+
+    /**
+     * @return TicTacTix.toString() of the prepared board
+     */
+    String render();
+
+    /**
+     * Draws the prepared board with a BoardRenderer into a reused buffer.
+     * @return number of characters in the buffer afterwards
+     */
+    int renderInto();
+
+    /**
+     * Restores the prepared position (reset and replay), then lets the computer move
+     * with makeMove(COMPUTER).
+     * @return the computer's cells afterwards
+     */
+    int computerMove();
+
+    /**
+     * Only restores the prepared position, as a baseline for computerMove().
+     * @return the computer's cells afterwards
+     */
+    int restorePosition();
+
+    /**
+     * Plays every free cell of the prepared board in turn with TicTacTix.play() and takes
+     * each move back with undo(), as a search exploring the position would.
+     * @return XOR of the hashes of the positions visited
+     */
+    long playUndo();
+
+    /**
+     * Plays one complete game between two random players.
+     * @return final state of the game
+     */
+    char playRandomGame();
+}
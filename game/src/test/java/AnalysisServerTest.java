@@ -0,0 +1,120 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Sends every symmetric copy of a set of positions to a running AnalysisServer: the copies
+ * share one cached result, and the move answered for each copy is legal on that copy and
+ * maps back to the same move on the original board.
+ */
+class AnalysisServerTest {
+    private static final Pattern MOVE = Pattern.compile(
+            "\"move\":\\{\"layer\":(\\d),\"row\":(\\d),\"column\":(\\d)\\},\"value\":\"(\\w+)\",\"cached\":(true|false)");
+
+    private static AnalysisServer server;
+    private static final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @BeforeAll
+    static void start() throws IOException {
+        server = new AnalysisServer(0, 2, 1024, PositionAnalyzer.DEFAULT_NODE_BUDGET);
+    }
+
+    @AfterAll
+    static void stop() {
+        server.stop();
+    }
+
+    private static HttpResponse<String> post(String body) throws IOException, InterruptedException {
+        URI uri = URI.create("http://127.0.0.1:" + server.getPort() + "/analyze");
+        HttpRequest request = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String board(int xCells, int oCells) {
+        StringBuilder board = new StringBuilder(TicTacTix.CELLS);
+        for (int cell = 0; cell < TicTacTix.CELLS; cell++) {
+            int bit = 1 << cell;
+            if ((xCells & bit) != 0)
+                board.append(TicTacTix.PLAYER);
+            else if ((oCells & bit) != 0)
+                board.append(TicTacTix.COMPUTER);
+            else
+                board.append((TicTacTix.RESERVED_CELLS & bit) != 0 ? TicTacTix.RESERVED : '.');
+        }
+        return board.toString();
+    }
+
+    @Test
+    void answersEverySymmetricCopyAlike() throws IOException, InterruptedException {
+        SplittableRandom random = new SplittableRandom(12);
+        TicTacTix board = new TicTacTix();
+        for (int position = 0; position < 10; position++) {
+            do {
+                board.reset();
+                int markers = random.nextInt(11);
+                while (board.getMoveCount() < markers && board.findGameState() == TicTacTix.PLAYABLE)
+                    board.play(board.randomEmptyCell(random));
+            } while (board.findGameState() != TicTacTix.PLAYABLE);
+            int xCells = board.getCells(TicTacTix.PLAYER);
+            int oCells = board.getCells(TicTacTix.COMPUTER);
+
+            // The symmetries that leave the position as it is: on such a board the copies
+            // are the same board, so the answer may map back to any of its images
+            Set<Integer> stabilizer = new HashSet<>();
+            for (int symmetry = 0; symmetry < Symmetry.COUNT; symmetry++) {
+                if (Symmetry.transform(xCells, symmetry) == xCells && Symmetry.transform(oCells, symmetry) == oCells)
+                    stabilizer.add(symmetry);
+            }
+
+            int original = -1;
+            String value = null;
+            for (int symmetry = 0; symmetry < Symmetry.COUNT; symmetry++) {
+                int x = Symmetry.transform(xCells, symmetry);
+                int o = Symmetry.transform(oCells, symmetry);
+                HttpResponse<String> response = post("{\"board\":\"" + board(x, o) + "\"}");
+                assertEquals(200, response.statusCode(), response.body());
+                Matcher answer = MOVE.matcher(response.body());
+                assertTrue(answer.find(), response.body());
+
+                int move = TicTacTix.cellIndex(Integer.parseInt(answer.group(1)) - 1,
+                        Integer.parseInt(answer.group(2)) - 1, Integer.parseInt(answer.group(3)) - 1);
+                assertEquals(0, (x | o | TicTacTix.RESERVED_CELLS) & (1 << move), "the move must be an empty cell");
+                int back = Symmetry.transformCell(move, Symmetry.inverse(symmetry));
+                if (symmetry == 0) {
+                    original = back;
+                    value = answer.group(4);
+                    continue;
+                }
+                assertEquals(value, answer.group(4));
+                assertEquals("true", answer.group(5), "every copy after the first is a cache hit");
+                boolean same = false;
+                for (int fixed: stabilizer)
+                    same |= Symmetry.transformCell(original, fixed) == back;
+                assertTrue(same, "copy " + symmetry + " answered " + back + " instead of " + original);
+            }
+        }
+    }
+
+    @Test
+    void rejectsBoardsThatAreNotValid() throws IOException, InterruptedException {
+        assertEquals(400, post("{\"board\":\"XXX\"}").statusCode());
+        assertEquals(400, post("{\"board\":\"" + board(0, 0).replace('N', '.') + "\"}").statusCode());
+        assertEquals(400, post("{\"board\":\"" + board(0, 0) + "\",\"side\":\"Z\"}").statusCode());
+        assertNotEquals(400, post("{\"board\":\"" + board(0, 0) + "\",\"side\":\"O\"}").statusCode());
+    }
+}
@@ -0,0 +1,128 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the incremental state of the board (bitmasks, line counters, threats and the
+ * Zobrist hash) against values recomputed from scratch, through random games played
+ * forwards and backwards.
+ */
+class BitboardTest {
+    private static final int GAMES = 2000;
+
+    // The state of a board worked out from its two bitmasks only
+    private static char stateFromScratch(TicTacTix board) {
+        int x = board.getCells(TicTacTix.PLAYER);
+        int o = board.getCells(TicTacTix.COMPUTER);
+        boolean xWins = false;
+        boolean oWins = false;
+        for (int line: TicTacTix.WIN_LINES) {
+            xWins |= (x & line) == line;
+            oWins |= (o & line) == line;
+        }
+        if (Integer.bitCount(x | o) == TicTacTix.PLAYABLE_CELLS)
+            return TicTacTix.STALEMATE;
+        if (xWins)
+            return TicTacTix.PLAYER;
+        if (oWins)
+            return TicTacTix.COMPUTER;
+        return TicTacTix.PLAYABLE;
+    }
+
+    private static long hashFromScratch(TicTacTix board) {
+        long hash = 0;
+        for (int cell = 0; cell < TicTacTix.CELLS; cell++) {
+            if ((board.getCells(TicTacTix.PLAYER) & (1 << cell)) != 0)
+                hash ^= TicTacTix.ZOBRIST_KEYS[0][cell];
+            if ((board.getCells(TicTacTix.COMPUTER) & (1 << cell)) != 0)
+                hash ^= TicTacTix.ZOBRIST_KEYS[1][cell];
+        }
+        return hash;
+    }
+
+    private static void assertConsistent(TicTacTix board) {
+        int x = board.getCells(TicTacTix.PLAYER);
+        int o = board.getCells(TicTacTix.COMPUTER);
+        assertEquals(0, x & o);
+        assertEquals(0, (x | o) & TicTacTix.RESERVED_CELLS);
+        assertEquals(TicTacTix.ALL_CELLS & ~(x | o | TicTacTix.RESERVED_CELLS), board.getEmptyCells());
+        assertEquals(Integer.bitCount(x | o), board.getMoveCount());
+        assertEquals(stateFromScratch(board), board.findGameState());
+        assertEquals(TicTacTix.findThreats(x, o), board.getThreats(TicTacTix.PLAYER));
+        assertEquals(TicTacTix.findThreats(o, x), board.getThreats(TicTacTix.COMPUTER));
+        assertEquals(hashFromScratch(board), board.getHash());
+    }
+
+    @Test
+    void incrementalStateMatchesARecount() {
+        SplittableRandom random = new SplittableRandom(1);
+        TicTacTix board = new TicTacTix();
+        for (int game = 0; game < GAMES; game++) {
+            board.reset();
+            assertConsistent(board);
+            while (board.findGameState() == TicTacTix.PLAYABLE) {
+                board.play(board.randomEmptyCell(random));
+                assertConsistent(board);
+            }
+        }
+    }
+
+    @Test
+    void undoRestoresEveryEarlierPosition() {
+        SplittableRandom random = new SplittableRandom(2);
+        TicTacTix board = new TicTacTix();
+        int[][] cells = new int[TicTacTix.PLAYABLE_CELLS + 1][2];
+        long[] hashes = new long[TicTacTix.PLAYABLE_CELLS + 1];
+
+        for (int game = 0; game < GAMES; game++) {
+            board.reset();
+            int moves = 0;
+            cells[0] = new int[] {0, 0};
+            hashes[0] = board.getHash();
+            while (board.findGameState() == TicTacTix.PLAYABLE) {
+                int cell = board.randomEmptyCell(random);
+                char side = board.getSideToMove();
+                board.play(cell);
+                assertEquals(cell, board.getMove(moves));
+                assertEquals((side == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER, board.getSideToMove());
+                moves++;
+                cells[moves] = new int[] {board.getCells(TicTacTix.PLAYER), board.getCells(TicTacTix.COMPUTER)};
+                hashes[moves] = board.getHash();
+            }
+
+            while (moves > 0) {
+                assertEquals(board.getMove(moves - 1), board.undo());
+                moves--;
+                assertArrayEquals(cells[moves], new int[] {board.getCells(TicTacTix.PLAYER), board.getCells(TicTacTix.COMPUTER)});
+                assertEquals(hashes[moves], board.getHash());
+                assertConsistent(board);
+            }
+            assertThrows(IllegalStateException.class, board::undo);
+        }
+    }
+
+    @Test
+    void hashDoesNotDependOnMoveOrder() {
+        TicTacTix first = new TicTacTix();
+        TicTacTix second = new TicTacTix();
+        for (int cell: new int[] {0, 1, 2, 5})
+            first.play(cell);
+        for (int cell: new int[] {2, 5, 0, 1})
+            second.play(cell);
+        assertEquals(first.getCells(TicTacTix.PLAYER), second.getCells(TicTacTix.PLAYER));
+        assertEquals(first.getHash(), second.getHash());
+    }
+
+    @Test
+    void rejectsTakenAndReservedCells() {
+        TicTacTix board = new TicTacTix();
+        board.play(0);
+        assertThrows(IllegalArgumentException.class, () -> board.play(0));
+        assertThrows(IllegalArgumentException.class, () -> board.play(13));
+        assertThrows(IllegalArgumentException.class, () -> board.play(TicTacTix.CELLS));
+    }
+}
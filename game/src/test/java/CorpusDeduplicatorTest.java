@@ -0,0 +1,101 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Deduplicates small hand-made corpora: symmetric copies must collapse into one canonical
+ * game or position and damaged entries must be dropped without stopping the run.
+ */
+class CorpusDeduplicatorTest {
+    @TempDir
+    Path directory;
+
+    private static final int[] GAME = {0, 1, 4, 2, 8};
+
+    // A record in the archive format, written by hand so that any cell number fits in
+    private static void putRecord(ByteBuffer out, int... moves) {
+        out.put(GameRecord.header(TicTacTix.PLAYER, moves.length, TicTacTix.PLAYABLE));
+        long bits = 0;
+        int bitCount = 0;
+        for (int move: moves) {
+            bits |= (long) (move & 0x1F) << bitCount;
+            bitCount += GameRecord.BITS_PER_MOVE;
+            for (; bitCount >= 8; bitCount -= 8, bits >>>= 8)
+                out.put((byte) bits);
+        }
+        if (bitCount > 0)
+            out.put((byte) bits);
+    }
+
+    private static int[] transform(int[] moves, int symmetry) {
+        int[] copy = new int[moves.length];
+        for (int i = 0; i < moves.length; i++)
+            copy[i] = Symmetry.transformCell(moves[i], symmetry);
+        return copy;
+    }
+
+    @Test
+    void dropsDamagedGamesAndSymmetricCopies() throws IOException {
+        Path archive = directory.resolve("archive");
+        Files.createDirectories(archive);
+        ByteBuffer segment = ByteBuffer.allocate(1024);
+        GameRecord.writeSegmentHeader(segment);
+        putRecord(segment, GAME);
+        putRecord(segment, 0, 31, 2);                 // cell number past the cube
+        putRecord(segment, transform(GAME, 7));
+        putRecord(segment, 0, 13);                    // the reserved center
+        putRecord(segment, 5, 6, 5);                  // a cell played twice
+        putRecord(segment, transform(GAME, 30));
+        Files.write(archive.resolve("damaged-000000" + GameRecordWriter.EXTENSION),
+                Arrays.copyOf(segment.array(), segment.position()));
+
+        CorpusDeduplicator deduplicator = new CorpusDeduplicator();
+        Path output = directory.resolve("output");
+        deduplicator.deduplicateGames(archive, output);
+        assertEquals(6, deduplicator.getReadCount());
+        assertEquals(1, deduplicator.getKeptCount());
+        assertEquals(3, deduplicator.getInvalidCount());
+
+        List<int[]> kept = new ArrayList<>();
+        GameRecordReader.open(output).replay((first, result, moves, moveCount) -> kept.add(Arrays.copyOf(moves, moveCount)));
+        assertEquals(1, kept.size());
+        assertArrayEquals(transform(GAME, Symmetry.canonicalGameSymmetry(GAME, GAME.length)), kept.get(0));
+    }
+
+    // A board in the PositionAnalyzer format with an X and an O, turned by a symmetry
+    private static String line(int xCell, int oCell, int symmetry) {
+        char[] cells = "...........................".toCharArray();
+        cells[13] = TicTacTix.RESERVED;
+        cells[Symmetry.transformCell(xCell, symmetry)] = TicTacTix.PLAYER;
+        cells[Symmetry.transformCell(oCell, symmetry)] = TicTacTix.COMPUTER;
+        return new String(cells) + "\n";
+    }
+
+    @Test
+    void keepsOnePositionPerSymmetryClass() throws IOException {
+        String board = line(0, 1, 0);
+        // The same position under a symmetry, then a copy naming the side to move, which is kept apart
+        String input = board + "not a board\n" + line(0, 1, 11) + board.trim() + " O\n" + line(0, 1, 40);
+
+        CorpusDeduplicator deduplicator = new CorpusDeduplicator();
+        StringWriter output = new StringWriter();
+        deduplicator.deduplicatePositions(new BufferedReader(new StringReader(input)), output);
+        assertEquals(5, deduplicator.getReadCount());
+        assertEquals(2, deduplicator.getKeptCount());
+        assertEquals(1, deduplicator.getInvalidCount());
+        assertEquals(2, output.toString().split("\n").length);
+    }
+}
@@ -0,0 +1,168 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the generated lines against the counts in the CubeGeometry comment, CubeBoard(3)
+ * against TicTacTix, and win and threat detection on the 4 x 4 x 4 and 5 x 5 x 5 boards
+ * against a recount over the lines.
+ */
+class CubeBoardTest {
+    @Test
+    void generatesEveryLineOnce() {
+        assertEquals(49, CubeGeometry.of(3).getLineCount());
+        assertEquals(76, CubeGeometry.of(4).getLineCount());
+        assertEquals(109, CubeGeometry.of(5).getLineCount());
+
+        // 13 lines pass through the center of an odd cube; an even one has no center
+        assertEquals(36, CubeGeometry.withCenterReserved(3).getLineCount());
+        assertEquals(36, TicTacTix.WIN_LINES.length);
+        assertEquals(76, CubeGeometry.withCenterReserved(4).getLineCount());
+        assertEquals(96, CubeGeometry.withCenterReserved(5).getLineCount());
+        assertSame(CubeGeometry.of(4), CubeGeometry.withCenterReserved(4));
+
+        for (int size = CubeGeometry.MIN_SIZE; size <= 5; size++) {
+            CubeGeometry geometry = CubeGeometry.of(size);
+            Set<String> seen = new HashSet<>();
+            for (int line = 0; line < geometry.getLineCount(); line++) {
+                StringBuilder cells = new StringBuilder();
+                for (int step = 0; step < size; step++)
+                    cells.append(geometry.getLineCell(line, step)).append(' ');
+                assertTrue(seen.add(cells.toString()), "line " + cells + "appears twice");
+                assertStraight(geometry, line);
+            }
+        }
+    }
+
+    // The cells of a line must step by the same amount along each axis, by -1, 0 or 1
+    private static void assertStraight(CubeGeometry geometry, int line) {
+        int size = geometry.getSize();
+        int[] first = coordinates(size, geometry.getLineCell(line, 0));
+        int[] second = coordinates(size, geometry.getLineCell(line, 1));
+        for (int step = 0; step < size; step++) {
+            int[] cell = coordinates(size, geometry.getLineCell(line, step));
+            for (int axis = 0; axis < 3; axis++) {
+                int delta = second[axis] - first[axis];
+                assertTrue(Math.abs(delta) <= 1);
+                assertEquals(first[axis] + step * delta, cell[axis]);
+            }
+        }
+    }
+
+    private static int[] coordinates(int size, int cell) {
+        return new int[] {cell / (size * size), (cell / size) % size, cell % size};
+    }
+
+    @Test
+    void playsLikeTicTacTix() {
+        SplittableRandom random = new SplittableRandom(7);
+        CubeBoard cube = new CubeBoard(3);
+        TicTacTix board = new TicTacTix();
+        long[] mask = new long[1];
+
+        for (int game = 0; game < 20000; game++) {
+            cube.reset();
+            board.reset();
+            char turn = random.nextBoolean() ? TicTacTix.PLAYER : TicTacTix.COMPUTER;
+            while (board.findGameState() == TicTacTix.PLAYABLE) {
+                int cell = board.randomEmptyCell(random);
+                board.makeMove(turn, cell);
+                cube.makeMove(turn, cell);
+                turn = (turn == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+
+                assertEquals(board.findGameState(), cube.findGameState());
+                cube.getEmptyCells(mask);
+                assertEquals(board.getEmptyCells(), mask[0]);
+                assertEquals(Integer.bitCount(board.getEmptyCells()), cube.getEmptyCount());
+                cube.getThreats(TicTacTix.PLAYER, mask);
+                assertEquals(board.getThreats(TicTacTix.PLAYER), mask[0]);
+                cube.getThreats(TicTacTix.COMPUTER, mask);
+                assertEquals(board.getThreats(TicTacTix.COMPUTER), mask[0]);
+            }
+            assertEquals(board.toString(), cube.toString());
+        }
+    }
+
+    @Test
+    void findsWinsOnLargerBoards() {
+        for (int size = 4; size <= 5; size++) {
+            CubeBoard board = new CubeBoard(size);
+            CubeGeometry geometry = board.getGeometry();
+
+            // Every line wins, and its last cell is a threat until it is played
+            for (int line = 0; line < geometry.getLineCount(); line++) {
+                board.reset();
+                for (int step = 0; step < size - 1; step++) {
+                    board.makeMove(TicTacTix.COMPUTER, geometry.getLineCell(line, step));
+                    assertEquals(TicTacTix.PLAYABLE, board.findGameState());
+                }
+                int last = geometry.getLineCell(line, size - 1);
+                assertTrue(board.isThreat(TicTacTix.COMPUTER, last));
+                assertFalse(board.isThreat(TicTacTix.PLAYER, last));
+                board.makeMove(TicTacTix.COMPUTER, last);
+                assertEquals(TicTacTix.COMPUTER, board.findGameState());
+            }
+
+            SplittableRandom random = new SplittableRandom(size);
+            for (int game = 0; game < 500; game++) {
+                board.reset();
+                char turn = TicTacTix.PLAYER;
+                while (board.findGameState() == TicTacTix.PLAYABLE) {
+                    board.makeMove(turn, board.randomEmptyCell(random));
+                    turn = (turn == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+                    assertEquals(stateFromLines(board), board.findGameState());
+                    assertThreatsFromLines(board);
+                }
+            }
+        }
+    }
+
+    // The state of a board worked out by looking at every line
+    private static char stateFromLines(CubeBoard board) {
+        CubeGeometry geometry = board.getGeometry();
+        if (board.getEmptyCount() == 0)
+            return TicTacTix.STALEMATE;
+        boolean playerWins = false;
+        boolean computerWins = false;
+        for (int line = 0; line < geometry.getLineCount(); line++) {
+            playerWins |= count(board, line, TicTacTix.PLAYER) == geometry.getSize();
+            computerWins |= count(board, line, TicTacTix.COMPUTER) == geometry.getSize();
+        }
+        return playerWins ? TicTacTix.PLAYER : computerWins ? TicTacTix.COMPUTER : TicTacTix.PLAYABLE;
+    }
+
+    private static void assertThreatsFromLines(CubeBoard board) {
+        CubeGeometry geometry = board.getGeometry();
+        int size = geometry.getSize();
+        boolean[][] threats = new boolean[2][geometry.getCells()];
+        for (int line = 0; line < geometry.getLineCount(); line++) {
+            for (int step = 0; step < size; step++) {
+                int cell = geometry.getLineCell(line, step);
+                if (board.isEmpty(cell)) {
+                    threats[0][cell] |= count(board, line, TicTacTix.PLAYER) == size - 1;
+                    threats[1][cell] |= count(board, line, TicTacTix.COMPUTER) == size - 1;
+                }
+            }
+        }
+        for (int cell = 0; cell < geometry.getCells(); cell++) {
+            assertEquals(threats[0][cell], board.isThreat(TicTacTix.PLAYER, cell));
+            assertEquals(threats[1][cell], board.isThreat(TicTacTix.COMPUTER, cell));
+        }
+    }
+
+    private static int count(CubeBoard board, int line, char player) {
+        int count = 0;
+        for (int step = 0; step < board.getGeometry().getSize(); step++) {
+            if (board.getCell(board.getGeometry().getLineCell(line, step)) == player)
+                count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,125 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Round trips games through the record format, on their own and through an archive.
+ */
+class GameRecordTest {
+    @TempDir
+    Path directory;
+
+    // Plays a random game, stopping early now and then so unfinished games are covered too
+    private static TicTacTix randomGame(SplittableRandom random, TicTacTix board) {
+        board.reset();
+        if (random.nextBoolean())
+            board.makeMove(TicTacTix.COMPUTER, board.randomEmptyCell(random));
+        int stop = random.nextInt(8) == 0 ? random.nextInt(TicTacTix.PLAYABLE_CELLS) : TicTacTix.PLAYABLE_CELLS;
+        while (board.findGameState() == TicTacTix.PLAYABLE && board.getMoveCount() < stop)
+            board.play(board.randomEmptyCell(random));
+        return board;
+    }
+
+    private static int[] moves(TicTacTix board) {
+        int[] moves = new int[board.getMoveCount()];
+        for (int i = 0; i < moves.length; i++)
+            moves[i] = board.getMove(i);
+        return moves;
+    }
+
+    @Test
+    void encodesAndDecodesSingleRecords() {
+        SplittableRandom random = new SplittableRandom(5);
+        TicTacTix board = new TicTacTix();
+        ByteBuffer buffer = ByteBuffer.allocate(GameRecord.MAX_RECORD_BYTES);
+        byte[] cells = new byte[GameRecord.MAX_MOVES];
+        int[] decoded = new int[GameRecord.MAX_MOVES];
+
+        for (int game = 0; game < 10000; game++) {
+            randomGame(random, board);
+            int[] moves = moves(board);
+            for (int i = 0; i < moves.length; i++)
+                cells[i] = (byte) moves[i];
+
+            buffer.clear();
+            GameRecord.encode(buffer, board.getFirstMover(), cells, moves.length, board.findGameState());
+            assertEquals(GameRecord.recordBytes(moves.length), buffer.position());
+
+            buffer.flip();
+            byte header = buffer.get();
+            assertEquals(moves.length, GameRecord.moveCount(header));
+            assertEquals(board.getFirstMover(), GameRecord.firstPlayer(header));
+            assertEquals(board.findGameState(), GameRecord.result(header));
+            GameRecord.decodeMoves(buffer, moves.length, decoded);
+            assertArrayEquals(moves, Arrays.copyOf(decoded, moves.length));
+            assertEquals(0, buffer.remaining());
+        }
+    }
+
+    @Test
+    void replaysAnArchiveInOrder() throws IOException {
+        SplittableRandom random = new SplittableRandom(6);
+        TicTacTix board = new TicTacTix();
+        List<int[]> written = new ArrayList<>();
+        List<Character> results = new ArrayList<>();
+
+        // Small segments, so the games spread over several files
+        try (GameRecordWriter writer = new GameRecordWriter(directory, "test", 4096)) {
+            for (int game = 0; game < 3000; game++) {
+                randomGame(random, board);
+                writer.append(board);
+                written.add(moves(board));
+                results.add(board.findGameState());
+            }
+        }
+
+        GameRecordReader reader = GameRecordReader.open(directory);
+        int[] index = new int[1];
+        long count = reader.replay((first, result, moves, moveCount) -> {
+            assertArrayEquals(written.get(index[0]), Arrays.copyOf(moves, moveCount));
+            assertEquals(results.get(index[0]), result);
+            index[0]++;
+        });
+        assertEquals(written.size(), count);
+        assertEquals(0, reader.getTruncatedSegments());
+        assertTrue(reader.getSegmentCount() > 1);
+    }
+
+    @Test
+    void rejectsCellsThatCannotBePlayed() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(GameRecord.MAX_RECORD_BYTES);
+        byte[][] games = {
+            {0, 31, 2},  // past the last cell, but fits in 5 bits
+            {0, 27},     // one past the last cell
+            {0, 13},     // the reserved center
+            {5, 6, 5},   // a cell played twice
+            {-1},
+        };
+        for (byte[] moves: games) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> GameRecord.encode(buffer, TicTacTix.PLAYER, moves, moves.length, TicTacTix.PLAYABLE));
+            assertEquals(0, buffer.position(), "nothing is written for a rejected game");
+        }
+
+        try (GameRecordWriter writer = new GameRecordWriter(directory, "test", GameRecordWriter.DEFAULT_SEGMENT_BYTES)) {
+            writer.append(TicTacTix.PLAYER, new byte[] {0, 1, 2}, 3, TicTacTix.PLAYABLE);
+            assertThrows(IllegalArgumentException.class,
+                    () -> writer.append(TicTacTix.PLAYER, new byte[] {0, 31, 2}, 3, TicTacTix.PLAYABLE));
+            writer.append(TicTacTix.COMPUTER, new byte[] {3, 4}, 2, TicTacTix.PLAYABLE);
+            assertEquals(2, writer.getRecordCount());
+        }
+        assertEquals(2, GameRecordReader.open(directory).replay((first, result, moves, moveCount) -> { }));
+    }
+}
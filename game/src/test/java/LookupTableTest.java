@@ -0,0 +1,144 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Builds a small opening book and the tablebase, then checks that lookups agree with an
+ * exact search, under every symmetry of the cube. Only the outcome is compared: the
+ * solvers share their transposition table between positions, so the number of cells left
+ * empty at the end of a won or lost game is not always the smallest or largest possible.
+ */
+class LookupTableTest {
+    private static final int BOOK_DEPTH = 3;
+
+    @TempDir
+    static Path directory;
+
+    private static OpeningBook book;
+    private static Tablebase tablebase;
+    private static final AlphaBetaEngine solver = new AlphaBetaEngine(0, 0, 20, true);
+
+    @BeforeAll
+    static void build() throws IOException {
+        OpeningBookBuilder builder = new OpeningBookBuilder(BOOK_DEPTH);
+        builder.solve();
+        assertEquals(1, builder.getLevelPositions(0));
+        assertEquals(3, builder.getLevelPositions(1));
+        builder.write(directory.resolve("test.book"));
+        book = OpeningBook.open(directory.resolve("test.book"), null);
+
+        TablebaseGenerator generator = new TablebaseGenerator();
+        generator.solve();
+        generator.write(directory.resolve("test.tbl"));
+        tablebase = Tablebase.open(directory.resolve("test.tbl"), null);
+    }
+
+    // Exact outcome of a position for the side to move: 1 for a win, 0 for a draw, -1 for a loss
+    private static int solve(int own, int opponent) {
+        SearchResult result = solver.search(own, opponent);
+        assertTrue(result.isSolved());
+        return Integer.signum(TablebaseGenerator.toValue(result.getScore()));
+    }
+
+    private static boolean wins(int cells) {
+        for (int line: TicTacTix.WIN_LINES) {
+            if ((cells & line) == line)
+                return true;
+        }
+        return false;
+    }
+
+    // Checks an entry: its outcome is right and its move is legal and keeps that outcome
+    private static void assertBestMove(int entry, int own, int opponent) {
+        int empty = TicTacTix.ALL_CELLS & ~(own | opponent | TicTacTix.RESERVED_CELLS);
+        int value = Integer.signum(Tablebase.value(entry));
+        int move = Tablebase.move(entry);
+        assertEquals(solve(own, opponent), value);
+        assertNotEquals(0, empty & (1 << move), "the move must be an empty cell");
+
+        int after = own | (1 << move);
+        if (wins(after))
+            assertTrue(value > 0);
+        else if (Integer.bitCount(empty) > 1)
+            assertEquals(-value, solve(opponent, after));
+    }
+
+    @Test
+    void bookAnswersEveryShallowPosition() {
+        SplittableRandom random = new SplittableRandom(3);
+        TicTacTix board = new TicTacTix();
+        for (int i = 0; i < 200; i++) {
+            board.reset();
+            int markers = random.nextInt(BOOK_DEPTH + 1);
+            while (board.getMoveCount() < markers)
+                board.play(board.randomEmptyCell(random));
+
+            char side = board.getSideToMove();
+            char other = (side == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+            int own = board.getCells(side);
+            int opponent = board.getCells(other);
+            int entry = book.probe(own, opponent);
+            assertNotEquals(OpeningBook.MISS, entry);
+            assertBestMove(entry, own, opponent);
+
+            // A symmetric copy has the same value and the matching move
+            int symmetry = random.nextInt(Symmetry.COUNT);
+            int copy = book.probe(Symmetry.transform(own, symmetry), Symmetry.transform(opponent, symmetry));
+            assertEquals(Tablebase.value(entry), Tablebase.value(copy));
+            assertBestMove(copy, Symmetry.transform(own, symmetry), Symmetry.transform(opponent, symmetry));
+        }
+    }
+
+    @Test
+    void bookMissesDeeperPositionsAndNeedsAFallback() {
+        TicTacTix board = new TicTacTix();
+        for (int cell: new int[] {0, 1, 2, 3})
+            board.play(cell);
+        assertEquals(OpeningBook.MISS, book.probe(board.getCells(TicTacTix.PLAYER), board.getCells(TicTacTix.COMPUTER)));
+        assertThrows(IllegalStateException.class, () -> book.chooseMove(board, TicTacTix.PLAYER));
+    }
+
+    @Test
+    void tablebaseCoversEveryGameTheComputerPlaysFromIt() {
+        SplittableRandom random = new SplittableRandom(4);
+        TicTacTix board = new TicTacTix();
+        for (int game = 0; game < 200; game++) {
+            board.reset();
+            boolean computerTurn = game % 2 == 0;
+            while (board.findGameState() == TicTacTix.PLAYABLE) {
+                if (computerTurn) {
+                    char side = board.getSideToMove();
+                    char other = (side == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+                    int entry = tablebase.probe(board.getCells(side), board.getCells(other));
+                    assertNotEquals(Tablebase.MISS, entry);
+                    if (board.getMoveCount() <= 4)
+                        assertBestMove(entry, board.getCells(side), board.getCells(other));
+                    board.play(Tablebase.move(entry));
+                }
+                else {
+                    board.play(board.randomEmptyCell(random));
+                }
+                computerTurn = !computerTurn;
+            }
+        }
+    }
+
+    @Test
+    void rejectsFilesOfTheWrongKind() throws IOException {
+        Path other = directory.resolve("not-a-table");
+        Files.write(other, new byte[64]);
+        assertThrows(IOException.class, () -> Tablebase.open(other, null));
+        assertThrows(IOException.class, () -> OpeningBook.open(other, null));
+        assertThrows(IOException.class, () -> Tablebase.open(directory.resolve("test.book"), null));
+    }
+}
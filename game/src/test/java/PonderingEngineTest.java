@@ -0,0 +1,135 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Plays the computer's side with a PonderingEngine: a move it could not have pondered is
+ * searched, a reply it pondered is answered from the stored search, and a reply that
+ * comes while it is still pondering stops the background search and is answered with a
+ * move that keeps the exact outcome of the game.
+ */
+class PonderingEngineTest {
+    private static final long BUDGET_MILLIS = 300;
+    private static final AlphaBetaEngine SOLVER = new AlphaBetaEngine(0, 0, 20, true);
+
+    // Checks that a move is an empty cell and plays it
+    private static void play(TicTacTix board, int move) {
+        assertNotEquals(0, board.getEmptyCells() & (1 << move), "the move must be an empty cell");
+        board.play(move);
+    }
+
+    // A reply that neither wins nor fills the board, so the engine has pondered it, or -1
+    private static int quietReply(TicTacTix board) {
+        for (int cells = board.getEmptyCells(); cells != 0; cells &= cells - 1) {
+            int cell = Integer.numberOfTrailingZeros(cells);
+            board.play(cell);
+            boolean quiet = board.findGameState() == TicTacTix.PLAYABLE;
+            board.undo();
+            if (quiet)
+                return cell;
+        }
+        return -1;
+    }
+
+    // Plays random moves that complete no line and block the other side's threats, until
+    // O is to move with 17 markers down and no line to complete
+    private static void latePosition(TicTacTix board, SplittableRandom random) {
+        do {
+            board.reset();
+            while (board.getMoveCount() < 17) {
+                char side = board.getSideToMove();
+                char other = (side == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+                int quiet = board.getEmptyCells() & ~board.getThreats(side);
+                if (board.getThreats(other) != 0)
+                    quiet &= board.getThreats(other);
+                if (quiet == 0)
+                    break;
+                int cell;
+                do {
+                    cell = board.randomEmptyCell(random);
+                } while ((quiet & (1 << cell)) == 0);
+                board.play(cell);
+            }
+        } while (board.getMoveCount() < 17 || board.getThreats(TicTacTix.COMPUTER) != 0);
+    }
+
+    @Test
+    void answersPonderedRepliesAtOnce() {
+        PonderingEngine engine = new PonderingEngine(BUDGET_MILLIS, 16);
+        SplittableRandom random = new SplittableRandom(8);
+        TicTacTix board = new TicTacTix();
+        try {
+            long hits = 0;
+            long misses = 0;
+            for (int game = 0; game < 20; game++) {
+                // Late in a game, where every reply is solved well within the budget
+                latePosition(board, random);
+                play(board, engine.chooseMove(board, TicTacTix.COMPUTER));
+                assertTrue(engine.getLastReport().startsWith("not pondered"), engine.getLastReport());
+                misses++;
+                int reply = (board.findGameState() == TicTacTix.PLAYABLE) ? quietReply(board) : -1;
+                if (reply < 0)
+                    continue;
+
+                engine.awaitPondering();
+                play(board, reply);
+                play(board, engine.chooseMove(board, TicTacTix.COMPUTER));
+                assertTrue(engine.getLastReport().startsWith("pondered"), engine.getLastReport());
+                hits++;
+                assertEquals(hits, engine.getPonderHits());
+                assertEquals(misses, engine.getPonderMisses());
+            }
+            assertTrue(hits > 0);
+        }
+        finally {
+            engine.shutdown();
+        }
+    }
+
+    // Exact outcome of a position for the side to move: 1 for a win, 0 for a draw, -1 for a loss
+    private static int solve(int own, int opponent) {
+        SearchResult result = SOLVER.search(own, opponent);
+        assertTrue(result.isSolved());
+        return Integer.signum(TablebaseGenerator.toValue(result.getScore()));
+    }
+
+    @Test
+    void stopsPonderingWhenTheHumanMoves() {
+        PonderingEngine engine = new PonderingEngine(BUDGET_MILLIS, 16);
+        SplittableRandom random = new SplittableRandom(9);
+        TicTacTix board = new TicTacTix();
+        try {
+            // The human answers at once, so the engine is usually still pondering and has
+            // to stop; whether the reply was pondered or not, the move must keep the outcome
+            long moves = 0;
+            for (int game = 0; game < 200; game++) {
+                board.reset();
+                while (board.findGameState() == TicTacTix.PLAYABLE) {
+                    if (board.getSideToMove() == TicTacTix.PLAYER) {
+                        board.play(board.randomEmptyCell(random));
+                        continue;
+                    }
+                    int own = board.getCells(TicTacTix.COMPUTER);
+                    int opponent = board.getCells(TicTacTix.PLAYER);
+                    int value = solve(own, opponent);
+                    int move = engine.chooseMove(board, TicTacTix.COMPUTER);
+                    moves++;
+                    play(board, move);
+                    if (board.findGameState() == TicTacTix.PLAYABLE)
+                        assertEquals(-value, solve(opponent, own | (1 << move)), engine.getLastReport());
+                    else
+                        assertEquals((board.findGameState() == TicTacTix.COMPUTER) ? 1 : 0, value);
+                }
+            }
+            assertEquals(moves, engine.getPonderHits() + engine.getPonderMisses());
+            assertTrue(engine.getPonderHits() > 0);
+        }
+        finally {
+            engine.shutdown();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Parks random games in a slab, over more than one chunk of slots, and checks that they
+ * come back exactly as they were and that freed slots are reused.
+ */
+class SessionSlabTest {
+    // More than the 64K slots of a chunk
+    private static final int GAMES = 70000;
+
+    // Plays a random game, started by either side and stopped early now and then
+    private static void randomGame(SplittableRandom random, TicTacTix board) {
+        board.reset();
+        if (random.nextBoolean())
+            board.makeMove(TicTacTix.COMPUTER, board.randomEmptyCell(random));
+        int stop = random.nextInt(TicTacTix.PLAYABLE_CELLS + 1);
+        while (board.findGameState() == TicTacTix.PLAYABLE && board.getMoveCount() < stop)
+            board.play(board.randomEmptyCell(random));
+    }
+
+    private static int[] moves(TicTacTix board) {
+        int[] moves = new int[board.getMoveCount()];
+        for (int i = 0; i < moves.length; i++)
+            moves[i] = board.getMove(i);
+        return moves;
+    }
+
+    private static void assertSameGame(TicTacTix expected, TicTacTix actual) {
+        assertEquals(expected.getMoveCount(), actual.getMoveCount());
+        for (int i = 0; i < expected.getMoveCount(); i++)
+            assertEquals(expected.getMove(i), actual.getMove(i));
+        if (expected.getMoveCount() > 0)
+            assertEquals(expected.getFirstMover(), actual.getFirstMover());
+        assertEquals(expected.getSideToMove(), actual.getSideToMove());
+        assertEquals(expected.getCells(TicTacTix.PLAYER), actual.getCells(TicTacTix.PLAYER));
+        assertEquals(expected.getCells(TicTacTix.COMPUTER), actual.getCells(TicTacTix.COMPUTER));
+        assertEquals(expected.findGameState(), actual.findGameState());
+        assertEquals(expected.getThreats(TicTacTix.PLAYER), actual.getThreats(TicTacTix.PLAYER));
+        assertEquals(expected.getHash(), actual.getHash());
+    }
+
+    @Test
+    void restoresParkedGamesExactly() {
+        SplittableRandom random = new SplittableRandom(10);
+        SessionSlab slab = new SessionSlab();
+        TicTacTix board = new TicTacTix();
+        List<int[]> games = new ArrayList<>();
+        List<Character> firstMovers = new ArrayList<>();
+        int[] handles = new int[GAMES];
+
+        for (int game = 0; game < GAMES; game++) {
+            randomGame(random, board);
+            handles[game] = slab.park(board);
+            games.add(moves(board));
+            firstMovers.add(board.getFirstMover());
+        }
+        assertEquals(GAMES, slab.getParkedCount());
+        assertEquals(2L * 65536 * SessionSlab.SLOT_BYTES, slab.getReservedBytes());
+
+        // Replays every game on a fresh board and compares the two, then checks that the
+        // restored board undoes its last move like the replayed one
+        TicTacTix restored = new TicTacTix();
+        TicTacTix replayed = new TicTacTix();
+        for (int game = 0; game < GAMES; game++) {
+            slab.restore(handles[game], restored);
+            replayed.reset();
+            char turn = firstMovers.get(game);
+            for (int move: games.get(game)) {
+                replayed.makeMove(turn, move);
+                turn = (turn == TicTacTix.PLAYER) ? TicTacTix.COMPUTER : TicTacTix.PLAYER;
+            }
+            assertSameGame(replayed, restored);
+
+            if (restored.getMoveCount() > 0) {
+                restored.undo();
+                replayed.undo();
+                assertSameGame(replayed, restored);
+            }
+        }
+        assertEquals(GAMES, slab.getParkedCount(), "restoring keeps the game parked");
+    }
+
+    @Test
+    void reusesFreedSlots() {
+        SplittableRandom random = new SplittableRandom(11);
+        SessionSlab slab = new SessionSlab();
+        TicTacTix board = new TicTacTix();
+        int[] handles = new int[1000];
+        for (int i = 0; i < handles.length; i++) {
+            randomGame(random, board);
+            handles[i] = slab.park(board);
+        }
+        long reserved = slab.getReservedBytes();
+
+        // Frees every other slot, half by release() and half by unpark()
+        for (int i = 0; i < handles.length; i += 2) {
+            if (i % 4 == 0) {
+                slab.release(handles[i]);
+            }
+            else {
+                TicTacTix parked = new TicTacTix();
+                slab.restore(handles[i], parked);
+                assertSameGame(parked, slab.unpark(handles[i]));
+            }
+            int handle = handles[i];
+            assertThrows(IllegalArgumentException.class, () -> slab.restore(handle, board));
+            assertThrows(IllegalArgumentException.class, () -> slab.release(handle));
+        }
+        assertEquals(handles.length / 2, slab.getParkedCount());
+
+        // New games go into the freed slots, without taking more memory
+        for (int i = 0; i < handles.length; i += 2) {
+            randomGame(random, board);
+            handles[i] = slab.park(board);
+            TicTacTix restored = new TicTacTix();
+            slab.restore(handles[i], restored);
+            assertSameGame(board, restored);
+        }
+        assertEquals(handles.length, slab.getParkedCount());
+        assertEquals(reserved, slab.getReservedBytes());
+        assertThrows(IllegalArgumentException.class, () -> slab.restore(-1, board));
+        assertThrows(IllegalArgumentException.class, () -> slab.restore(1 << 20, board));
+    }
+}
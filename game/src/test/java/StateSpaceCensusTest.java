@@ -0,0 +1,72 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the census of the shallow depths against counts worked out by hand and, for
+ * the first wins at depths 5 and 6, against the counts of an independent breadth-first
+ * search over a set of positions.
+ */
+class StateSpaceCensusTest {
+    // Ways to place x markers of one player and o of the other on the 26 playable cells
+    private static long placements(int x, int o) {
+        return binomial(TicTacTix.PLAYABLE_CELLS, x) * binomial(TicTacTix.PLAYABLE_CELLS - x, o);
+    }
+
+    private static long binomial(int n, int k) {
+        long result = 1;
+        for (int i = 1; i <= k; i++)
+            result = result * (n - k + i) / i;
+        return result;
+    }
+
+    @Test
+    void countsEveryPositionBeforeTheFirstPossibleWin() {
+        CensusReport report = new StateSpaceCensus(2, 4).run(TicTacTix.PLAYER);
+
+        assertEquals(TicTacTix.PLAYER, report.getFirstPlayer());
+        assertEquals(4, report.getMaxDepth());
+        for (int depth = 0; depth <= 4; depth++) {
+            long expected = placements((depth + 1) / 2, depth / 2);
+            assertEquals(expected, report.getPositions(depth), "positions at depth " + depth);
+            assertEquals(expected, report.getPlayable(depth), "playable at depth " + depth);
+            assertEquals(0, report.getPlayerWins(depth) + report.getComputerWins(depth) + report.getStalemates(depth));
+        }
+        assertEquals(1 + 26 + 650 + 7800 + 89700, report.getTotalPositions());
+    }
+
+    @Test
+    void countsTheFirstWinsOfEachSide() {
+        CensusReport report = new StateSpaceCensus(4, 6).run(TicTacTix.PLAYER);
+
+        assertEquals(657800, report.getPositions(5));
+        assertEquals(9108, report.getPlayerWins(5));
+        assertEquals(648692, report.getPlayable(5));
+        assertEquals(4540844, report.getPositions(6));
+        assertEquals(62880, report.getComputerWins(6));
+        assertEquals(0, report.getPlayerWins(6));
+        assertEquals(9108, report.getTotalPlayerWins());
+        assertEquals(62880, report.getTotalComputerWins());
+        assertEquals(0, report.getTotalStalemates());
+    }
+
+    @Test
+    void swapsTheWinnersWhenOMovesFirst() {
+        CensusReport report = new StateSpaceCensus(1, 5).run(TicTacTix.COMPUTER);
+
+        assertEquals(657800, report.getPositions(5));
+        assertEquals(0, report.getPlayerWins(5));
+        assertEquals(9108, report.getComputerWins(5));
+    }
+
+    @Test
+    void doesNotDependOnTheNumberOfThreads() {
+        CensusReport single = new StateSpaceCensus(1, 5).run(TicTacTix.PLAYER);
+        CensusReport parallel = new StateSpaceCensus(4, 5).run(TicTacTix.PLAYER);
+
+        for (int depth = 0; depth <= 5; depth++) {
+            assertEquals(single.getPositions(depth), parallel.getPositions(depth));
+            assertEquals(single.getPlayerWins(depth), parallel.getPlayerWins(depth));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Resumes tournaments from results files cut short after every finished match (and once in
+ * the middle of a line): no finished match may be played again, and the resumed file must
+ * end up holding exactly the matches of an uninterrupted run.
+ */
+class TournamentTest {
+    private static final String[] STRATEGIES = {"random", "alphabeta", "mcts"};
+    private static final int ROUNDS = 4;
+    private static final int GAMES = 2;
+    private static final long SEED = 11;
+
+    @TempDir
+    Path directory;
+
+    private static Tournament tournament(boolean swiss) {
+        return new Tournament(STRATEGIES, swiss, ROUNDS, GAMES, SEED, 2);
+    }
+
+    private static List<String> sortedLines(Path file) throws IOException {
+        List<String> lines = new ArrayList<>(Files.readAllLines(file, StandardCharsets.UTF_8));
+        Collections.sort(lines);
+        return lines;
+    }
+
+    private void resumesWithoutReplaying(boolean swiss) throws IOException, InterruptedException, ExecutionException {
+        Path full = directory.resolve(swiss ? "swiss" : "roundrobin");
+        int matches = tournament(swiss).run(full);
+        List<String> lines = Files.readAllLines(full, StandardCharsets.UTF_8);
+        assertEquals(matches + 1, lines.size());
+
+        for (int kept = 0; kept <= matches; kept++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i <= kept; i++)
+                text.append(lines.get(i)).append('\n');
+            // Once, a match written only in part by an interrupted run
+            boolean partial = kept == matches / 2;
+            if (partial)
+                text.append(lines.get(kept + 1), 0, 4);
+
+            Path resumed = directory.resolve("resumed-" + kept);
+            Files.write(resumed, text.toString().getBytes(StandardCharsets.UTF_8));
+            assertEquals(matches - kept, tournament(swiss).run(resumed), "matches played after " + kept);
+            assertEquals(sortedLines(full), sortedLines(resumed));
+        }
+    }
+
+    @Test
+    void resumesASwissTournament() throws IOException, InterruptedException, ExecutionException {
+        resumesWithoutReplaying(true);
+    }
+
+    @Test
+    void resumesARoundRobin() throws IOException, InterruptedException, ExecutionException {
+        resumesWithoutReplaying(false);
+    }
+}